@@ -0,0 +1,134 @@
+/**
+ * This file makes the va_list functions of valist.c callable from java,
+ * which has no VaList any more. For each function `f` there is:
+ *
+ * f_fromArgBlock(argCount, block): takes the arguments as an array in
+ * native memory (ints, LONGs, doubles, pointers or structs, as read by `f`)
+ * and forwards them to f_variadic.
+ *
+ * f_variadic(argCount, ...): takes the arguments as variadic arguments and
+ * passes its va_list to `f`.
+ *
+ * addMixedArgsFromVaList and addMoreMixedArgsFromVaList read a fixed mix of
+ * types; their blocks are arrays of 8-byte slots, each holding one argument
+ * at its start, and they have no f_variadic.
+ *
+ * A block holds at most VALIST_BLOCK_MAX_ARGS arguments; for larger counts
+ * the block functions return 0 without calling `f`.
+ */
+
+#include <string.h>
+#include "downcall.h"
+
+#define VALIST_BLOCK_MAX_ARGS 16
+
+typedef union arg_slot {
+    int intArg;
+    long longArg;
+    double doubleArg;
+} arg_slot;
+
+#define VALIST_BLOCK_FUNCTIONS(retType, function, argType) \
+retType function(int argCount, va_list argList); \
+\
+retType \
+function##_variadic(int argCount, ...) { \
+    va_list argList; \
+    va_start(argList, argCount); \
+    retType result = function(argCount, argList); \
+    va_end(argList); \
+    return result; \
+} \
+\
+retType \
+function##_fromArgBlock(int argCount, const argType *block) { \
+    argType args[VALIST_BLOCK_MAX_ARGS]; \
+    if ((argCount < 0) || (argCount > VALIST_BLOCK_MAX_ARGS)) { \
+        return 0; \
+    } \
+    /* the unused arguments are passed as well, but never read */ \
+    memset(args, 0, sizeof(args)); \
+    memcpy(args, block, argCount * sizeof(argType)); \
+    return function##_variadic(argCount, \
+        args[0], args[1], args[2], args[3], args[4], args[5], args[6], args[7], \
+        args[8], args[9], args[10], args[11], args[12], args[13], args[14], args[15]); \
+}
+
+VALIST_BLOCK_FUNCTIONS(int, addIntsFromVaList, int)
+VALIST_BLOCK_FUNCTIONS(LONG, addLongsFromVaList, LONG)
+VALIST_BLOCK_FUNCTIONS(double, addDoublesFromVaList, double)
+VALIST_BLOCK_FUNCTIONS(int, addIntsByPtrFromVaList, int *)
+VALIST_BLOCK_FUNCTIONS(LONG, addLongsByPtrFromVaList, LONG *)
+VALIST_BLOCK_FUNCTIONS(double, addDoublesByPtrFromVaList, double *)
+VALIST_BLOCK_FUNCTIONS(char, add1ByteOfStructsFromVaList, stru_Byte)
+VALIST_BLOCK_FUNCTIONS(char, add2BytesOfStructsFromVaList, stru_2_Bytes)
+VALIST_BLOCK_FUNCTIONS(char, add3BytesOfStructsFromVaList, stru_3_Bytes)
+VALIST_BLOCK_FUNCTIONS(char, add5BytesOfStructsFromVaList, stru_5_Bytes)
+VALIST_BLOCK_FUNCTIONS(char, add7BytesOfStructsFromVaList, stru_7_Bytes)
+VALIST_BLOCK_FUNCTIONS(short, add1ShortOfStructsFromVaList, stru_Short)
+VALIST_BLOCK_FUNCTIONS(short, add2ShortsOfStructsFromVaList, stru_2_Shorts)
+VALIST_BLOCK_FUNCTIONS(short, add3ShortsOfStructsFromVaList, stru_3_Shorts)
+VALIST_BLOCK_FUNCTIONS(int, add1IntOfStructsFromVaList, stru_Int)
+VALIST_BLOCK_FUNCTIONS(int, add2IntsOfStructsFromVaList, stru_2_Ints)
+VALIST_BLOCK_FUNCTIONS(int, add3IntsOfStructsFromVaList, stru_3_Ints)
+VALIST_BLOCK_FUNCTIONS(LONG, add2LongsOfStructsFromVaList, stru_2_Longs)
+VALIST_BLOCK_FUNCTIONS(float, add1FloatOfStructsFromVaList, stru_Float)
+VALIST_BLOCK_FUNCTIONS(float, add2FloatsOfStructsFromVaList, stru_2_Floats)
+VALIST_BLOCK_FUNCTIONS(float, add3FloatsOfStructsFromVaList, stru_3_Floats)
+VALIST_BLOCK_FUNCTIONS(double, add1DoubleOfStructsFromVaList, stru_Double)
+VALIST_BLOCK_FUNCTIONS(double, add2DoublesOfStructsFromVaList, stru_2_Doubles)
+VALIST_BLOCK_FUNCTIONS(int, addIntShortOfStructsFromVaList, stru_Int_Short)
+VALIST_BLOCK_FUNCTIONS(int, addShortIntOfStructsFromVaList, stru_Short_Int)
+VALIST_BLOCK_FUNCTIONS(LONG, addIntLongOfStructsFromVaList, stru_Int_Long)
+VALIST_BLOCK_FUNCTIONS(LONG, addLongIntOfStructsFromVaList, stru_Long_Int)
+VALIST_BLOCK_FUNCTIONS(double, addFloatDoubleOfStructsFromVaList, stru_Float_Double)
+VALIST_BLOCK_FUNCTIONS(double, addDoubleFloatOfStructsFromVaList, stru_Double_Float)
+
+double addMixedArgsFromVaList(va_list argVaList);
+
+double addMoreMixedArgsFromVaList(va_list argVaList);
+
+static double
+callMixedArgsFromVaList(int argCount, ...) {
+    va_list argList;
+    va_start(argList, argCount);
+    double result = addMixedArgsFromVaList(argList);
+    va_end(argList);
+    return result;
+}
+
+static double
+callMoreMixedArgsFromVaList(int argCount, ...) {
+    va_list argList;
+    va_start(argList, argCount);
+    double result = addMoreMixedArgsFromVaList(argList);
+    va_end(argList);
+    return result;
+}
+
+/**
+ * Add the int, long and double in the first three slots of the block
+ *
+ * @param block the slots holding the arguments
+ * @return the sum of the arguments
+ */
+double
+addMixedArgsFromVaList_fromArgBlock(const arg_slot *block) {
+    return callMixedArgsFromVaList(3, block[0].intArg, block[1].longArg, block[2].doubleArg);
+}
+
+/**
+ * Add the ints, longs and doubles in the first sixteen slots of the block,
+ * in the order read by addMoreMixedArgsFromVaList
+ *
+ * @param block the slots holding the arguments
+ * @return the sum of the arguments
+ */
+double
+addMoreMixedArgsFromVaList_fromArgBlock(const arg_slot *block) {
+    return callMoreMixedArgsFromVaList(16,
+        block[0].intArg, block[1].longArg, block[2].intArg, block[3].longArg,
+        block[4].intArg, block[5].longArg, block[6].intArg, block[7].doubleArg,
+        block[8].intArg, block[9].doubleArg, block[10].intArg, block[11].doubleArg,
+        block[12].intArg, block[13].doubleArg, block[14].intArg, block[15].doubleArg);
+}
@@ -0,0 +1,149 @@
+package com.v7878.panamatest.hotspot;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+import static org.junit.Assume.assumeTrue;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.AddressLayout;
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+import com.v7878.invoke.Handles;
+import com.v7878.invoke.VarHandle;
+import com.v7878.invoke.VarHandle.AccessMode;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The matrix of TestAccessModes as a benchmark: ns/op of the main access
+ * modes of a layout var handle, per carrier, aligned and unaligned, on heap
+ * and native segments. Combinations the var handle does not support are
+ * skipped, like TestAccessModes expects them to throw.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchAccessModes {
+
+    static final int OPS = 5_000_000;
+    static final int VALUE_ARGS = 2;
+
+    enum Carrier {
+        BOOLEAN(ValueLayout.JAVA_BOOLEAN),
+        BYTE(ValueLayout.JAVA_BYTE),
+        CHAR(ValueLayout.JAVA_CHAR),
+        SHORT(ValueLayout.JAVA_SHORT),
+        INT(ValueLayout.JAVA_INT),
+        FLOAT(ValueLayout.JAVA_FLOAT),
+        LONG(ValueLayout.JAVA_LONG),
+        DOUBLE(ValueLayout.JAVA_DOUBLE),
+        ADDRESS(ValueLayout.ADDRESS);
+
+        final ValueLayout layout;
+
+        Carrier(ValueLayout layout) {
+            this.layout = layout;
+        }
+    }
+
+    enum Alignment {
+        ALIGNED,
+        UNALIGNED
+    }
+
+    enum Placement {
+        HEAP,
+        NATIVE
+    }
+
+    static final AccessMode[] MODES = {
+            AccessMode.GET,
+            AccessMode.SET,
+            AccessMode.GET_VOLATILE,
+            AccessMode.SET_VOLATILE,
+            AccessMode.GET_ACQUIRE,
+            AccessMode.SET_RELEASE,
+            AccessMode.COMPARE_AND_SET,
+            AccessMode.GET_AND_ADD
+    };
+
+    @Test
+    @UseDataProvider("carriersAndModes")
+    public void benchAccessMode(Carrier carrier, Alignment alignment, Placement placement,
+                                AccessMode mode) throws Throwable {
+        ValueLayout layout = alignment == Alignment.ALIGNED ?
+                carrier.layout : carrier.layout.withByteAlignment(1);
+        VarHandle varHandle = layout.varHandle();
+        assumeTrue(mode + " not supported for " + layout, varHandle.isAccessModeSupported(mode));
+        MethodHandle invoker = uniformInvoker(varHandle, mode, layout);
+        long offset = alignment == Alignment.ALIGNED ? 0 : 1;
+
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = placement == Placement.HEAP ?
+                    MemorySegment.ofArray(new long[4]) :
+                    arena.allocate(32, 8);
+            // all values are zero: every CAS succeeds and every add leaves the memory as it is
+            measure(String.format(Locale.ROOT, "%s %s %s %s", carrier, alignment, placement, mode), OPS, 0, () -> {
+                for (int i = 0; i < OPS; i++) {
+                    invoker.invokeExact(segment, offset, 0L, 0L);
+                }
+            });
+        }
+    }
+
+    /**
+     * Adapts the {@code mode} method handle of {@code varHandle} to
+     * {@code (MemorySegment, long, long, long)void}: value arguments are
+     * converted from {@code long} (addresses are always NULL), unused ones
+     * are dropped, and so is the result. This keeps boxing out of the loop.
+     */
+    static MethodHandle uniformInvoker(VarHandle varHandle, AccessMode mode, ValueLayout layout) {
+        MethodHandle target = varHandle.toMethodHandle(mode);
+        int valueArgs = target.type().parameterCount() - 2;
+        if (layout instanceof AddressLayout) {
+            Object[] nulls = new Object[valueArgs];
+            Arrays.fill(nulls, MemorySegment.NULL);
+            target = Handles.insertArguments(target, 2, nulls);
+            target = Handles.dropArguments(target, 2, longs(valueArgs));
+        }
+        List<Class<?>> params = new ArrayList<>(List.of(MemorySegment.class, long.class));
+        params.addAll(longs(valueArgs));
+        target = Handles.explicitCastArguments(target, MethodType.methodType(void.class, params));
+        return Handles.dropArguments(target, 2 + valueArgs, longs(VALUE_ARGS - valueArgs));
+    }
+
+    static List<Class<?>> longs(int count) {
+        List<Class<?>> types = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            types.add(long.class);
+        }
+        return types;
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] carriersAndModes() {
+        List<Object[]> cases = new ArrayList<>();
+        for (Carrier carrier : Carrier.values()) {
+            for (Alignment alignment : Alignment.values()) {
+                // one-byte carriers cannot be misaligned
+                if (alignment == Alignment.UNALIGNED && carrier.layout.byteSize() == 1) continue;
+                for (Placement placement : Placement.values()) {
+                    for (AccessMode mode : MODES) {
+                        cases.add(new Object[]{carrier, alignment, placement, mode});
+                    }
+                }
+            }
+        }
+        return cases.toArray(new Object[0][]);
+    }
+}
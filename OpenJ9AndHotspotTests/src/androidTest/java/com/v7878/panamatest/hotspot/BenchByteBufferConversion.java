@@ -0,0 +1,312 @@
+package com.v7878.panamatest.hotspot;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.KB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.MB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.allocatedBytes;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.consume;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.formatSize;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Cost of converting between NIO buffers and memory segments, in time and in
+ * bytes allocated per conversion, and throughput of reading the same memory
+ * through a segment, through a typed buffer view ({@code asIntBuffer()} and
+ * so on) and through the absolute getters of a byte buffer.
+ * <p>
+ * ART only exposes the number of bytes allocated, not the number of objects;
+ * the allocation figures are averages over many conversions.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchByteBufferConversion {
+
+    static final long SEGMENT_SIZE = 4 * KB;
+    static final int CONVERSIONS = 1 << 20;
+    static final long[] VIEW_SIZES = {4 * KB, MB, 64 * MB};
+    static final long BYTES_PER_ROUND = 256 * MB;
+
+    static final ByteOrder NATIVE = ByteOrder.nativeOrder();
+
+    enum Conversion {
+        AS_BYTE_BUFFER,
+        AS_BYTE_BUFFER_NATIVE_ORDER,
+        AS_LONG_BUFFER,
+        SLICE_AS_BYTE_BUFFER,
+        OF_DIRECT_BUFFER,
+        OF_HEAP_BUFFER,
+        OF_LONG_BUFFER,
+        ROUND_TRIP;
+
+        Object convert(MemorySegment segment, ByteBuffer direct, ByteBuffer heap, LongBuffer longs) {
+            return switch (this) {
+                case AS_BYTE_BUFFER -> segment.asByteBuffer();
+                case AS_BYTE_BUFFER_NATIVE_ORDER -> segment.asByteBuffer().order(NATIVE);
+                case AS_LONG_BUFFER -> segment.asByteBuffer().order(NATIVE).asLongBuffer();
+                case SLICE_AS_BYTE_BUFFER -> segment.asSlice(64, 256).asByteBuffer();
+                case OF_DIRECT_BUFFER -> MemorySegment.ofBuffer(direct);
+                case OF_HEAP_BUFFER -> MemorySegment.ofBuffer(heap);
+                case OF_LONG_BUFFER -> MemorySegment.ofBuffer(longs);
+                case ROUND_TRIP -> MemorySegment.ofBuffer(segment.asByteBuffer());
+            };
+        }
+    }
+
+    @Test
+    @UseDataProvider("conversions")
+    public void benchConversion(Conversion conversion) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(SEGMENT_SIZE, 8);
+            ByteBuffer direct = arena.allocate(SEGMENT_SIZE, 8).asByteBuffer();
+            ByteBuffer heap = ByteBuffer.wrap(new byte[(int) SEGMENT_SIZE]);
+            LongBuffer longs = arena.allocate(SEGMENT_SIZE, 8).asByteBuffer().order(NATIVE).asLongBuffer();
+            measure("convert " + conversion, CONVERSIONS, 0, () -> {
+                for (int i = 0; i < CONVERSIONS; i++) {
+                    consume(conversion.convert(segment, direct, heap, longs));
+                }
+            });
+            long before = allocatedBytes();
+            for (int i = 0; i < CONVERSIONS; i++) {
+                consume(conversion.convert(segment, direct, heap, longs));
+            }
+            long allocated = allocatedBytes() - before;
+            System.out.printf(Locale.ROOT, "  %.1f bytes allocated per conversion%n",
+                    (double) allocated / CONVERSIONS);
+        }
+    }
+
+    enum Access {
+        SEGMENT,
+        TYPED_VIEW,
+        BYTE_BUFFER
+    }
+
+    enum Carrier {
+        SHORT(Short.BYTES) {
+            @Override
+            long sum(Access access, MemorySegment segment, ByteBuffer buffer, long count) {
+                long sum = 0;
+                switch (access) {
+                    case SEGMENT -> {
+                        for (long i = 0; i < count; i++) {
+                            sum += segment.getAtIndex(ValueLayout.JAVA_SHORT, i);
+                        }
+                    }
+                    case TYPED_VIEW -> {
+                        ShortBuffer view = buffer.asShortBuffer();
+                        for (int i = 0; i < count; i++) {
+                            sum += view.get(i);
+                        }
+                    }
+                    case BYTE_BUFFER -> {
+                        for (int i = 0; i < count; i++) {
+                            sum += buffer.getShort(i * Short.BYTES);
+                        }
+                    }
+                }
+                return sum;
+            }
+        },
+        CHAR(Character.BYTES) {
+            @Override
+            long sum(Access access, MemorySegment segment, ByteBuffer buffer, long count) {
+                long sum = 0;
+                switch (access) {
+                    case SEGMENT -> {
+                        for (long i = 0; i < count; i++) {
+                            sum += segment.getAtIndex(ValueLayout.JAVA_CHAR, i);
+                        }
+                    }
+                    case TYPED_VIEW -> {
+                        CharBuffer view = buffer.asCharBuffer();
+                        for (int i = 0; i < count; i++) {
+                            sum += view.get(i);
+                        }
+                    }
+                    case BYTE_BUFFER -> {
+                        for (int i = 0; i < count; i++) {
+                            sum += buffer.getChar(i * Character.BYTES);
+                        }
+                    }
+                }
+                return sum;
+            }
+        },
+        INT(Integer.BYTES) {
+            @Override
+            long sum(Access access, MemorySegment segment, ByteBuffer buffer, long count) {
+                long sum = 0;
+                switch (access) {
+                    case SEGMENT -> {
+                        for (long i = 0; i < count; i++) {
+                            sum += segment.getAtIndex(ValueLayout.JAVA_INT, i);
+                        }
+                    }
+                    case TYPED_VIEW -> {
+                        IntBuffer view = buffer.asIntBuffer();
+                        for (int i = 0; i < count; i++) {
+                            sum += view.get(i);
+                        }
+                    }
+                    case BYTE_BUFFER -> {
+                        for (int i = 0; i < count; i++) {
+                            sum += buffer.getInt(i * Integer.BYTES);
+                        }
+                    }
+                }
+                return sum;
+            }
+        },
+        LONG(Long.BYTES) {
+            @Override
+            long sum(Access access, MemorySegment segment, ByteBuffer buffer, long count) {
+                long sum = 0;
+                switch (access) {
+                    case SEGMENT -> {
+                        for (long i = 0; i < count; i++) {
+                            sum += segment.getAtIndex(ValueLayout.JAVA_LONG, i);
+                        }
+                    }
+                    case TYPED_VIEW -> {
+                        LongBuffer view = buffer.asLongBuffer();
+                        for (int i = 0; i < count; i++) {
+                            sum += view.get(i);
+                        }
+                    }
+                    case BYTE_BUFFER -> {
+                        for (int i = 0; i < count; i++) {
+                            sum += buffer.getLong(i * Long.BYTES);
+                        }
+                    }
+                }
+                return sum;
+            }
+        },
+        FLOAT(Float.BYTES) {
+            @Override
+            long sum(Access access, MemorySegment segment, ByteBuffer buffer, long count) {
+                double sum = 0;
+                switch (access) {
+                    case SEGMENT -> {
+                        for (long i = 0; i < count; i++) {
+                            sum += segment.getAtIndex(ValueLayout.JAVA_FLOAT, i);
+                        }
+                    }
+                    case TYPED_VIEW -> {
+                        FloatBuffer view = buffer.asFloatBuffer();
+                        for (int i = 0; i < count; i++) {
+                            sum += view.get(i);
+                        }
+                    }
+                    case BYTE_BUFFER -> {
+                        for (int i = 0; i < count; i++) {
+                            sum += buffer.getFloat(i * Float.BYTES);
+                        }
+                    }
+                }
+                return Double.doubleToRawLongBits(sum);
+            }
+        },
+        DOUBLE(Double.BYTES) {
+            @Override
+            long sum(Access access, MemorySegment segment, ByteBuffer buffer, long count) {
+                double sum = 0;
+                switch (access) {
+                    case SEGMENT -> {
+                        for (long i = 0; i < count; i++) {
+                            sum += segment.getAtIndex(ValueLayout.JAVA_DOUBLE, i);
+                        }
+                    }
+                    case TYPED_VIEW -> {
+                        DoubleBuffer view = buffer.asDoubleBuffer();
+                        for (int i = 0; i < count; i++) {
+                            sum += view.get(i);
+                        }
+                    }
+                    case BYTE_BUFFER -> {
+                        for (int i = 0; i < count; i++) {
+                            sum += buffer.getDouble(i * Double.BYTES);
+                        }
+                    }
+                }
+                return Double.doubleToRawLongBits(sum);
+            }
+        };
+
+        final int byteSize;
+
+        Carrier(int byteSize) {
+            this.byteSize = byteSize;
+        }
+
+        /**
+         * Reads {@code count} values; {@code buffer} is a native order view
+         * of the same memory as {@code segment}.
+         */
+        abstract long sum(Access access, MemorySegment segment, ByteBuffer buffer, long count);
+    }
+
+    @Test
+    @UseDataProvider("carriersAndAccessesAndSizes")
+    public void benchTypedRead(Carrier carrier, Access access, long size) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(size, 8);
+            for (long i = 0; i < size / Long.BYTES; i++) {
+                segment.setAtIndex(ValueLayout.JAVA_LONG, i, i);
+            }
+            ByteBuffer buffer = segment.asByteBuffer().order(NATIVE);
+            long count = size / carrier.byteSize;
+            long rounds = Math.max(1, BYTES_PER_ROUND / size);
+            measure(String.format(Locale.ROOT, "read %s %s %s", carrier, access, formatSize(size)),
+                    rounds * count, rounds * size, () -> {
+                        for (long r = 0; r < rounds; r++) {
+                            consume(carrier.sum(access, segment, buffer, count));
+                        }
+                    });
+        }
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] conversions() {
+        Object[][] cases = new Object[Conversion.values().length][];
+        for (Conversion conversion : Conversion.values()) {
+            cases[conversion.ordinal()] = new Object[]{conversion};
+        }
+        return cases;
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] carriersAndAccessesAndSizes() {
+        List<Object[]> cases = new ArrayList<>();
+        for (Carrier carrier : Carrier.values()) {
+            for (Access access : Access.values()) {
+                for (long size : VIEW_SIZES) {
+                    cases.add(new Object[]{carrier, access, size});
+                }
+            }
+        }
+        return cases.toArray(new Object[0][]);
+    }
+}
@@ -0,0 +1,265 @@
+package com.v7878.panamatest.hotspot;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.consume;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+import static org.junit.Assert.assertEquals;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.AddressLayout;
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.MemoryLayout.PathElement;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+import com.v7878.invoke.VarHandle;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Reads through chains of pointers, like TestDereferencePath does with
+ * A->B->C, either with one var handle whose path contains
+ * {@link PathElement#dereferenceElement()}, or with a manual chain of
+ * {@code get(ADDRESS)}, {@code reinterpret} and {@code get}.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchDereferencePath {
+
+    static final int CHAINS = 4096;
+    static final int ROUNDS = 200;
+    static final int LIST_NODES = 1 << 20;
+
+    enum Access {
+        DEREFERENCE_PATH,
+        MANUAL_REINTERPRET,
+        TARGET_LAYOUT
+    }
+
+    /**
+     * Layouts of a chain of the given depth: level {@code i < depth} holds a
+     * pointer to level {@code i + 1}, level {@code depth} holds an int.
+     */
+    static MemoryLayout[] levels(int depth) {
+        MemoryLayout[] levels = new MemoryLayout[depth + 1];
+        levels[depth] = MemoryLayout.structLayout(ValueLayout.JAVA_INT.withName("x"));
+        for (int i = depth - 1; i >= 0; i--) {
+            levels[i] = MemoryLayout.structLayout(
+                    ValueLayout.ADDRESS.withTargetLayout(levels[i + 1]).withName("next"));
+        }
+        return levels;
+    }
+
+    static VarHandle dereferencePath(MemoryLayout root, int depth) {
+        PathElement[] path = new PathElement[depth * 2 + 1];
+        for (int i = 0; i < depth; i++) {
+            path[i * 2] = PathElement.groupElement("next");
+            path[i * 2 + 1] = PathElement.dereferenceElement();
+        }
+        path[depth * 2] = PathElement.groupElement("x");
+        return root.varHandle(path);
+    }
+
+    @Test
+    @UseDataProvider("accessesAndDepths")
+    public void benchChain(Access access, int depth) throws Throwable {
+        MemoryLayout[] levels = levels(depth);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment roots = arena.allocate(levels[0], CHAINS);
+            long expected = 0;
+            for (int chain = 0; chain < CHAINS; chain++) {
+                MemorySegment current = roots.asSlice(chain * levels[0].byteSize(), levels[0]);
+                for (int level = 1; level <= depth; level++) {
+                    MemorySegment next = arena.allocate(levels[level]);
+                    current.set(ValueLayout.ADDRESS, 0, next);
+                    current = next;
+                }
+                current.set(ValueLayout.JAVA_INT, 0, chain);
+                expected += chain;
+            }
+
+            VarHandle path = dereferencePath(levels[0], depth);
+            long[] sizes = new long[depth + 1];
+            AddressLayout[] targets = new AddressLayout[depth];
+            for (int level = 0; level <= depth; level++) {
+                sizes[level] = levels[level].byteSize();
+                if (level < depth) {
+                    targets[level] = ValueLayout.ADDRESS.withTargetLayout(levels[level + 1]);
+                }
+            }
+            long rootSize = sizes[0];
+            ChainReader reader = switch (access) {
+                case DEREFERENCE_PATH -> chain -> (int) path.get(roots, chain * rootSize);
+                case MANUAL_REINTERPRET -> chain -> {
+                    MemorySegment current = roots.get(ValueLayout.ADDRESS, chain * rootSize)
+                            .reinterpret(sizes[1]);
+                    for (int level = 1; level < depth; level++) {
+                        current = current.get(ValueLayout.ADDRESS, 0).reinterpret(sizes[level + 1]);
+                    }
+                    return current.get(ValueLayout.JAVA_INT, 0);
+                };
+                case TARGET_LAYOUT -> chain -> {
+                    MemorySegment current = roots.get(targets[0], chain * rootSize);
+                    for (int level = 1; level < depth; level++) {
+                        current = current.get(targets[level], 0);
+                    }
+                    return current.get(ValueLayout.JAVA_INT, 0);
+                };
+            };
+
+            long sum = 0;
+            for (int chain = 0; chain < CHAINS; chain++) {
+                sum += reader.read(chain);
+            }
+            assertEquals(expected, sum);
+
+            measure(String.format(Locale.ROOT, "%s depth=%d", access, depth), (long) CHAINS * ROUNDS, 0, () -> {
+                long total = 0;
+                for (int round = 0; round < ROUNDS; round++) {
+                    for (int chain = 0; chain < CHAINS; chain++) {
+                        total += reader.read(chain);
+                    }
+                }
+                consume(total);
+            });
+        }
+    }
+
+    interface ChainReader {
+        int read(long chain) throws Throwable;
+    }
+
+    static final MemoryLayout PLAIN_NODE = MemoryLayout.structLayout(
+            ValueLayout.ADDRESS.withName("next"),
+            ValueLayout.JAVA_LONG.withName("value")
+    );
+
+    static final MemoryLayout NODE = MemoryLayout.structLayout(
+            ValueLayout.ADDRESS.withTargetLayout(PLAIN_NODE).withName("next"),
+            ValueLayout.JAVA_LONG.withName("value")
+    );
+
+    static final long NODE_SIZE = NODE.byteSize();
+    static final long VALUE_OFFSET = NODE.byteOffset(PathElement.groupElement("value"));
+    static final AddressLayout NEXT = ValueLayout.ADDRESS.withTargetLayout(NODE);
+
+    static final VarHandle NEXT_VALUE = NODE.varHandle(
+            PathElement.groupElement("next"), PathElement.dereferenceElement(),
+            PathElement.groupElement("value"));
+    static final VarHandle NEXT_NEXT = NODE.varHandle(
+            PathElement.groupElement("next"), PathElement.dereferenceElement(),
+            PathElement.groupElement("next"));
+
+    /**
+     * Walks a list of {@link #LIST_NODES} nodes, linked either in memory
+     * order or in random order (every hop is a cache miss), and sums the
+     * values.
+     */
+    @Test
+    @UseDataProvider("accessesAndOrders")
+    public void benchLinkedList(Access access, boolean shuffled) throws Throwable {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment nodes = arena.allocate(NODE, LIST_NODES);
+            int[] order = new int[LIST_NODES];
+            for (int i = 0; i < LIST_NODES; i++) {
+                order[i] = i;
+            }
+            if (shuffled) {
+                Random random = new Random(42);
+                for (int i = LIST_NODES - 1; i > 0; i--) {
+                    int j = random.nextInt(i + 1);
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                }
+            }
+            long expected = 0;
+            for (int i = 0; i < LIST_NODES; i++) {
+                long node = order[i] * NODE_SIZE;
+                MemorySegment next = i + 1 < LIST_NODES ?
+                        nodes.asSlice(order[i + 1] * NODE_SIZE, NODE) : MemorySegment.NULL;
+                nodes.set(ValueLayout.ADDRESS, node, next);
+                nodes.set(ValueLayout.JAVA_LONG, node + VALUE_OFFSET, i);
+                expected += i;
+            }
+            MemorySegment head = nodes.asSlice(order[0] * NODE_SIZE, NODE);
+
+            ListWalker walker = switch (access) {
+                // two nodes per step: the successor's value and next pointer come through the path
+                case DEREFERENCE_PATH -> node -> {
+                    long sum = 0;
+                    while (true) {
+                        sum += node.get(ValueLayout.JAVA_LONG, VALUE_OFFSET);
+                        sum += (long) NEXT_VALUE.get(node, 0L);
+                        MemorySegment next = (MemorySegment) NEXT_NEXT.get(node, 0L);
+                        if (next.address() == 0) {
+                            return sum;
+                        }
+                        node = next.reinterpret(NODE_SIZE);
+                    }
+                };
+                case MANUAL_REINTERPRET -> node -> {
+                    long sum = 0;
+                    while (true) {
+                        sum += node.get(ValueLayout.JAVA_LONG, VALUE_OFFSET);
+                        MemorySegment next = node.get(ValueLayout.ADDRESS, 0);
+                        if (next.address() == 0) {
+                            return sum;
+                        }
+                        node = next.reinterpret(NODE_SIZE);
+                    }
+                };
+                case TARGET_LAYOUT -> node -> {
+                    long sum = 0;
+                    while (true) {
+                        sum += node.get(ValueLayout.JAVA_LONG, VALUE_OFFSET);
+                        MemorySegment next = node.get(NEXT, 0);
+                        if (next.address() == 0) {
+                            return sum;
+                        }
+                        node = next;
+                    }
+                };
+            };
+
+            assertEquals(expected, walker.walk(head));
+            measure(String.format(Locale.ROOT, "%s list shuffled=%b", access, shuffled), LIST_NODES, 0,
+                    () -> consume(walker.walk(head)));
+        }
+    }
+
+    interface ListWalker {
+        long walk(MemorySegment head) throws Throwable;
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] accessesAndDepths() {
+        int[] depths = {1, 2, 4, 8};
+        Object[][] cases = new Object[Access.values().length * depths.length][];
+        int i = 0;
+        for (Access access : Access.values()) {
+            for (int depth : depths) {
+                cases[i++] = new Object[]{access, depth};
+            }
+        }
+        return cases;
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] accessesAndOrders() {
+        Object[][] cases = new Object[Access.values().length * 2][];
+        int i = 0;
+        for (Access access : Access.values()) {
+            for (boolean shuffled : new boolean[]{false, true}) {
+                cases[i++] = new Object[]{access, shuffled};
+            }
+        }
+        return cases;
+    }
+}
@@ -0,0 +1,143 @@
+package com.v7878.panamatest.hotspot;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.GB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.KB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.MB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.assertThroughputAtLeast;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.formatSize;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.is64Bit;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.repetitions;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeNoException;
+import static org.junit.Assume.assumeTrue;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.FileChannelUtils;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+import com.v7878.panamatest.hotspot.BenchmarkHelper.Result;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Throughput of {@link MemorySegment#fill(byte)} from a single byte up to
+ * multi-gigabyte native and mapped segments, gated against a stored baseline.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchFill {
+
+    static final long[] SIZES = {1, 16, 256, 4 * KB, 64 * KB, MB, 16 * MB, 256 * MB, GB, 4 * GB};
+
+    // Every round fills roughly this many bytes, so that small sizes are not dominated by timer noise
+    static final long BYTES_PER_ROUND = 256 * MB;
+    static final long MAX_FILLS_PER_ROUND = 1 << 20;
+
+    // A run fails if it is more than this fraction below the baseline
+    static final double TOLERANCE = 0.2;
+
+    /*
+     * Stored baseline, in GB/s. These are conservative floors for a low-end arm64 device.
+     * Small sizes are bound by the per-call cost of fill(), large ones by memory bandwidth.
+     * Mapped segments additionally pay for writeback of dirty pages by the kernel.
+     * Update these numbers when the reference device changes.
+     */
+    static double baselineGbPerSecond(Kind kind, long size) {
+        double base;
+        if (size < 16) {
+            base = 0.002;
+        } else if (size < 256) {
+            base = 0.03;
+        } else if (size < 4 * KB) {
+            base = 0.4;
+        } else if (size < MB) {
+            base = 2.0;
+        } else {
+            base = 1.5;
+        }
+        return kind == Kind.MAPPED ? base / 2 : base;
+    }
+
+    enum Kind {
+        NATIVE,
+        MAPPED
+    }
+
+    @Test
+    @UseDataProvider("kindsAndSizes")
+    public void benchFill(Kind kind, long size) throws IOException {
+        assumeTrue("multi-GB segments need a 64-bit address space", size < GB || is64Bit());
+
+        File file = null;
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment;
+            if (kind == Kind.NATIVE) {
+                try {
+                    segment = arena.allocate(size, 8);
+                } catch (OutOfMemoryError ex) {
+                    assumeNoException("not enough memory for " + formatSize(size), ex);
+                    return;
+                }
+            } else {
+                file = File.createTempFile("benchFill", "out");
+                file.deleteOnExit();
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(size);
+                }
+                try (FileChannel channel = FileChannel.open(file.toPath(),
+                        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    segment = FileChannelUtils.map(channel, FileChannel.MapMode.READ_WRITE, 0L, size, arena);
+                } catch (IOException ex) {
+                    assumeNoException("cannot map " + formatSize(size), ex);
+                    return;
+                }
+            }
+
+            long fills = repetitions(size, BYTES_PER_ROUND, MAX_FILLS_PER_ROUND);
+            MemorySegment target = segment;
+            byte[] value = {0};
+            Result result = measure("fill " + kind + " " + formatSize(size),
+                    fills, fills * size, () -> {
+                        for (long i = 0; i < fills; i++) {
+                            target.fill(value[0]++);
+                        }
+                    });
+
+            // make sure the last fill reached both ends of the segment
+            byte last = (byte) (value[0] - 1);
+            assertEquals(last, segment.get(ValueLayout.JAVA_BYTE, 0));
+            assertEquals(last, segment.get(ValueLayout.JAVA_BYTE, size - 1));
+
+            assertThroughputAtLeast(result, baselineGbPerSecond(kind, size), TOLERANCE);
+        } finally {
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] kindsAndSizes() {
+        List<Object[]> cases = new ArrayList<>();
+        for (Kind kind : Kind.values()) {
+            for (long size : SIZES) {
+                cases.add(new Object[]{kind, size});
+            }
+        }
+        return cases.toArray(new Object[0][]);
+    }
+}
@@ -0,0 +1,202 @@
+package com.v7878.panamatest.hotspot;
+
+import static com.v7878.foreign.ValueLayout.ADDRESS;
+import static com.v7878.foreign.ValueLayout.JAVA_INT;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.percentile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Debug;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.FunctionDescriptor;
+import com.v7878.foreign.Linker;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.SymbolLookup;
+import com.v7878.panamatest.util.SymbolIndex;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The load-and-call loop of {@code LibraryLookupTest.LibraryLoadAndAccess} as
+ * a benchmark: every iteration opens an arena, loads libLibraryLookup through
+ * {@link SymbolLookup#libraryLookup(String, Arena)}, calls {@code inc} and
+ * closes the arena, which unloads the library again. Reports iterations per
+ * second and latency percentiles for 1..N threads, and checks that open file
+ * descriptors and the native heap stay flat, and that the loader no longer
+ * knows the library afterwards.
+ * <p>
+ * libLibraryLookup is not loaded by any class loader, so that closing the
+ * last arena really unloads it.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchLibraryChurn {
+
+    static final String LIBRARY = System.mapLibraryName("LibraryLookup");
+    static final MethodHandle INC = Linker.nativeLinker().downcallHandle(FunctionDescriptor.ofVoid());
+    static final int ITERATIONS = 2_000;
+    static final int[] THREADS = {1, 2, 4, 8};
+    static final long MAX_NATIVE_HEAP_GROWTH = 1 << 20;
+    static final int MAX_FD_GROWTH = 4;
+    // from <dlfcn.h>
+    static final int RTLD_NOLOAD = 4;
+
+    static final String LIB_PATH;
+
+    static {
+        // next to a library of this test suite; this also works when they are not extracted from the APK
+        System.loadLibrary("Null");
+        String sibling = SymbolIndex.ofLibraryContaining(SymbolLookup.loaderLookup(), "get_null").library();
+        LIB_PATH = sibling.substring(0, sibling.lastIndexOf('/') + 1) + LIBRARY;
+    }
+
+    static final MethodHandle DLOPEN = Linker.nativeLinker().downcallHandle(
+            findDl("dlopen"), FunctionDescriptor.of(ADDRESS, ADDRESS, JAVA_INT));
+    static final MethodHandle DLCLOSE = Linker.nativeLinker().downcallHandle(
+            findDl("dlclose"), FunctionDescriptor.of(JAVA_INT, ADDRESS));
+
+    static MemorySegment findDl(String name) {
+        Optional<MemorySegment> symbol = Linker.nativeLinker().defaultLookup().find(name);
+        if (symbol.isPresent()) {
+            return symbol.get();
+        }
+        // bionic exports the dl* functions from libdl.so rather than from libc.so
+        return SymbolLookup.libraryLookup("libdl.so", Arena.global()).find(name).orElseThrow(
+                () -> new AssertionError("Cannot check whether the library is loaded, no " + name));
+    }
+
+    enum ArenaKind {
+        CONFINED,
+        SHARED;
+
+        Arena open() {
+            return this == CONFINED ? Arena.ofConfined() : Arena.ofShared();
+        }
+    }
+
+    static void loadAndCall(ArenaKind kind) {
+        try (Arena arena = kind.open()) {
+            MemorySegment inc = SymbolLookup.libraryLookup(LIB_PATH, arena).find("inc").orElseThrow();
+            INC.invokeExact(inc);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable th) {
+            throw new AssertionError(th);
+        }
+    }
+
+    static int openFileDescriptors() {
+        String[] fds = new File("/proc/self/fd").list();
+        return fds == null ? -1 : fds.length;
+    }
+
+    /**
+     * Asks the loader whether the library is still loaded, which also works
+     * for libraries mapped straight from the APK, unlike /proc/self/maps.
+     */
+    static boolean isLoaded() throws Throwable {
+        MemorySegment handle;
+        try (Arena arena = Arena.ofConfined()) {
+            handle = (MemorySegment) DLOPEN.invokeExact(arena.allocateFrom(LIB_PATH), RTLD_NOLOAD);
+        }
+        if (handle.address() == 0) {
+            return false;
+        }
+        // RTLD_NOLOAD still takes a reference
+        int closed = (int) DLCLOSE.invokeExact(handle);
+        assertEquals("dlclose failed", 0, closed);
+        return true;
+    }
+
+    /**
+     * Runs {@code iterations} load-call-unload cycles on each of
+     * {@code threads} threads, and returns the latencies of all cycles.
+     */
+    static long[] run(ArenaKind kind, int threads, int iterations) throws InterruptedException {
+        long[] samples = new long[threads * iterations];
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int first = t * iterations;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < iterations; i++) {
+                        long begin = System.nanoTime();
+                        loadAndCall(kind);
+                        samples[first + i] = System.nanoTime() - begin;
+                    }
+                } catch (Throwable th) {
+                    failure.compareAndSet(null, th);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertNull("load/unload failed", failure.get());
+        return samples;
+    }
+
+    @Test
+    @UseDataProvider("arenaKindsAndThreads")
+    public void benchLoadUnload(ArenaKind kind, int threads) throws Throwable {
+        // warm up, so that one-time allocations do not count as growth
+        run(kind, threads, ITERATIONS / 10);
+        assertFalse("library still loaded after warm-up", isLoaded());
+        int fdsBefore = openFileDescriptors();
+        long heapBefore = Debug.getNativeHeapAllocatedSize();
+
+        long begin = System.nanoTime();
+        long[] samples = run(kind, threads, ITERATIONS);
+        long nanos = System.nanoTime() - begin;
+
+        boolean loaded = isLoaded();
+        int fdsAfter = openFileDescriptors();
+        long heapAfter = Debug.getNativeHeapAllocatedSize();
+        System.out.printf(Locale.ROOT,
+                "%s threads=%d: %.0f cycles/s, p50 %.1f us, p99 %.1f us, max %.1f us; " +
+                        "fds %d -> %d, native heap %+d KB, still loaded %b%n",
+                kind, threads, samples.length * 1e9 / nanos,
+                percentile(samples, samples.length, 50) / 1e3, percentile(samples, samples.length, 99) / 1e3,
+                percentile(samples, samples.length, 100) / 1e3,
+                fdsBefore, fdsAfter, (heapAfter - heapBefore) / 1024, loaded);
+        assertFalse("library still loaded", loaded);
+        assertTrue("file descriptors leaked: " + fdsBefore + " -> " + fdsAfter,
+                fdsAfter - fdsBefore <= MAX_FD_GROWTH);
+        assertTrue("native heap grew by " + (heapAfter - heapBefore),
+                heapAfter - heapBefore <= MAX_NATIVE_HEAP_GROWTH);
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] arenaKindsAndThreads() {
+        List<Object[]> cases = new ArrayList<>();
+        for (ArenaKind kind : ArenaKind.values()) {
+            for (int threads : THREADS) {
+                cases.add(new Object[]{kind, threads});
+            }
+        }
+        return cases.toArray(new Object[0][]);
+    }
+}
@@ -0,0 +1,213 @@
+package com.v7878.panamatest.hotspot;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.MB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.percentile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.FileChannelUtils;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * TestMappedHandshake as a measurement harness: writers keep writing to a
+ * shared mapped segment while its arena is closed, and the harness records
+ * how long close() takes, the write throughput before the close, and
+ * whether any write was lost or torn.
+ * <p>
+ * Every writer owns a disjoint part of the segment, made of 16-byte records
+ * {@code (seq, ~seq)} that it fills round-robin with increasing sequence
+ * numbers. After the close, the file is mapped again and every record must
+ * hold the last sequence number the writer completed in it. Only the record
+ * that was being written when the arena was closed may be torn.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchMappedHandshake {
+
+    static final long RECORD_SIZE = 16;
+    static final int ROUNDS = 5;
+    static final int RUN_MILLIS = 2_000;
+    static final int MAX_EXECUTOR_WAIT_SECONDS = 20;
+
+    /**
+     * @param segmentSize size of the mapped file
+     * @param accessors   number of writer threads
+     * @param forceEvery  writes between two force() calls of a writer's part, 0 for never
+     */
+    record Config(long segmentSize, int accessors, int forceEvery) {
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "size=%d accessors=%d forceEvery=%d", segmentSize, accessors, forceEvery);
+        }
+    }
+
+    record RoundResult(long closeNanos, int closeAttempts, long writes, long runNanos,
+                       long torn, long unexpectedTorn, long lost) {
+    }
+
+    @Test
+    @UseDataProvider("configs")
+    public void benchCloseUnderWrites(Config config) throws Throwable {
+        long[] closeNanos = new long[ROUNDS];
+        long totalWrites = 0;
+        long totalRunNanos = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            RoundResult result = runRound(config);
+            closeNanos[round] = result.closeNanos();
+            totalWrites += result.writes();
+            totalRunNanos += result.runNanos();
+            System.out.printf(Locale.ROOT,
+                    "%s round %d: close %.3f ms (%d attempts), %.0f writes/s, torn %d, lost %d%n",
+                    config, round, result.closeNanos() / 1e6, result.closeAttempts(),
+                    result.writes() * 1e9 / result.runNanos(), result.torn(), result.lost());
+            assertEquals("lost writes", 0, result.lost());
+            assertEquals("torn records other than the in-flight ones", 0, result.unexpectedTorn());
+        }
+        System.out.printf(Locale.ROOT, "%s: close p50 %.3f ms, max %.3f ms, %.0f writes/s%n", config,
+                percentile(closeNanos, ROUNDS, 50) / 1e6, percentile(closeNanos, ROUNDS, 100) / 1e6,
+                totalWrites * 1e9 / totalRunNanos);
+    }
+
+    static RoundResult runRound(Config config) throws Throwable {
+        File file = File.createTempFile("benchMappedHandshake", "out");
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(config.segmentSize());
+        }
+        long recordsPerAccessor = config.segmentSize() / RECORD_SIZE / config.accessors();
+        assertTrue("segment too small for " + config.accessors() + " accessors", recordsPerAccessor > 0);
+        long partSize = recordsPerAccessor * RECORD_SIZE;
+
+        // per accessor: number of completed writes
+        AtomicLongArray completed = new AtomicLongArray(config.accessors());
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Arena arena = Arena.ofShared();
+            MemorySegment segment = FileChannelUtils.map(channel, MapMode.READ_WRITE, 0L, config.segmentSize(), arena);
+            ExecutorService executor = Executors.newFixedThreadPool(config.accessors());
+            CountDownLatch started = new CountDownLatch(config.accessors());
+            for (int i = 0; i < config.accessors(); i++) {
+                int accessor = i;
+                MemorySegment part = segment.asSlice(accessor * partSize, partSize);
+                executor.execute(() -> {
+                    long seq = 0;
+                    started.countDown();
+                    try {
+                        while (true) {
+                            long offset = (seq % recordsPerAccessor) * RECORD_SIZE;
+                            part.set(ValueLayout.JAVA_LONG, offset, seq + 1);
+                            part.set(ValueLayout.JAVA_LONG, offset + 8, ~(seq + 1));
+                            seq++;
+                            if (config.forceEvery() > 0 && seq % config.forceEvery() == 0) {
+                                part.force();
+                            }
+                        }
+                    } catch (IllegalStateException ex) {
+                        // the arena was closed
+                    } finally {
+                        completed.set(accessor, seq);
+                    }
+                });
+            }
+            started.await();
+            long runStart = System.nanoTime();
+            Thread.sleep(RUN_MILLIS);
+
+            long closeStart = System.nanoTime();
+            int attempts = 0;
+            // shared arenas may refuse to close while accesses are in flight
+            while (true) {
+                attempts++;
+                try {
+                    arena.close();
+                    break;
+                } catch (IllegalStateException ignored) {
+                }
+            }
+            long closeEnd = System.nanoTime();
+
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(MAX_EXECUTOR_WAIT_SECONDS, TimeUnit.SECONDS));
+
+            long writes = 0;
+            for (int i = 0; i < config.accessors(); i++) {
+                writes += completed.get(i);
+            }
+            long[] torn = new long[2];
+            long lost = verify(channel, config, recordsPerAccessor, partSize, completed, torn);
+            return new RoundResult(closeEnd - closeStart, attempts, writes, closeStart - runStart,
+                    torn[0], torn[1], lost);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Maps the file again and checks every record against the number of
+     * writes each accessor completed. Returns the number of lost writes,
+     * and stores the numbers of torn and unexpectedly torn records.
+     */
+    static long verify(FileChannel channel, Config config, long recordsPerAccessor, long partSize,
+                       AtomicLongArray completed, long[] torn) throws Exception {
+        long lost = 0;
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = FileChannelUtils.map(channel, MapMode.READ_ONLY, 0L, config.segmentSize(), arena);
+            for (int accessor = 0; accessor < config.accessors(); accessor++) {
+                long writes = completed.get(accessor);
+                long inFlight = writes % recordsPerAccessor;
+                for (long index = 0; index < recordsPerAccessor; index++) {
+                    long offset = accessor * partSize + index * RECORD_SIZE;
+                    long seq = segment.get(ValueLayout.JAVA_LONG, offset);
+                    long check = segment.get(ValueLayout.JAVA_LONG, offset + 8);
+                    // the last completed write to this record, 0 if there was none
+                    long expected = writes > index ?
+                            index + 1 + (writes - 1 - index) / recordsPerAccessor * recordsPerAccessor : 0;
+                    if (seq != 0 && check != ~seq) {
+                        torn[0]++;
+                        if (index != inFlight || seq != writes + 1) {
+                            torn[1]++;
+                        }
+                    } else if (seq < expected) {
+                        lost++;
+                    }
+                }
+            }
+        }
+        return lost;
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] configs() {
+        List<Object[]> configs = new ArrayList<>();
+        for (long size : new long[]{1_000_000, 64 * MB}) {
+            for (int accessors : new int[]{1, 5, 16}) {
+                for (int forceEvery : new int[]{0, 1024, 1}) {
+                    configs.add(new Object[]{new Config(size, accessors, forceEvery)});
+                }
+            }
+        }
+        return configs.toArray(new Object[0][]);
+    }
+}
@@ -0,0 +1,190 @@
+package com.v7878.panamatest.hotspot;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.GB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.KB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.MB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.consume;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.formatSize;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.is64Bit;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+import static org.junit.Assume.assumeNoException;
+import static org.junit.Assume.assumeTrue;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.FileChannelUtils;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Read and write bandwidth of files mapped with {@link FileChannelUtils#map}
+ * in each {@link FileChannel.MapMode}, next to positional
+ * {@link FileChannel} reads and writes through a native segment buffer.
+ * Every operation moves one {@link #BLOCK} between the file and a native
+ * buffer, either over the whole file in order or over random blocks.
+ * <p>
+ * The file is written in full before measuring, so reads never hit holes;
+ * after the warmup rounds it is usually in the page cache, so these numbers
+ * are for warm files.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchMappedIO {
+
+    static final long[] SIZES = {MB, 16 * MB, 256 * MB, GB, 4 * GB};
+    static final int BLOCK = (int) (4 * KB);
+    static final int MAX_RANDOM_BLOCKS = 1 << 16;
+
+    enum Access {
+        MAPPED_READ_ONLY,
+        MAPPED_READ_WRITE,
+        MAPPED_PRIVATE,
+        CHANNEL
+    }
+
+    enum Pattern {
+        SEQUENTIAL,
+        RANDOM
+    }
+
+    enum Op {
+        READ,
+        WRITE
+    }
+
+    static File createFile(long size) throws IOException {
+        File file = File.createTempFile("benchMappedIO", "out");
+        file.deleteOnExit();
+        try (Arena arena = Arena.ofConfined();
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            MemorySegment chunk = arena.allocate(MB, 8);
+            for (long i = 0; i < MB; i += 8) {
+                chunk.set(ValueLayout.JAVA_LONG, i, i);
+            }
+            ByteBuffer buffer = chunk.asByteBuffer();
+            for (long position = 0; position < size; position += MB) {
+                buffer.clear();
+                buffer.limit((int) Math.min(MB, size - position));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, position + buffer.position());
+                }
+            }
+        }
+        return file;
+    }
+
+    interface BlockIO {
+        void run(long blockOffset) throws IOException;
+    }
+
+    @Test
+    @UseDataProvider("cases")
+    public void benchMappedIO(Access access, Pattern pattern, Op op, long size) throws Throwable {
+        assumeTrue("multi-GB files need a 64-bit address space", size < GB || is64Bit());
+
+        File file;
+        try {
+            file = createFile(size);
+        } catch (IOException ex) {
+            assumeNoException("cannot create a file of " + formatSize(size), ex);
+            return;
+        }
+        try (Arena arena = Arena.ofConfined();
+             FileChannel channel = FileChannel.open(file.toPath(),
+                     StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MemorySegment buffer = arena.allocate(BLOCK, 8);
+            ByteBuffer byteBuffer = buffer.asByteBuffer();
+            BlockIO io;
+            if (access == Access.CHANNEL) {
+                io = op == Op.READ ? offset -> {
+                    byteBuffer.clear();
+                    while (byteBuffer.hasRemaining()) {
+                        channel.read(byteBuffer, offset + byteBuffer.position());
+                    }
+                } : offset -> {
+                    byteBuffer.clear();
+                    while (byteBuffer.hasRemaining()) {
+                        channel.write(byteBuffer, offset + byteBuffer.position());
+                    }
+                };
+            } else {
+                FileChannel.MapMode mode = switch (access) {
+                    case MAPPED_READ_ONLY -> FileChannel.MapMode.READ_ONLY;
+                    case MAPPED_READ_WRITE -> FileChannel.MapMode.READ_WRITE;
+                    default -> FileChannel.MapMode.PRIVATE;
+                };
+                MemorySegment mapped;
+                try {
+                    mapped = FileChannelUtils.map(channel, mode, 0L, size, arena);
+                } catch (IOException ex) {
+                    assumeNoException("cannot map " + formatSize(size), ex);
+                    return;
+                }
+                io = op == Op.READ ?
+                        offset -> MemorySegment.copy(mapped, offset, buffer, 0, BLOCK) :
+                        offset -> MemorySegment.copy(buffer, 0, mapped, offset, BLOCK);
+            }
+
+            long blocks = size / BLOCK;
+            long[] offsets;
+            if (pattern == Pattern.SEQUENTIAL) {
+                offsets = null;
+            } else {
+                Random random = new Random(42);
+                offsets = new long[(int) Math.min(blocks, MAX_RANDOM_BLOCKS)];
+                for (int i = 0; i < offsets.length; i++) {
+                    offsets[i] = (long) (random.nextDouble() * blocks) * BLOCK;
+                }
+            }
+            long ops = offsets == null ? blocks : offsets.length;
+            measure(String.format(Locale.ROOT, "%s %s %s %s", access, pattern, op, formatSize(size)),
+                    ops, ops * BLOCK, () -> {
+                        if (offsets == null) {
+                            for (long offset = 0; offset < size; offset += BLOCK) {
+                                io.run(offset);
+                            }
+                        } else {
+                            for (long offset : offsets) {
+                                io.run(offset);
+                            }
+                        }
+                        consume(buffer.get(ValueLayout.JAVA_LONG, 0));
+                    });
+        } finally {
+            file.delete();
+        }
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] cases() {
+        List<Object[]> cases = new ArrayList<>();
+        for (long size : SIZES) {
+            for (Access access : Access.values()) {
+                for (Pattern pattern : Pattern.values()) {
+                    for (Op op : Op.values()) {
+                        // read-only mappings cannot be written
+                        if (access == Access.MAPPED_READ_ONLY && op == Op.WRITE) continue;
+                        cases.add(new Object[]{access, pattern, op, size});
+                    }
+                }
+            }
+        }
+        return cases.toArray(new Object[0][]);
+    }
+}
@@ -0,0 +1,152 @@
+package com.v7878.panamatest.hotspot;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.GB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.KB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.MB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.consume;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.formatSize;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.repetitions;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeNoException;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Throughput of {@link MemorySegment#mismatch(MemorySegment)} for heap and
+ * native operands, with {@link Arrays#mismatch(byte[], byte[])} as reference.
+ * <p>
+ * Throughput is reported over the bytes that have to be compared before the
+ * mismatch is found, so a mismatch at {@link Position#START} shows the fixed
+ * per-call cost and {@link Position#END} shows the bandwidth.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchMismatch {
+
+    static final long[] SIZES = {64, 4 * KB, MB, 64 * MB, GB};
+
+    static final long BYTES_PER_ROUND = 512 * MB;
+    static final long MAX_CALLS_PER_ROUND = 1 << 20;
+
+    enum Position {
+        START,
+        MIDDLE,
+        END;
+
+        long offset(long size) {
+            return switch (this) {
+                case START -> 0;
+                case MIDDLE -> size / 2;
+                case END -> size - 1;
+            };
+        }
+    }
+
+    enum Operands {
+        HEAP_HEAP,
+        NATIVE_NATIVE,
+        HEAP_NATIVE
+    }
+
+    static MemorySegment allocate(Arena arena, long size, boolean heap) {
+        return heap ? MemorySegment.ofArray(new byte[Math.toIntExact(size)]) : arena.allocate(size, 8);
+    }
+
+    @Test
+    @UseDataProvider("operandsAndPositionsAndSizes")
+    public void benchSegmentMismatch(Operands operands, Position position, long size) {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment first, second;
+            try {
+                first = allocate(arena, size, operands != Operands.NATIVE_NATIVE);
+                second = allocate(arena, size, operands == Operands.HEAP_HEAP);
+            } catch (OutOfMemoryError ex) {
+                assumeNoException("not enough memory for " + formatSize(size), ex);
+                return;
+            }
+            first.fill((byte) 42);
+            second.fill((byte) 42);
+            long offset = position.offset(size);
+            second.set(ValueLayout.JAVA_BYTE, offset, (byte) 43);
+
+            assertEquals(offset, first.mismatch(second));
+
+            long compared = offset + 1;
+            long calls = repetitions(compared, BYTES_PER_ROUND, MAX_CALLS_PER_ROUND);
+            measure("mismatch " + operands + " " + position + " " + formatSize(size),
+                    calls, calls * compared, () -> {
+                        long sum = 0;
+                        for (long i = 0; i < calls; i++) {
+                            sum += first.mismatch(second);
+                        }
+                        consume(sum);
+                    });
+        }
+    }
+
+    @Test
+    @UseDataProvider("positionsAndSizes")
+    public void benchArraysMismatch(Position position, long size) {
+        byte[] first, second;
+        try {
+            first = new byte[Math.toIntExact(size)];
+            second = new byte[Math.toIntExact(size)];
+        } catch (OutOfMemoryError ex) {
+            assumeNoException("not enough memory for " + formatSize(size), ex);
+            return;
+        }
+        Arrays.fill(first, (byte) 42);
+        Arrays.fill(second, (byte) 42);
+        int offset = (int) position.offset(size);
+        second[offset] = 43;
+
+        assertEquals(offset, Arrays.mismatch(first, second));
+
+        long compared = offset + 1;
+        long calls = repetitions(compared, BYTES_PER_ROUND, MAX_CALLS_PER_ROUND);
+        measure("Arrays.mismatch " + position + " " + formatSize(size),
+                calls, calls * compared, () -> {
+                    long sum = 0;
+                    for (long i = 0; i < calls; i++) {
+                        sum += Arrays.mismatch(first, second);
+                    }
+                    consume(sum);
+                });
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] positionsAndSizes() {
+        List<Object[]> cases = new ArrayList<>();
+        for (Position position : Position.values()) {
+            for (long size : SIZES) {
+                cases.add(new Object[]{position, size});
+            }
+        }
+        return cases.toArray(new Object[0][]);
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] operandsAndPositionsAndSizes() {
+        List<Object[]> cases = new ArrayList<>();
+        for (Operands operands : Operands.values()) {
+            for (Object[] positionAndSize : positionsAndSizes()) {
+                cases.add(new Object[]{operands, positionAndSize[0], positionAndSize[1]});
+            }
+        }
+        return cases.toArray(new Object[0][]);
+    }
+}
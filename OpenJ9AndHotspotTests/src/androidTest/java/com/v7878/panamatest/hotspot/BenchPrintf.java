@@ -0,0 +1,239 @@
+package com.v7878.panamatest.hotspot;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.allocatedBytes;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.consume;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+import static com.v7878.panamatest.hotspot.NativeTestHelper.C_DOUBLE;
+import static com.v7878.panamatest.hotspot.NativeTestHelper.C_INT;
+import static com.v7878.panamatest.hotspot.NativeTestHelper.C_LONG_LONG;
+import static com.v7878.panamatest.hotspot.NativeTestHelper.C_POINTER;
+import static com.v7878.panamatest.hotspot.NativeTestHelper.C_SIZE_T;
+import static org.junit.Assert.assertEquals;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.FunctionDescriptor;
+import com.v7878.foreign.Linker;
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+import com.v7878.panamatest.util.VariadicHandleCache;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Formats log records through {@code snprintf} into a reused native buffer,
+ * with the printf conversions of {@code StdLibTest.test_printf}, and
+ * compares with {@link String#format}. The variadic handle of every format
+ * is linked once, up front, and then called either exactly, with unboxed
+ * arguments, or through a spreader with boxed arguments. Also reports the
+ * bytes allocated per record.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchPrintf {
+
+    static final int RECORDS = 1 << 20;
+    static final int BUFFER_SIZE = 256;
+    static final String STRING = "str";
+
+    static final Linker LINKER = Linker.nativeLinker();
+    static final MemorySegment SNPRINTF = LINKER.defaultLookup().find("snprintf").orElseThrow();
+    // int snprintf(char *str, size_t size, const char *format, ...)
+    static final FunctionDescriptor SNPRINTF_BASE = FunctionDescriptor.of(C_INT, C_POINTER, C_SIZE_T, C_POINTER);
+
+    /**
+     * The conversions of {@code StdLibTest.PrintfArg}, with values that
+     * change from record to record.
+     */
+    enum Field {
+        INT(C_INT, "%d", "%d"),
+        LONG(C_LONG_LONG, "%lld", "%d"),
+        DOUBLE(C_DOUBLE, "%.4f", "%.4f"),
+        STRING(C_POINTER, "%s", "%s");
+
+        final ValueLayout layout;
+        final String nativeFormat;
+        final String javaFormat;
+
+        Field(ValueLayout layout, String nativeFormat, String javaFormat) {
+            this.layout = layout;
+            this.nativeFormat = nativeFormat;
+            this.javaFormat = javaFormat;
+        }
+
+        Object nativeValue(int index, MemorySegment string) {
+            return this == STRING ? string : javaValue(index);
+        }
+
+        Object javaValue(int index) {
+            return switch (this) {
+                case INT -> index;
+                case LONG -> index * 1_000_003L;
+                case DOUBLE -> index * 0.25;
+                case STRING -> BenchPrintf.STRING;
+            };
+        }
+    }
+
+    enum Format {
+        ID(Field.INT),
+        ID_TIME(Field.INT, Field.LONG),
+        VALUE_NAME(Field.DOUBLE, Field.STRING),
+        RECORD(Field.INT, Field.LONG, Field.DOUBLE, Field.STRING);
+
+        final Field[] fields;
+
+        Format(Field... fields) {
+            this.fields = fields;
+        }
+
+        String format(boolean nativeFormat) {
+            StringBuilder format = new StringBuilder("record(");
+            for (int i = 0; i < fields.length; i++) {
+                format.append(i == 0 ? "" : ",").append(nativeFormat ? fields[i].nativeFormat : fields[i].javaFormat);
+            }
+            return format.append(")").toString();
+        }
+
+        MemoryLayout[] layouts() {
+            MemoryLayout[] layouts = new MemoryLayout[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                layouts[i] = fields[i].layout;
+            }
+            return layouts;
+        }
+    }
+
+    enum Strategy {
+        SNPRINTF_EXACT,
+        SNPRINTF_SPREAD,
+        STRING_FORMAT
+    }
+
+    /**
+     * Formats one record, and returns the length of the result.
+     */
+    interface Formatter {
+        int format(int index) throws Throwable;
+    }
+
+    /**
+     * Native state shared by the snprintf formatters: the buffer, the
+     * formats and the string argument, and one handle per format with the
+     * buffer, its size and the format bound.
+     */
+    static final class Natives {
+        final MemorySegment buffer;
+        final MemorySegment string;
+        final MethodHandle[] handles = new MethodHandle[Format.values().length];
+
+        Natives(Arena arena) {
+            buffer = arena.allocate(BUFFER_SIZE);
+            string = arena.allocateFrom(STRING);
+            Object size = C_SIZE_T.carrier() == long.class ? (Object) (long) BUFFER_SIZE : (Object) BUFFER_SIZE;
+            VariadicHandleCache cache = new VariadicHandleCache(LINKER, SNPRINTF, SNPRINTF_BASE, handles.length);
+            for (Format format : Format.values()) {
+                MemorySegment nativeFormat = arena.allocateFrom(format.format(true));
+                handles[format.ordinal()] = MethodHandles.insertArguments(
+                        cache.handle(format.layouts()), 0, buffer, size, nativeFormat);
+            }
+        }
+
+        String result(int length) {
+            return buffer.asSlice(0, length + 1).getString(0);
+        }
+    }
+
+    static Formatter formatter(Strategy strategy, Format format, Natives natives) {
+        MethodHandle handle = natives.handles[format.ordinal()];
+        MemorySegment string = natives.string;
+        return switch (strategy) {
+            case SNPRINTF_EXACT -> switch (format) {
+                case ID -> index -> (int) handle.invokeExact(index);
+                case ID_TIME -> index -> (int) handle.invokeExact(index, index * 1_000_003L);
+                case VALUE_NAME -> index -> (int) handle.invokeExact(index * 0.25, string);
+                case RECORD -> index -> (int) handle.invokeExact(index, index * 1_000_003L, index * 0.25, string);
+            };
+            case SNPRINTF_SPREAD -> {
+                MethodHandle spreader = handle.asSpreader(Object[].class, format.fields.length);
+                yield index -> {
+                    Object[] args = new Object[format.fields.length];
+                    for (int i = 0; i < args.length; i++) {
+                        args[i] = format.fields[i].nativeValue(index, string);
+                    }
+                    return (int) spreader.invokeExact(args);
+                };
+            }
+            case STRING_FORMAT -> {
+                String javaFormat = format.format(false);
+                yield index -> {
+                    Object[] args = new Object[format.fields.length];
+                    for (int i = 0; i < args.length; i++) {
+                        args[i] = format.fields[i].javaValue(index);
+                    }
+                    return String.format(Locale.ROOT, javaFormat, args).length();
+                };
+            }
+        };
+    }
+
+    @Test
+    @UseDataProvider("strategiesAndFormats")
+    public void benchFormat(Strategy strategy, Format format) throws Throwable {
+        try (Arena arena = Arena.ofConfined()) {
+            Natives natives = new Natives(arena);
+            Formatter formatter = formatter(strategy, format, natives);
+            // snprintf and String.format agree on every conversion
+            Formatter exact = formatter(Strategy.SNPRINTF_EXACT, format, natives);
+            Formatter java = formatter(Strategy.STRING_FORMAT, format, natives);
+            for (int index : new int[]{0, 1, 12345, Integer.MAX_VALUE}) {
+                int length = exact.format(index);
+                assertEquals(java.format(index), length);
+                Object[] args = new Object[format.fields.length];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = format.fields[i].javaValue(index);
+                }
+                assertEquals(String.format(Locale.ROOT, format.format(false), args), natives.result(length));
+            }
+
+            measure(String.format(Locale.ROOT, "%s %s", strategy, format), RECORDS, 0, () -> {
+                long chars = 0;
+                for (int i = 0; i < RECORDS; i++) {
+                    chars += formatter.format(i);
+                }
+                consume(chars);
+            });
+            long before = allocatedBytes();
+            long chars = 0;
+            for (int i = 0; i < RECORDS; i++) {
+                chars += formatter.format(i);
+            }
+            long allocated = allocatedBytes() - before;
+            consume(chars);
+            System.out.printf(Locale.ROOT, "  %.1f bytes allocated per record, %.1f chars per record%n",
+                    (double) allocated / RECORDS, (double) chars / RECORDS);
+        }
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] strategiesAndFormats() {
+        List<Object[]> cases = new ArrayList<>();
+        for (Strategy strategy : Strategy.values()) {
+            for (Format format : Format.values()) {
+                cases.add(new Object[]{strategy, format});
+            }
+        }
+        return cases.toArray(new Object[0][]);
+    }
+}
@@ -0,0 +1,182 @@
+package com.v7878.panamatest.hotspot;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.MEASURED_ROUNDS;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.WARMUP_ROUNDS;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measureTimed;
+import static org.junit.Assert.assertEquals;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+import com.v7878.invoke.VarHandle;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Scalability of int accesses through {@link ValueLayout#JAVA_INT}'s var handle
+ * from 1..N threads, on disjoint cache lines, on one falsely shared cache line
+ * and on one truly shared word of one shared segment.
+ * <p>
+ * Every thread increments its slot; only the placement of the slots changes.
+ * Confined arenas (one per thread, disjoint only) are the baseline that shows
+ * what the shared arena's liveness checks cost. Segments are allocated and
+ * threads are started before the timed part of a round.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchSharedAccess {
+
+    static final VarHandle intHandle = ValueLayout.JAVA_INT.varHandle();
+
+    static final int OPS_PER_THREAD = 1_000_000;
+    // Two 64-byte lines, so that adjacent-line prefetch does not turn disjoint slots into shared ones
+    static final long LINE_SIZE = 128;
+    static final int MAX_THREADS = Math.min(16, Runtime.getRuntime().availableProcessors());
+
+    enum Mode {
+        PLAIN,
+        VOLATILE,
+        CAS;
+
+        void increment(MemorySegment segment, long offset) {
+            switch (this) {
+                case PLAIN -> intHandle.set(segment, offset, (int) intHandle.get(segment, offset) + 1);
+                case VOLATILE -> intHandle.setVolatile(segment, offset,
+                        (int) intHandle.getVolatile(segment, offset) + 1);
+                case CAS -> {
+                    int value;
+                    do {
+                        value = (int) intHandle.getVolatile(segment, offset);
+                    } while (!(boolean) intHandle.compareAndSet(segment, offset, value, value + 1));
+                }
+            }
+        }
+    }
+
+    enum Placement {
+        // every slot on its own line
+        DISJOINT,
+        // all slots packed next to each other, so that every write invalidates the other threads' line
+        FALSE_SHARING,
+        // one slot for all threads, so that they also race on its value
+        SHARED_WORD;
+
+        long offset(int thread) {
+            return switch (this) {
+                case DISJOINT -> thread * LINE_SIZE;
+                case FALSE_SHARING -> thread * ValueLayout.JAVA_INT.byteSize();
+                case SHARED_WORD -> 0;
+            };
+        }
+
+        long byteSize(int threads) {
+            return this == DISJOINT ? threads * LINE_SIZE : LINE_SIZE;
+        }
+    }
+
+    enum ArenaKind {
+        SHARED,
+        CONFINED
+    }
+
+    @Test
+    @UseDataProvider("cases")
+    public void benchAccess(ArenaKind arenaKind, Placement placement, Mode mode, int threads) throws Throwable {
+        try (Arena arena = Arena.ofShared()) {
+            MemorySegment shared = arena.allocate(placement.byteSize(threads), LINE_SIZE);
+
+            measureTimed(String.format(Locale.ROOT, "%s %s %s threads=%d", arenaKind, placement, mode, threads),
+                    (long) OPS_PER_THREAD * threads, 0, () -> round(arenaKind, placement, mode, threads, shared));
+
+            int rounds = WARMUP_ROUNDS + MEASURED_ROUNDS;
+            if (arenaKind == ArenaKind.SHARED && placement != Placement.SHARED_WORD) {
+                // every slot is only written by its owner, so no update may be lost in any mode
+                for (int t = 0; t < threads; t++) {
+                    assertEquals(OPS_PER_THREAD * rounds, (int) intHandle.getVolatile(shared, placement.offset(t)));
+                }
+            } else if (arenaKind == ArenaKind.SHARED && mode == Mode.CAS) {
+                // the shared word only adds up when updates are atomic
+                assertEquals(OPS_PER_THREAD * threads * rounds, (int) intHandle.getVolatile(shared, 0));
+            }
+        }
+    }
+
+    /**
+     * Runs one round and returns its duration, from the moment every worker
+     * is ready until the last one is done.
+     */
+    static long round(ArenaKind arenaKind, Placement placement, Mode mode, int threads,
+                      MemorySegment shared) throws Throwable {
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long offset = placement.offset(t);
+            workers[t] = new Thread(() -> {
+                // a confined segment can only be allocated by the thread that uses it
+                Arena confined = arenaKind == ArenaKind.CONFINED ? Arena.ofConfined() : null;
+                try {
+                    MemorySegment segment = confined != null ? confined.allocate(LINE_SIZE, LINE_SIZE) : shared;
+                    long slot = confined != null ? 0 : offset;
+                    ready.countDown();
+                    start.await();
+                    run(mode, segment, slot);
+                } catch (Throwable th) {
+                    error.compareAndSet(null, th);
+                    ready.countDown();
+                } finally {
+                    done.countDown();
+                    if (confined != null) {
+                        confined.close();
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        ready.await();
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long nanos = System.nanoTime() - begin;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+        return nanos;
+    }
+
+    static void run(Mode mode, MemorySegment segment, long offset) {
+        for (int i = 0; i < OPS_PER_THREAD; i++) {
+            mode.increment(segment, offset);
+        }
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] cases() {
+        List<Object[]> cases = new ArrayList<>();
+        for (Mode mode : Mode.values()) {
+            for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+                cases.add(new Object[]{ArenaKind.CONFINED, Placement.DISJOINT, mode, threads});
+                for (Placement placement : Placement.values()) {
+                    cases.add(new Object[]{ArenaKind.SHARED, placement, mode, threads});
+                }
+            }
+        }
+        return cases.toArray(new Object[0][]);
+    }
+}
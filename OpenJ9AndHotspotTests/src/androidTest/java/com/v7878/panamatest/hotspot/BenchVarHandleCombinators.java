@@ -0,0 +1,250 @@
+package com.v7878.panamatest.hotspot;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.consume;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+import static org.junit.Assert.assertEquals;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+import com.v7878.invoke.VarHandle;
+import com.v7878.invoke.VarHandles;
+import com.v7878.panamatest.hotspot.BenchmarkHelper.Result;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Per-access cost of var handles adapted with the {@link VarHandles}
+ * combinators covered by TestAdaptVarHandles and TestVarHandleCombinators,
+ * next to a hand-written access that does the same work. The stacked
+ * cases apply the same identity coordinate filter 1 to 8 times: if the
+ * port fuses combinators the cost stays flat, otherwise it grows per layer.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchVarHandleCombinators {
+
+    static final int ELEMENTS = 1024;
+    static final int ROUNDS = 2_000;
+
+    static final MethodHandle INT_TO_LONG;
+    static final MethodHandle LONG_TO_INT;
+    static final MethodHandle INDEX_TO_OFFSET;
+    static final MethodHandle IDENTITY;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            INT_TO_LONG = lookup.findStatic(BenchVarHandleCombinators.class, "intToLong",
+                    MethodType.methodType(long.class, int.class));
+            LONG_TO_INT = lookup.findStatic(BenchVarHandleCombinators.class, "longToInt",
+                    MethodType.methodType(int.class, long.class));
+            INDEX_TO_OFFSET = lookup.findStatic(BenchVarHandleCombinators.class, "indexToOffset",
+                    MethodType.methodType(long.class, long.class));
+            IDENTITY = lookup.findStatic(BenchVarHandleCombinators.class, "identity",
+                    MethodType.methodType(long.class, long.class));
+        } catch (Throwable ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    static long intToLong(int value) {
+        return value;
+    }
+
+    static int longToInt(long value) {
+        return (int) value;
+    }
+
+    static long indexToOffset(long index) {
+        return index * Integer.BYTES;
+    }
+
+    static long identity(long value) {
+        return value;
+    }
+
+    /**
+     * Reads every int of the segment and returns the sum.
+     */
+    interface Reader {
+        long sum(MemorySegment segment) throws Throwable;
+    }
+
+    enum Kind {
+        // baselines
+        HAND_WRITTEN,
+        LAYOUT_HANDLE,
+        // one combinator each
+        INSERT_COORDINATES,
+        FILTER_VALUE,
+        FILTER_COORDINATES,
+        PERMUTE_COORDINATES,
+        SEQUENCE_ELEMENT,
+        NESTED_SEQUENCE_ELEMENT,
+        // the same identity filter, stacked
+        STACKED_1,
+        STACKED_2,
+        STACKED_4,
+        STACKED_8
+    }
+
+    static Reader reader(Kind kind) {
+        VarHandle intHandle = ValueLayout.JAVA_INT.varHandle();
+        switch (kind) {
+            case HAND_WRITTEN:
+                return segment -> {
+                    long sum = 0;
+                    for (long i = 0; i < ELEMENTS; i++) {
+                        sum += segment.getAtIndex(ValueLayout.JAVA_INT, i);
+                    }
+                    return sum;
+                };
+            case LAYOUT_HANDLE:
+                return segment -> {
+                    long sum = 0;
+                    for (long i = 0; i < ELEMENTS; i++) {
+                        sum += (int) intHandle.get(segment, i * Integer.BYTES);
+                    }
+                    return sum;
+                };
+            case INSERT_COORDINATES: {
+                // (segment, base, index) -> (segment, index)
+                VarHandle handle = VarHandles.insertCoordinates(
+                        ValueLayout.JAVA_INT.arrayElementVarHandle(), 1, 0L);
+                return segment -> {
+                    long sum = 0;
+                    for (long i = 0; i < ELEMENTS; i++) {
+                        sum += (int) handle.get(segment, i);
+                    }
+                    return sum;
+                };
+            }
+            case FILTER_VALUE: {
+                VarHandle handle = VarHandles.filterValue(intHandle, LONG_TO_INT, INT_TO_LONG);
+                return segment -> {
+                    long sum = 0;
+                    for (long i = 0; i < ELEMENTS; i++) {
+                        sum += (long) handle.get(segment, i * Integer.BYTES);
+                    }
+                    return sum;
+                };
+            }
+            case FILTER_COORDINATES: {
+                VarHandle handle = VarHandles.filterCoordinates(intHandle, 1, INDEX_TO_OFFSET);
+                return segment -> {
+                    long sum = 0;
+                    for (long i = 0; i < ELEMENTS; i++) {
+                        sum += (int) handle.get(segment, i);
+                    }
+                    return sum;
+                };
+            }
+            case PERMUTE_COORDINATES: {
+                VarHandle handle = VarHandles.permuteCoordinates(intHandle,
+                        List.of(long.class, MemorySegment.class), 1, 0);
+                return segment -> {
+                    long sum = 0;
+                    for (long i = 0; i < ELEMENTS; i++) {
+                        sum += (int) handle.get(i * Integer.BYTES, segment);
+                    }
+                    return sum;
+                };
+            }
+            case SEQUENCE_ELEMENT: {
+                VarHandle handle = MemoryLayout.sequenceLayout(ELEMENTS, ValueLayout.JAVA_INT)
+                        .varHandle(MemoryLayout.PathElement.sequenceElement());
+                return segment -> {
+                    long sum = 0;
+                    for (long i = 0; i < ELEMENTS; i++) {
+                        sum += (int) handle.get(segment, 0L, i);
+                    }
+                    return sum;
+                };
+            }
+            case NESTED_SEQUENCE_ELEMENT: {
+                // ELEMENTS ints as 32 rows of 32
+                VarHandle handle = MemoryLayout.sequenceLayout(32,
+                                MemoryLayout.sequenceLayout(ELEMENTS / 32, ValueLayout.JAVA_INT))
+                        .varHandle(MemoryLayout.PathElement.sequenceElement(),
+                                MemoryLayout.PathElement.sequenceElement());
+                return segment -> {
+                    long sum = 0;
+                    for (long row = 0; row < 32; row++) {
+                        for (long column = 0; column < ELEMENTS / 32; column++) {
+                            sum += (int) handle.get(segment, 0L, row, column);
+                        }
+                    }
+                    return sum;
+                };
+            }
+            default: {
+                int layers = Integer.parseInt(kind.name().substring("STACKED_".length()));
+                VarHandle handle = intHandle;
+                for (int layer = 0; layer < layers; layer++) {
+                    handle = VarHandles.filterCoordinates(handle, 1, IDENTITY);
+                }
+                VarHandle stacked = handle;
+                return segment -> {
+                    long sum = 0;
+                    for (long i = 0; i < ELEMENTS; i++) {
+                        sum += (int) stacked.get(segment, i * Integer.BYTES);
+                    }
+                    return sum;
+                };
+            }
+        }
+    }
+
+    @Test
+    @UseDataProvider("kinds")
+    public void benchGet(Kind kind) throws Throwable {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(ValueLayout.JAVA_INT, ELEMENTS);
+            long expected = 0;
+            for (int i = 0; i < ELEMENTS; i++) {
+                segment.setAtIndex(ValueLayout.JAVA_INT, i, i);
+                expected += i;
+            }
+            Reader reader = reader(kind);
+            assertEquals(expected, reader.sum(segment));
+
+            Result base = measure("get " + Kind.HAND_WRITTEN, (long) ELEMENTS * ROUNDS, 0,
+                    rounds(reader(Kind.HAND_WRITTEN), segment));
+            Result result = measure("get " + kind, (long) ELEMENTS * ROUNDS, 0, rounds(reader, segment));
+            System.out.printf(Locale.ROOT, "get %s: %+.2f ns/op over hand-written%n",
+                    kind, result.nsPerOp() - base.nsPerOp());
+        }
+    }
+
+    static BenchmarkHelper.Action rounds(Reader reader, MemorySegment segment) {
+        return () -> {
+            long sum = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                sum += reader.sum(segment);
+            }
+            consume(sum);
+        };
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] kinds() {
+        Object[][] cases = new Object[Kind.values().length][];
+        for (Kind kind : Kind.values()) {
+            cases[kind.ordinal()] = new Object[]{kind};
+        }
+        return cases;
+    }
+}
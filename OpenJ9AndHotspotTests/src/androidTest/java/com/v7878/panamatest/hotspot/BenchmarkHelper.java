@@ -0,0 +1,168 @@
+package com.v7878.panamatest.hotspot;
+
+import static org.junit.Assert.assertTrue;
+
+import android.os.Debug;
+
+import com.v7878.foreign.ValueLayout;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Not a test, but infra for benchmarks.
+ * <p>
+ * Every benchmark runs a few warmup rounds, then a fixed number of measured
+ * rounds, and reports the median round. Results are printed to stdout so that
+ * they end up in logcat next to the rest of the test output.
+ */
+public class BenchmarkHelper {
+
+    public static final int WARMUP_ROUNDS = 3;
+    public static final int MEASURED_ROUNDS = 5;
+
+    public static final long KB = 1L << 10;
+    public static final long MB = 1L << 20;
+    public static final long GB = 1L << 30;
+
+    // Keeps benchmark results alive so that the work producing them is not optimized away
+    private static volatile long sink;
+
+    public static void consume(long value) {
+        sink = value;
+    }
+
+    public static void consume(Object value) {
+        sink = System.identityHashCode(value);
+    }
+
+    @FunctionalInterface
+    public interface Action {
+        void run() throws Throwable;
+    }
+
+    /**
+     * @param name  benchmark name, as printed in the report
+     * @param ops   number of operations performed by one round
+     * @param bytes number of bytes processed by one round, or 0 if not meaningful
+     * @param nanos median duration of one round
+     */
+    public record Result(String name, long ops, long bytes, long nanos) {
+        public double nsPerOp() {
+            return (double) nanos / ops;
+        }
+
+        public double opsPerSecond() {
+            return ops * 1e9 / nanos;
+        }
+
+        public double gbPerSecond() {
+            return bytes / (double) GB * 1e9 / nanos;
+        }
+
+        public double mbPerSecond() {
+            return bytes / (double) MB * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            if (bytes == 0) {
+                return String.format(Locale.ROOT, "%-60s %12.2f ns/op %14.0f ops/s",
+                        name, nsPerOp(), opsPerSecond());
+            }
+            return String.format(Locale.ROOT, "%-60s %12.2f ns/op %10.3f GB/s",
+                    name, nsPerOp(), gbPerSecond());
+        }
+    }
+
+    @FunctionalInterface
+    public interface TimedAction {
+        /**
+         * Runs one round and returns the duration of its timed part, in nanoseconds.
+         */
+        long run() throws Throwable;
+    }
+
+    public static Result measure(String name, long ops, long bytes, Action action) {
+        return measureTimed(name, ops, bytes, () -> {
+            long start = System.nanoTime();
+            action.run();
+            return System.nanoTime() - start;
+        });
+    }
+
+    /**
+     * Same as {@link #measure}, for rounds that time themselves, so that
+     * set-up such as starting worker threads can be left out of the result.
+     */
+    public static Result measureTimed(String name, long ops, long bytes, TimedAction action) {
+        try {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                action.run();
+            }
+            long[] rounds = new long[MEASURED_ROUNDS];
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                rounds[i] = Math.max(1, action.run());
+            }
+            Arrays.sort(rounds);
+            Result result = new Result(name, ops, bytes, rounds[MEASURED_ROUNDS / 2]);
+            System.out.println(result);
+            return result;
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable th) {
+            throw new IllegalStateException(th);
+        }
+    }
+
+    /**
+     * Returns the number of times an operation over {@code size} bytes should be
+     * repeated so that one round touches roughly {@code target} bytes.
+     */
+    public static long repetitions(long size, long target, long max) {
+        return Math.max(1, Math.min(max, target / Math.max(1, size)));
+    }
+
+    /**
+     * Returns the value at the given percentile (0..100) of unsorted samples.
+     */
+    public static long percentile(long[] samples, int count, double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    public static String formatSize(long bytes) {
+        if (bytes >= GB && bytes % GB == 0) return bytes / GB + "G";
+        if (bytes >= MB && bytes % MB == 0) return bytes / MB + "M";
+        if (bytes >= KB && bytes % KB == 0) return bytes / KB + "K";
+        return bytes + "B";
+    }
+
+    /**
+     * Fails if the measured throughput falls more than {@code tolerance}
+     * (a fraction, e.g. 0.2 for 20%) below the stored baseline.
+     */
+    public static void assertThroughputAtLeast(Result result, double baselineGbPerSecond, double tolerance) {
+        double floor = baselineGbPerSecond * (1 - tolerance);
+        assertTrue(String.format(Locale.ROOT, "%s: %.3f GB/s is below baseline %.3f GB/s (floor %.3f GB/s)",
+                        result.name(), result.gbPerSecond(), baselineGbPerSecond, floor),
+                result.gbPerSecond() >= floor);
+    }
+
+    /**
+     * Returns the number of bytes allocated on the Java heap so far, for
+     * allocation counts around a measured loop.
+     */
+    public static long allocatedBytes() {
+        return Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+    }
+
+    public static boolean is64Bit() {
+        return ValueLayout.ADDRESS.byteSize() == 8;
+    }
+}
@@ -91,6 +91,15 @@ public class CallGeneratorHelper extends NativeTestHelper {
         }
     }
 
+    // Port-changed: the struct field lists of functions(), for util.TestStructCodec
+    public static List<List<StructFieldType>> structFieldLists() {
+        List<List<StructFieldType>> all = new ArrayList<>();
+        for (int j = 1; j <= MAX_FIELDS; j++) {
+            all.addAll(StructFieldType.perms(j));
+        }
+        return all;
+    }
+
     public enum ParamType {
         INT("int", C_INT),
         FLOAT("float", C_FLOAT),
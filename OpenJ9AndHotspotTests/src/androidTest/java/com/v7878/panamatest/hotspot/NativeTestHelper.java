@@ -23,9 +23,6 @@
 
 package com.v7878.panamatest.hotspot;
 
-import static com.v7878.foreign.MemoryLayout.PathElement.groupElement;
-import static com.v7878.foreign.MemoryLayout.PathElement.sequenceElement;
-
 import com.v7878.foreign.AddressLayout;
 import com.v7878.foreign.Arena;
 import com.v7878.foreign.FunctionDescriptor;
@@ -42,6 +39,8 @@ import com.v7878.foreign.UnionLayout;
 import com.v7878.foreign.ValueLayout;
 import com.v7878.invoke.Handles;
 import com.v7878.invoke.VarHandle;
+import com.v7878.panamatest.util.LayoutAccessorCache;
+import com.v7878.panamatest.util.LayoutAccessorCache.Step;
 
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
@@ -59,6 +58,8 @@ public class NativeTestHelper {
 
     private static final MethodHandle MH_SAVER;
     private static final Random DEFAULT_RANDOM;
+    // test values are generated for the same few layouts over and over
+    private static final LayoutAccessorCache ACCESSORS = new LayoutAccessorCache(1024);
 
     static {
         int seed = Integer.getInteger("NativeTestHelper.DEFAULT_RANDOM.seed", ThreadLocalRandom.current().nextInt());
@@ -216,7 +217,7 @@ public class NativeTestHelper {
             List<Consumer<Object>> fieldChecks = new ArrayList<>();
             for (MemoryLayout fieldLayout : struct.memberLayouts()) {
                 if (fieldLayout instanceof PaddingLayout) continue;
-                MemoryLayout.PathElement fieldPath = groupElement(fieldLayout.name().orElseThrow());
+                Step fieldPath = Step.group(fieldLayout.name().orElseThrow());
                 fieldChecks.add(initField(random, segment, struct, fieldLayout, fieldPath, allocator));
             }
             return new TestValue(segment, actual -> fieldChecks.forEach(check -> check.accept(actual)));
@@ -226,14 +227,14 @@ public class NativeTestHelper {
                     .filter(l -> !(l instanceof PaddingLayout)));
             int fieldIdx = random.nextInt(filteredFields.size());
             MemoryLayout fieldLayout = filteredFields.get(fieldIdx);
-            MemoryLayout.PathElement fieldPath = groupElement(fieldLayout.name().orElseThrow());
+            Step fieldPath = Step.group(fieldLayout.name().orElseThrow());
             Consumer<Object> check = initField(random, segment, union, fieldLayout, fieldPath, allocator);
             return new TestValue(segment, check);
         } else if (layout instanceof SequenceLayout array) {
             MemorySegment segment = allocator.allocate(array);
             List<Consumer<Object>> elementChecks = new ArrayList<>();
             for (int i = 0; i < array.elementCount(); i++) {
-                elementChecks.add(initField(random, segment, array, array.elementLayout(), sequenceElement(i), allocator));
+                elementChecks.add(initField(random, segment, array, array.elementLayout(), Step.sequence(i), allocator));
             }
             return new TestValue(segment, actual -> elementChecks.forEach(check -> check.accept(actual)));
         } else if (layout instanceof AddressLayout) {
@@ -266,7 +267,7 @@ public class NativeTestHelper {
     }
 
     private static Consumer<Object> initField(Random random, MemorySegment container, MemoryLayout containerLayout,
-                                              MemoryLayout fieldLayout, MemoryLayout.PathElement fieldPath,
+                                              MemoryLayout fieldLayout, Step fieldPath,
                                               SegmentAllocator allocator) {
         TestValue fieldValue = genTestValue(random, fieldLayout, allocator);
         Consumer<Object> fieldCheck = fieldValue.check();
@@ -276,15 +277,15 @@ public class NativeTestHelper {
             slice.copyFrom((MemorySegment) fieldValue.value());
             return actual -> fieldCheck.accept(slicer.apply((MemorySegment) actual));
         } else {
-            VarHandle accessor = containerLayout.varHandle(fieldPath);
+            VarHandle accessor = ACCESSORS.varHandle(containerLayout, fieldPath);
             //set value
             accessor.set(container, 0L, fieldValue.value());
             return actual -> fieldCheck.accept(accessor.get((MemorySegment) actual, 0L));
         }
     }
 
-    private static UnaryOperator<MemorySegment> slicer(MemoryLayout containerLayout, MemoryLayout.PathElement fieldPath) {
-        MethodHandle slicer = containerLayout.sliceHandle(fieldPath);
+    private static UnaryOperator<MemorySegment> slicer(MemoryLayout containerLayout, Step fieldPath) {
+        MethodHandle slicer = ACCESSORS.sliceHandle(containerLayout, fieldPath);
         return container -> {
             try {
                 return (MemorySegment) slicer.invokeExact(container, 0L);
@@ -24,6 +24,8 @@ package com.v7878.panamatest.hotspot;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assume.assumeNoException;
+import static org.junit.Assume.assumeTrue;
 import static java.lang.System.out;
 
 import com.tngtech.java.junit.dataprovider.DataProvider;
@@ -38,6 +40,9 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
@@ -45,7 +50,6 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.IntFunction;
 import java.util.stream.Stream;
 
-@Ignore("LONG TEST GROUP")
 @RunWith(DataProviderRunner.class)
 public class TestMismatch {
 
@@ -57,42 +61,49 @@ public class TestMismatch {
         return segment;
     }
 
+    @Ignore("LONG TEST GROUP")
     @Test(expected = IndexOutOfBoundsException.class)
     @UseDataProvider("slices")
     public void testNegativeSrcFromOffset(MemorySegment s1, MemorySegment s2) {
         MemorySegment.mismatch(s1, -1, 0, s2, 0, 0);
     }
 
+    @Ignore("LONG TEST GROUP")
     @Test(expected = IndexOutOfBoundsException.class)
     @UseDataProvider("slices")
     public void testNegativeDstFromOffset(MemorySegment s1, MemorySegment s2) {
         MemorySegment.mismatch(s1, 0, 0, s2, -1, 0);
     }
 
+    @Ignore("LONG TEST GROUP")
     @Test(expected = IndexOutOfBoundsException.class)
     @UseDataProvider("slices")
     public void testNegativeSrcToOffset(MemorySegment s1, MemorySegment s2) {
         MemorySegment.mismatch(s1, 0, -1, s2, 0, 0);
     }
 
+    @Ignore("LONG TEST GROUP")
     @Test(expected = IndexOutOfBoundsException.class)
     @UseDataProvider("slices")
     public void testNegativeDstToOffset(MemorySegment s1, MemorySegment s2) {
         MemorySegment.mismatch(s1, 0, 0, s2, 0, -1);
     }
 
+    @Ignore("LONG TEST GROUP")
     @Test(expected = IndexOutOfBoundsException.class)
     @UseDataProvider("slices")
     public void testNegativeSrcLength(MemorySegment s1, MemorySegment s2) {
         MemorySegment.mismatch(s1, 3, 2, s2, 0, 0);
     }
 
+    @Ignore("LONG TEST GROUP")
     @Test(expected = IndexOutOfBoundsException.class)
     @UseDataProvider("slices")
     public void testNegativeDstLength(MemorySegment s1, MemorySegment s2) {
         MemorySegment.mismatch(s1, 0, 0, s2, 3, 2);
     }
 
+    @Ignore("LONG TEST GROUP")
     @Test
     @UseDataProvider("slices")
     public void testSameValues(MemorySegment ss1, MemorySegment ss2) {
@@ -113,6 +124,7 @@ public class TestMismatch {
         }
     }
 
+    @Ignore("LONG TEST GROUP")
     @Test
     @UseDataProvider("slicesStatic")
     public void testSameValuesStatic(SliceOffsetAndSize ss1, SliceOffsetAndSize ss2) {
@@ -196,6 +208,7 @@ public class TestMismatch {
         return (byte) rnd.nextInt(Byte.MIN_VALUE, Byte.MAX_VALUE + 1);
     }
 
+    @Ignore("LONG TEST GROUP")
     @Test
     @UseDataProvider("slices")
     public void testDifferentValues(MemorySegment s1, MemorySegment s2) {
@@ -222,6 +235,7 @@ public class TestMismatch {
         }
     }
 
+    @Ignore("LONG TEST GROUP")
     @Test
     @UseDataProvider("slicesStatic")
     public void testDifferentValuesStatic(SliceOffsetAndSize ss1, SliceOffsetAndSize ss2) {
@@ -256,15 +270,36 @@ public class TestMismatch {
         }
     }
 
+    // two segments just above Integer.MAX_VALUE bytes, and some room for the rest of the process
+    static final long LARGE_TEST_MEMORY = 2 * ((long) Integer.MAX_VALUE + 10L) + (512L << 20);
+
+    // Port-changed: the kernel rather kills the process than fail the allocations when memory is short
+    static long availableMemory() throws IOException {
+        try (var lines = Files.lines(Paths.get("/proc/meminfo"))) {
+            return lines.filter(line -> line.startsWith("MemAvailable:"))
+                    .mapToLong(line -> Long.parseLong(line.replaceAll("\\D", "")) * 1024)
+                    .findFirst().orElse(0);
+        }
+    }
+
     @Test
-    public void testLarge() {
+    public void testLarge() throws IOException {
         // skip if not on 64 bits
-        if (ValueLayout.ADDRESS.byteSize() > 32) {
+        // Port-changed: byteSize() is in bytes, so "> 32" never held and the body never ran
+        //if (ValueLayout.ADDRESS.byteSize() > 32) {
+        if (ValueLayout.ADDRESS.byteSize() == 8) {
+            long available = availableMemory();
+            assumeTrue("needs " + LARGE_TEST_MEMORY + " bytes, " + available + " available",
+                    available >= LARGE_TEST_MEMORY);
             try (Arena arena = Arena.ofConfined()) {
-                var s1 = arena.allocate((long) Integer.MAX_VALUE + 10L, 8);
-                ;
-                var s2 = arena.allocate((long) Integer.MAX_VALUE + 10L, 8);
-                ;
+                MemorySegment s1, s2;
+                try {
+                    s1 = arena.allocate((long) Integer.MAX_VALUE + 10L, 8);
+                    s2 = arena.allocate((long) Integer.MAX_VALUE + 10L, 8);
+                } catch (OutOfMemoryError ex) {
+                    assumeNoException(ex);
+                    return;
+                }
                 assertEquals(s1.mismatch(s1), -1);
                 assertEquals(s1.mismatch(s2), -1);
                 assertEquals(s2.mismatch(s1), -1);
@@ -23,12 +23,12 @@
 
 package com.v7878.panamatest.hotspot.channels;
 
-import static com.v7878.foreign.ValueLayout.JAVA_BYTE;
 import static org.junit.Assert.assertTrue;
 
 import com.tngtech.java.junit.dataprovider.DataProvider;
 import com.v7878.foreign.Arena;
 import com.v7878.foreign.MemorySegment;
+import com.v7878.panamatest.util.SegmentBufferPool;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -69,12 +69,16 @@ public class AbstractChannelsTest {
 
     static final Random RANDOM = new Random(ThreadLocalRandom.current().nextInt());
 
+    static ByteBuffer randomize(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        RANDOM.nextBytes(bytes);
+        buffer.put(bytes);
+        buffer.clear();
+        return buffer;
+    }
+
     static ByteBuffer segmentBufferOfSize(Arena session, int size) {
-        var segment = session.allocate(size, 1);
-        for (int i = 0; i < size; i++) {
-            segment.set(JAVA_BYTE, i, ((byte) RANDOM.nextInt()));
-        }
-        return segment.asByteBuffer();
+        return randomize(session.allocate(size, 1).asByteBuffer());
     }
 
     static ByteBuffer[] segmentBuffersOfSize(int len, Arena session, int size) {
@@ -84,6 +88,23 @@ public class AbstractChannelsTest {
         return bufs;
     }
 
+    /**
+     * Returns buffers from {@code pool}, filled with random bytes. Tests keep
+     * one pool per session and buffer size, and give buffers they are done
+     * with back through {@link #releaseAll}, so that later calls reuse them.
+     */
+    static ByteBuffer[] segmentBuffersOfSize(int len, SegmentBufferPool pool) {
+        ByteBuffer[] bufs = new ByteBuffer[len];
+        for (int i = 0; i < len; i++)
+            bufs[i] = randomize(pool.acquire());
+        return bufs;
+    }
+
+    static void releaseAll(SegmentBufferPool pool, ByteBuffer[] bufs) {
+        for (ByteBuffer buf : bufs)
+            pool.release(buf);
+    }
+
     /**
      * Returns an array of mixed source byte buffers; both heap and direct,
      * where heap can be from the global session or session-less, and direct are
@@ -0,0 +1,286 @@
+package com.v7878.panamatest.hotspot.channels;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.percentile;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNoException;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Load generator for asynchronous socket channels over loopback: many
+ * connections, each with one echo round trip in flight at any time, with all
+ * buffers taken from shared arenas. Reports completed round trips per second
+ * and their latency, then the cost of closing the server arena while every
+ * connection still has a read pending on it, and the time until the arena
+ * can be closed once those reads are released.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchAsyncSocketChannels extends AbstractChannelsTest {
+
+    static final int MESSAGE_SIZE = 1024;
+    static final int RUN_MILLIS = 5_000;
+    static final int MAX_SAMPLES = 1 << 20;
+    static final int CLOSE_ATTEMPTS = 100;
+    static final int MAX_WAIT_SECONDS = 30;
+
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final AtomicInteger sampleCount = new AtomicInteger();
+    final long[] samples = new long[MAX_SAMPLES];
+
+    void fail(Throwable th) {
+        failure.compareAndSet(null, th);
+    }
+
+    /**
+     * Client side of a connection: writes a message, waits for its echo and
+     * records the round trip time, until the run is over.
+     */
+    final class Client implements CompletionHandler<Integer, Void> {
+        final AsynchronousSocketChannel channel;
+        final ByteBuffer out;
+        final ByteBuffer in;
+        final CountDownLatch stopped;
+        boolean writing;
+        long start;
+
+        Client(AsynchronousSocketChannel channel, Arena arena, CountDownLatch stopped) {
+            this.channel = channel;
+            this.out = segmentBufferOfSize(arena, MESSAGE_SIZE);
+            this.in = segmentBufferOfSize(arena, MESSAGE_SIZE);
+            this.stopped = stopped;
+        }
+
+        void next() {
+            if (!running.get()) {
+                stopped.countDown();
+                return;
+            }
+            start = System.nanoTime();
+            writing = true;
+            out.clear();
+            channel.write(out, null, this);
+        }
+
+        @Override
+        public void completed(Integer n, Void att) {
+            if (writing) {
+                if (out.hasRemaining()) {
+                    channel.write(out, null, this);
+                } else {
+                    writing = false;
+                    in.clear();
+                    channel.read(in, null, this);
+                }
+                return;
+            }
+            if (n < 0) {
+                failed(new EOFException(), null);
+                return;
+            }
+            if (in.hasRemaining()) {
+                channel.read(in, null, this);
+                return;
+            }
+            int index = sampleCount.getAndIncrement();
+            if (index < MAX_SAMPLES) {
+                samples[index] = System.nanoTime() - start;
+            }
+            next();
+        }
+
+        @Override
+        public void failed(Throwable exc, Void att) {
+            fail(exc);
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * Server side of a connection: echoes every message until end of stream.
+     */
+    final class Echo implements CompletionHandler<Integer, Void> {
+        final AsynchronousSocketChannel channel;
+        final ByteBuffer buffer;
+        final CountDownLatch finished;
+        boolean writing;
+
+        Echo(AsynchronousSocketChannel channel, Arena arena, CountDownLatch finished) {
+            this.channel = channel;
+            this.buffer = segmentBufferOfSize(arena, MESSAGE_SIZE);
+            this.finished = finished;
+        }
+
+        void read() {
+            writing = false;
+            buffer.clear();
+            channel.read(buffer, null, this);
+        }
+
+        @Override
+        public void completed(Integer n, Void att) {
+            if (writing) {
+                if (buffer.hasRemaining()) {
+                    channel.write(buffer, null, this);
+                } else {
+                    read();
+                }
+                return;
+            }
+            if (n < 0) {
+                finished.countDown();
+                return;
+            }
+            if (buffer.hasRemaining()) {
+                channel.read(buffer, null, this);
+                return;
+            }
+            writing = true;
+            buffer.flip();
+            channel.write(buffer, null, this);
+        }
+
+        @Override
+        public void failed(Throwable exc, Void att) {
+            fail(exc);
+            finished.countDown();
+        }
+    }
+
+    @Test
+    @UseDataProvider("connectionCounts")
+    public void benchOutstandingOperations(int connections) throws Throwable {
+        AsynchronousChannelGroup group = AsynchronousChannelGroup.withFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), Executors.defaultThreadFactory());
+        List<AsynchronousSocketChannel> channels = new ArrayList<>();
+        Arena clientArena = Arena.ofShared();
+        Arena serverArena = Arena.ofShared();
+        try (var listener = AsynchronousServerSocketChannel.open(group)) {
+            listener.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), connections);
+            CountDownLatch stopped = new CountDownLatch(connections);
+            CountDownLatch finished = new CountDownLatch(connections);
+            List<Client> clients = new ArrayList<>();
+            List<Echo> echoes = new ArrayList<>();
+            try {
+                for (int i = 0; i < connections; i++) {
+                    Future<AsynchronousSocketChannel> accepted = listener.accept();
+                    var client = AsynchronousSocketChannel.open(group);
+                    channels.add(client);
+                    client.connect(listener.getLocalAddress()).get(MAX_WAIT_SECONDS, SECONDS);
+                    var server = accepted.get(MAX_WAIT_SECONDS, SECONDS);
+                    channels.add(server);
+                    clients.add(new Client(client, clientArena, stopped));
+                    echoes.add(new Echo(server, serverArena, finished));
+                }
+            } catch (IOException | ExecutionException ex) {
+                assumeNoException("cannot open " + connections + " connections", ex);
+            }
+
+            for (Echo echo : echoes) {
+                echo.read();
+            }
+            long runStart = System.nanoTime();
+            for (Client client : clients) {
+                client.next();
+            }
+            Thread.sleep(RUN_MILLIS);
+            running.set(false);
+            assertTrue("clients did not stop", stopped.await(MAX_WAIT_SECONDS, SECONDS));
+            long runNanos = System.nanoTime() - runStart;
+            assertNull("I/O failed during the run", failure.get());
+
+            int count = Math.min(sampleCount.get(), MAX_SAMPLES);
+            System.out.printf(Locale.ROOT,
+                    "connections=%d: %.0f round trips/s, latency p50 %d us, p99 %d us, max %d us%n",
+                    connections, sampleCount.get() * 1e9 / runNanos,
+                    percentile(samples, count, 50) / 1000, percentile(samples, count, 99) / 1000,
+                    percentile(samples, count, 100) / 1000);
+
+            // every echo now has a read pending on a buffer of the server arena
+            int tried = 0;
+            int refused = 0;
+            long pendingStart = System.nanoTime();
+            while (tried < CLOSE_ATTEMPTS && serverArena.scope().isAlive()) {
+                tried++;
+                try {
+                    serverArena.close();
+                } catch (IllegalStateException expected) {
+                    refused++;
+                }
+            }
+            long pendingNanos = System.nanoTime() - pendingStart;
+
+            // end of stream completes the pending reads, which releases the arena
+            long releaseStart = System.nanoTime();
+            for (Client client : clients) {
+                client.channel.shutdownOutput();
+            }
+            int attempts = 0;
+            while (serverArena.scope().isAlive()) {
+                attempts++;
+                try {
+                    serverArena.close();
+                } catch (IllegalStateException ignored) {
+                    Thread.yield();
+                }
+            }
+            long releaseNanos = System.nanoTime() - releaseStart;
+            assertTrue("echoes did not finish", finished.await(MAX_WAIT_SECONDS, SECONDS));
+
+            System.out.printf(Locale.ROOT,
+                    "connections=%d: close with %d pending reads %.1f us per attempt (%d of %d refused), " +
+                            "closed %.3f ms after release (%d attempts)%n",
+                    connections, connections, pendingNanos / 1e3 / tried, refused, tried,
+                    releaseNanos / 1e6, attempts);
+        } finally {
+            for (var channel : channels) {
+                channel.close();
+            }
+            group.shutdownNow();
+            group.awaitTermination(MAX_WAIT_SECONDS, SECONDS);
+            if (serverArena.scope().isAlive()) {
+                serverArena.close();
+            }
+            clientArena.close();
+        }
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] connectionCounts() {
+        return new Object[][]{
+                {16},
+                {256},
+                {2048},
+        };
+    }
+}
@@ -0,0 +1,224 @@
+package com.v7878.panamatest.hotspot.channels;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.MB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.formatSize;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.percentile;
+import static com.v7878.panamatest.hotspot.channels.TestSocketChannels.connectChannels;
+import static com.v7878.panamatest.hotspot.channels.TestSocketChannels.readNBytes;
+import static com.v7878.panamatest.hotspot.channels.TestSocketChannels.writeNBytes;
+import static org.junit.Assert.assertEquals;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+import com.v7878.panamatest.hotspot.BenchmarkHelper.Result;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loopback TCP throughput and round-trip latency with buffers from
+ * {@link #segmentBuffersOfSize}, plain heap buffers and
+ * {@link #mixedBuffersOfSize}, for several message sizes and gather widths.
+ * A message of {@code size} bytes is spread over {@code width} buffers and
+ * written with one gathering write; the peer reads it with a scattering read
+ * into buffers of the same kind.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchSocketChannels extends AbstractChannelsTest {
+
+    static final int[] MESSAGE_SIZES = {64, 1024, 16 * 1024, 256 * 1024};
+    static final int[] GATHER_WIDTHS = {1, 4, 16};
+    static final long ROUND_BYTES = 64 * MB;
+    static final int LATENCY_SAMPLES = 20_000;
+
+    enum Kind {
+        SEGMENT,
+        HEAP,
+        MIXED;
+
+        ByteBuffer[] buffers(int len, Arena arena, int size) {
+            return switch (this) {
+                case SEGMENT -> segmentBuffersOfSize(len, arena, size);
+                case HEAP -> heapBuffersOfSize(len, size);
+                case MIXED -> mixedBuffersOfSize(len, arena, size);
+            };
+        }
+    }
+
+    static ByteBuffer[] heapBuffersOfSize(int len, int size) {
+        ByteBuffer[] bufs = new ByteBuffer[len];
+        for (int i = 0; i < len; i++) {
+            byte[] b = new byte[size];
+            RANDOM.nextBytes(b);
+            bufs[i] = ByteBuffer.wrap(b);
+        }
+        return bufs;
+    }
+
+    /**
+     * Runs the peer side of a connection on its own thread and rethrows its
+     * failure, if any, on close.
+     */
+    static final class Peer implements AutoCloseable {
+        @FunctionalInterface
+        interface Body {
+            void run() throws Exception;
+        }
+
+        final Thread thread;
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Peer(Body body) {
+            thread = new Thread(() -> {
+                try {
+                    body.run();
+                } catch (Throwable th) {
+                    failure.set(th);
+                }
+            }, "loopback-peer");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void close() throws Exception {
+            thread.join();
+            Throwable th = failure.get();
+            if (th != null) {
+                throw new AssertionError("peer failed", th);
+            }
+        }
+    }
+
+    /**
+     * Reads until {@code bytes} bytes were received, or returns false at end of stream.
+     */
+    static boolean readFully(SocketChannel channel, ByteBuffer[] buffers, long bytes) throws IOException {
+        long total = 0;
+        while (total < bytes) {
+            long n = channel.read(buffers);
+            if (n < 0) {
+                return false;
+            }
+            total += n;
+        }
+        return true;
+    }
+
+    @Test
+    @UseDataProvider("kindsSizesAndWidths")
+    public void benchThroughput(Kind kind, int messageSize, int width) throws Exception {
+        int bufferSize = messageSize / width;
+        long messages = ROUND_BYTES / messageSize;
+        long roundBytes = messages * messageSize;
+        try (var client = SocketChannel.open();
+             var server = ServerSocketChannel.open();
+             var peer = connectChannels(server, client);
+             var arena = Arena.ofShared()) {
+            ByteBuffer[] out = kind.buffers(width, arena, bufferSize);
+            ByteBuffer[] in = kind.buffers(width, arena, bufferSize);
+            ByteBuffer ack = ByteBuffer.allocate(1);
+            // the peer drains whole rounds and acknowledges each one with a single byte
+            try (var sink = new Peer(() -> {
+                ByteBuffer reply = ByteBuffer.allocate(1);
+                long received = 0;
+                while (true) {
+                    long n = peer.read(clear(in));
+                    if (n < 0) {
+                        return;
+                    }
+                    received += n;
+                    if (received == roundBytes) {
+                        received = 0;
+                        reply.clear();
+                        peer.write(reply);
+                    }
+                }
+            })) {
+                try {
+                    Result result = measure(String.format(Locale.ROOT, "%s throughput message=%s width=%d",
+                                    kind, formatSize(messageSize), width),
+                            messages, roundBytes, () -> {
+                                for (long i = 0; i < messages; i++) {
+                                    writeNBytes(client, clear(out), 0, width, messageSize);
+                                }
+                                ack.clear();
+                                assertEquals(1, client.read(ack));
+                            });
+                    System.out.printf(Locale.ROOT, "  %.1f MB/s%n", result.mbPerSecond());
+                } finally {
+                    // lets the peer see the end of stream, so that it terminates
+                    client.shutdownOutput();
+                }
+            }
+        }
+    }
+
+    @Test
+    @UseDataProvider("kindsSizesAndWidths")
+    public void benchRoundTrip(Kind kind, int messageSize, int width) throws Exception {
+        int bufferSize = messageSize / width;
+        try (var client = SocketChannel.open();
+             var server = ServerSocketChannel.open();
+             var peer = connectChannels(server, client);
+             var arena = Arena.ofShared()) {
+            client.socket().setTcpNoDelay(true);
+            peer.socket().setTcpNoDelay(true);
+            ByteBuffer[] out = kind.buffers(width, arena, bufferSize);
+            ByteBuffer[] in = kind.buffers(width, arena, bufferSize);
+            ByteBuffer[] echo = kind.buffers(width, arena, bufferSize);
+            try (var echoer = new Peer(() -> {
+                while (readFully(peer, clear(echo), messageSize)) {
+                    writeNBytes(peer, flip(echo), 0, width, messageSize);
+                }
+            })) {
+                long[] samples = new long[LATENCY_SAMPLES];
+                long[] p99 = new long[1];
+                try {
+                    Result result = measure(String.format(Locale.ROOT, "%s round trip message=%s width=%d",
+                                    kind, formatSize(messageSize), width),
+                            LATENCY_SAMPLES, 2L * LATENCY_SAMPLES * messageSize, () -> {
+                                for (int i = 0; i < LATENCY_SAMPLES; i++) {
+                                    long start = System.nanoTime();
+                                    writeNBytes(client, clear(out), 0, width, messageSize);
+                                    readNBytes(client, clear(in), 0, width, messageSize);
+                                    samples[i] = System.nanoTime() - start;
+                                }
+                                p99[0] = percentile(samples, LATENCY_SAMPLES, 99);
+                            });
+                    System.out.printf(Locale.ROOT, "  %.1f MB/s, p50 %d ns, p99 %d ns (last round)%n",
+                            result.mbPerSecond(), percentile(samples, LATENCY_SAMPLES, 50), p99[0]);
+                } finally {
+                    client.shutdownOutput();
+                }
+            }
+        }
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] kindsSizesAndWidths() {
+        List<Object[]> cases = new ArrayList<>();
+        for (Kind kind : Kind.values()) {
+            for (int size : MESSAGE_SIZES) {
+                for (int width : GATHER_WIDTHS) {
+                    cases.add(new Object[]{kind, size, width});
+                }
+            }
+        }
+        return cases.toArray(new Object[0][]);
+    }
+}
@@ -35,6 +35,7 @@ import com.tngtech.java.junit.dataprovider.DataProviderRunner;
 import com.tngtech.java.junit.dataprovider.UseDataProvider;
 import com.v7878.foreign.Arena;
 import com.v7878.foreign.MemorySegment;
+import com.v7878.panamatest.util.SegmentBufferPool;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -54,6 +55,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
 /**
@@ -263,7 +265,10 @@ public class TestAsyncSocketChannels extends AbstractChannelsTest {
 
             // write until socket buffer is full so as to create the conditions
             // for when a write does not complete immediately
-            var bba = segmentBuffersOfSize(32, drop, 128);
+            // Port-changed: the batches come from one pool, and every written batch goes back to it
+            var pool = new SegmentBufferPool(drop, 128);
+            var bba = segmentBuffersOfSize(32, pool);
+            var inFlight = new AtomicReference<>(bba);
             TestHandler<Long> handler;
             outstandingWriteOps.getAndIncrement();
             asc1.write(bba, 0, bba.length, timeout, SECONDS, null,
@@ -271,8 +276,10 @@ public class TestAsyncSocketChannels extends AbstractChannelsTest {
                         public void completed(Long result, Void att) {
                             super.completed(result, att);
                             bytesWritten.addAndGet(result);
+                            releaseAll(pool, inFlight.get());
                             if (continueWriting.get()) {
-                                var bba = segmentBuffersOfSize(32, drop, 128);
+                                var bba = segmentBuffersOfSize(32, pool);
+                                inFlight.set(bba);
                                 outstandingWriteOps.getAndIncrement();
                                 asc1.write(bba, 0, bba.length, timeout, SECONDS, null, this);
                             }
@@ -0,0 +1,114 @@
+package com.v7878.panamatest.util;
+
+import com.v7878.foreign.AddressLayout;
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.SegmentAllocator;
+import com.v7878.foreign.ValueLayout;
+
+/**
+ * A reusable block of native memory for the arguments of calls to native
+ * functions that take their arguments as an array, such as the
+ * {@code *_fromArgBlock} shims of clinkerffitests, which forward them to a
+ * function taking a {@code va_list}.
+ * <p>
+ * The block is an array of {@code capacity} slots of one layout: the
+ * argument type itself for an array of ints, doubles or structs, or an
+ * 8-byte {@link #MIXED_SLOT} for arguments of several types. Arguments are
+ * written into consecutive slots with the {@code add} methods, without
+ * allocating or boxing; the block is then passed as {@link #segment()}
+ * along with {@link #count()}, and {@link #reset()} makes it ready for the
+ * next call. Instances are not thread-safe.
+ */
+public final class ArgumentBlock {
+
+    /**
+     * A slot that holds one int, long, double or pointer at its start.
+     */
+    public static final MemoryLayout MIXED_SLOT = ValueLayout.JAVA_LONG;
+
+    private final MemorySegment segment;
+    private final long slotSize;
+    private final int capacity;
+    private int count;
+
+    public ArgumentBlock(SegmentAllocator allocator, MemoryLayout slot, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.segment = allocator.allocate(MemoryLayout.sequenceLayout(capacity, slot));
+        this.slotSize = slot.byteSize();
+        this.capacity = capacity;
+    }
+
+    private long next(long size) {
+        if (size > slotSize) {
+            throw new IllegalArgumentException("Argument of " + size
+                    + " bytes does not fit a slot of " + slotSize + " bytes");
+        }
+        if (count == capacity) {
+            throw new IllegalStateException("Argument block is full: " + capacity);
+        }
+        return count++ * slotSize;
+    }
+
+    public ArgumentBlock add(ValueLayout.OfInt layout, int value) {
+        segment.set(layout, next(layout.byteSize()), value);
+        return this;
+    }
+
+    public ArgumentBlock add(ValueLayout.OfLong layout, long value) {
+        segment.set(layout, next(layout.byteSize()), value);
+        return this;
+    }
+
+    public ArgumentBlock add(ValueLayout.OfDouble layout, double value) {
+        segment.set(layout, next(layout.byteSize()), value);
+        return this;
+    }
+
+    public ArgumentBlock add(AddressLayout layout, MemorySegment value) {
+        segment.set(layout, next(layout.byteSize()), value);
+        return this;
+    }
+
+    /**
+     * Copies a struct (or any other contents) into the next slot.
+     */
+    public ArgumentBlock add(MemorySegment struct) {
+        MemorySegment.copy(struct, 0, segment, next(struct.byteSize()), struct.byteSize());
+        return this;
+    }
+
+    /**
+     * Takes the next slot and returns its offset in {@link #segment()}, so
+     * that the caller can write a struct in place.
+     */
+    public long addSlot() {
+        return next(slotSize);
+    }
+
+    /**
+     * The block, with room for {@link #capacity()} slots.
+     */
+    public MemorySegment segment() {
+        return segment;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long slotSize() {
+        return slotSize;
+    }
+
+    public ArgumentBlock reset() {
+        count = 0;
+        return this;
+    }
+}
@@ -0,0 +1,170 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.foreign.ValueLayout.JAVA_INT;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.allocatedBytes;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.consume;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+import static com.v7878.panamatest.openj9.Shared.C_DOUBLE;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.FunctionDescriptor;
+import com.v7878.foreign.Linker;
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.SymbolLookup;
+import com.v7878.foreign.ValueLayout;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Cost of calling {@code addIntsFromVaList} and {@code addDoublesFromVaList}
+ * of valist.c with a growing number of arguments: through the
+ * {@code _fromArgBlock} shim with a reused {@link ArgumentBlock}, and
+ * through the {@code _variadic} shim with boxed arguments, by a
+ * {@link VariadicHandleCache} and by a handle linked up front. Also reports
+ * the bytes allocated per call.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchArgumentBlock {
+
+    static final int[] COUNTS = {1, 4, 8, 16};
+    static final int CALLS = 10_000;
+
+    static final Linker LINKER = Linker.nativeLinker();
+
+    static {
+        System.loadLibrary("clinkerffitests");
+    }
+
+    static MemorySegment find(String name) {
+        return SymbolLookup.loaderLookup().find(name).orElseThrow();
+    }
+
+    enum Element {
+        INT("addIntsFromVaList", JAVA_INT),
+        DOUBLE("addDoublesFromVaList", C_DOUBLE);
+
+        final String function;
+        final ValueLayout layout;
+
+        Element(String function, ValueLayout layout) {
+            this.function = function;
+            this.layout = layout;
+        }
+    }
+
+    enum Strategy {
+        ARG_BLOCK,
+        VARIADIC_CACHE,
+        VARIADIC_PRELINKED
+    }
+
+    /**
+     * One call to the function with {@code count} arguments.
+     */
+    interface Call {
+        double run(int seed) throws Throwable;
+    }
+
+    static Call call(Strategy strategy, Element element, int count, Arena arena) {
+        FunctionDescriptor fixed = FunctionDescriptor.of(element.layout, JAVA_INT);
+        switch (strategy) {
+            case ARG_BLOCK -> {
+                MethodHandle handle = LINKER.downcallHandle(find(element.function + "_fromArgBlock"),
+                        fixed.appendArgumentLayouts(ValueLayout.ADDRESS));
+                ArgumentBlock block = new ArgumentBlock(arena, element.layout, count);
+                if (element == Element.INT) {
+                    return seed -> {
+                        block.reset();
+                        for (int i = 0; i < count; i++) {
+                            block.add(JAVA_INT, seed + i);
+                        }
+                        return (int) handle.invokeExact(count, block.segment());
+                    };
+                }
+                return seed -> {
+                    block.reset();
+                    for (int i = 0; i < count; i++) {
+                        block.add(C_DOUBLE, seed + i);
+                    }
+                    return (double) handle.invokeExact(count, block.segment());
+                };
+            }
+            case VARIADIC_CACHE -> {
+                VariadicHandleCache cache = new VariadicHandleCache(LINKER,
+                        find(element.function + "_variadic"), fixed, 4);
+                return seed -> {
+                    Object[] values = new Object[count];
+                    for (int i = 0; i < count; i++) {
+                        values[i] = element == Element.INT ? (Object) (seed + i) : (Object) (double) (seed + i);
+                    }
+                    return ((Number) cache.invoke(new Object[]{count}, values)).doubleValue();
+                };
+            }
+            case VARIADIC_PRELINKED -> {
+                MemoryLayout[] layouts = new MemoryLayout[count];
+                for (int i = 0; i < count; i++) {
+                    layouts[i] = element.layout;
+                }
+                MethodHandle handle = LINKER.downcallHandle(find(element.function + "_variadic"),
+                        fixed.appendArgumentLayouts(layouts), Linker.Option.firstVariadicArg(1));
+                return seed -> {
+                    Object[] args = new Object[count + 1];
+                    args[0] = count;
+                    for (int i = 0; i < count; i++) {
+                        args[i + 1] = element == Element.INT ? (Object) (seed + i) : (Object) (double) (seed + i);
+                    }
+                    return ((Number) handle.invokeWithArguments(args)).doubleValue();
+                };
+            }
+            default -> throw new AssertionError(strategy);
+        }
+    }
+
+    @Test
+    @UseDataProvider("strategiesAndElementsAndCounts")
+    public void benchCall(Strategy strategy, Element element, int count) throws Throwable {
+        try (Arena arena = Arena.ofConfined()) {
+            Call call = call(strategy, element, count, arena);
+            measure(String.format(Locale.ROOT, "%s %s x%d", strategy, element, count), CALLS, 0, () -> {
+                double sum = 0;
+                for (int i = 0; i < CALLS; i++) {
+                    sum += call.run(i);
+                }
+                consume((long) sum);
+            });
+            long before = allocatedBytes();
+            double sum = 0;
+            for (int i = 0; i < CALLS; i++) {
+                sum += call.run(i);
+            }
+            long allocated = allocatedBytes() - before;
+            consume((long) sum);
+            System.out.printf(Locale.ROOT, "  %.1f bytes allocated per call%n", (double) allocated / CALLS);
+        }
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] strategiesAndElementsAndCounts() {
+        List<Object[]> cases = new ArrayList<>();
+        for (Strategy strategy : Strategy.values()) {
+            for (Element element : Element.values()) {
+                for (int count : COUNTS) {
+                    cases.add(new Object[]{strategy, element, count});
+                }
+            }
+        }
+        return cases.toArray(new Object[0][]);
+    }
+}
@@ -0,0 +1,116 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.consume;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.SymbolLookup;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * {@code find} latency of a chain of {@link SymbolLookup#or} delegates and
+ * of a {@link CachingCompositeLookup} over the same delegates, as the chain
+ * grows, for names defined by the first delegate, by the middle one, and by
+ * none. Every delegate is a hash map of its own symbols, like a library.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchCompositeLookup {
+
+    static final int[] CHAIN_LENGTHS = {1, 4, 16, 64, 128};
+    static final int SYMBOLS_PER_DELEGATE = 64;
+    static final int LOOKUPS = 1 << 16;
+
+    enum Position {
+        FRONT,
+        MIDDLE,
+        MISS
+    }
+
+    enum Kind {
+        OR_CHAIN,
+        CACHING,
+        CACHING_WITH_MISSES
+    }
+
+    static final class MapLookup implements SymbolLookup {
+        final Map<String, MemorySegment> symbols = new HashMap<>();
+
+        MapLookup(int delegate) {
+            for (int i = 0; i < SYMBOLS_PER_DELEGATE; i++) {
+                symbols.put(name(delegate, i), MemorySegment.ofAddress(((long) delegate << 16) | (i + 1)));
+            }
+        }
+
+        @Override
+        public Optional<MemorySegment> find(String name) {
+            return Optional.ofNullable(symbols.get(name));
+        }
+    }
+
+    static String name(int delegate, int symbol) {
+        return "plugin" + delegate + "_symbol" + symbol;
+    }
+
+    @Test
+    @UseDataProvider("kindsAndPositionsAndLengths")
+    public void benchFind(Kind kind, Position position, int length) {
+        List<SymbolLookup> delegates = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            delegates.add(new MapLookup(i));
+        }
+        SymbolLookup lookup = switch (kind) {
+            case OR_CHAIN -> {
+                SymbolLookup chain = delegates.get(0);
+                for (int i = 1; i < length; i++) {
+                    chain = chain.or(delegates.get(i));
+                }
+                yield chain;
+            }
+            case CACHING -> CachingCompositeLookup.of(false, delegates);
+            case CACHING_WITH_MISSES -> CachingCompositeLookup.of(true, delegates);
+        };
+        String[] names = new String[SYMBOLS_PER_DELEGATE];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = switch (position) {
+                case FRONT -> name(0, i);
+                case MIDDLE -> name(length / 2, i);
+                case MISS -> name(length, i);
+            };
+        }
+        measure(String.format(Locale.ROOT, "find %s %s chain=%d", kind, position, length), LOOKUPS, 0, () -> {
+            long sum = 0;
+            for (int i = 0; i < LOOKUPS; i++) {
+                Optional<MemorySegment> symbol = lookup.find(names[i % names.length]);
+                sum += symbol.isPresent() ? symbol.get().address() : 1;
+            }
+            consume(sum);
+        });
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] kindsAndPositionsAndLengths() {
+        List<Object[]> cases = new ArrayList<>();
+        for (Kind kind : Kind.values()) {
+            for (Position position : Position.values()) {
+                for (int length : CHAIN_LENGTHS) {
+                    cases.add(new Object[]{kind, position, length});
+                }
+            }
+        }
+        return cases.toArray(new Object[0][]);
+    }
+}
@@ -0,0 +1,131 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.foreign.MemoryLayout.PathElement.groupElement;
+import static com.v7878.foreign.MemoryLayout.PathElement.sequenceElement;
+import static com.v7878.foreign.ValueLayout.JAVA_DOUBLE;
+import static com.v7878.foreign.ValueLayout.JAVA_INT;
+import static com.v7878.foreign.ValueLayout.JAVA_LONG;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.consume;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.StructLayout;
+import com.v7878.panamatest.hotspot.BenchmarkHelper.Result;
+import com.v7878.panamatest.util.LayoutAccessorCache.Step;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+/**
+ * Cost of deriving a path accessor from a layout every time (what
+ * NativeTestHelper.initField used to do) versus looking it up in a
+ * {@link LayoutAccessorCache}, for paths of increasing depth.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchLayoutAccessorCache {
+
+    static final int MISS_OPS = 10_000;
+    static final int HIT_OPS = 1_000_000;
+
+    static final StructLayout LEAF = MemoryLayout.structLayout(
+            JAVA_INT.withName("a"),
+            JAVA_INT.withName("b"),
+            JAVA_DOUBLE.withName("c")
+    );
+    static final StructLayout MIDDLE = MemoryLayout.structLayout(
+            JAVA_LONG.withName("tag"),
+            MemoryLayout.sequenceLayout(8, LEAF).withName("leaves")
+    );
+    static final StructLayout ROOT = MemoryLayout.structLayout(
+            JAVA_LONG.withName("id"),
+            MemoryLayout.sequenceLayout(4, MIDDLE).withName("middles")
+    );
+
+    enum Depth {
+        ONE(new MemoryLayout.PathElement[]{groupElement("id")},
+                new Step[]{Step.group("id")}),
+        THREE(new MemoryLayout.PathElement[]{groupElement("middles"), sequenceElement(1), groupElement("tag")},
+                new Step[]{Step.group("middles"), Step.sequence(1), Step.group("tag")}),
+        FIVE(new MemoryLayout.PathElement[]{groupElement("middles"), sequenceElement(2),
+                groupElement("leaves"), sequenceElement(5), groupElement("c")},
+                new Step[]{Step.group("middles"), Step.sequence(2),
+                        Step.group("leaves"), Step.sequence(5), Step.group("c")});
+
+        final MemoryLayout.PathElement[] elements;
+        final Step[] steps;
+
+        Depth(MemoryLayout.PathElement[] elements, Step[] steps) {
+            this.elements = elements;
+            this.steps = steps;
+        }
+    }
+
+    @Test
+    @UseDataProvider("depths")
+    public void benchVarHandle(Depth depth) throws Throwable {
+        Result miss = measure("varHandle miss " + depth, MISS_OPS, 0, () -> {
+            for (int i = 0; i < MISS_OPS; i++) {
+                consume(ROOT.varHandle(depth.elements));
+            }
+        });
+        LayoutAccessorCache cache = new LayoutAccessorCache(16);
+        Result hit = measure("varHandle hit " + depth, HIT_OPS, 0, () -> {
+            for (int i = 0; i < HIT_OPS; i++) {
+                consume(cache.varHandle(ROOT, depth.steps));
+            }
+        });
+        System.out.printf(Locale.ROOT, "varHandle %s: hit is %.1fx cheaper%n", depth, miss.nsPerOp() / hit.nsPerOp());
+    }
+
+    @Test
+    @UseDataProvider("depths")
+    public void benchSliceHandle(Depth depth) throws Throwable {
+        Result miss = measure("sliceHandle miss " + depth, MISS_OPS, 0, () -> {
+            for (int i = 0; i < MISS_OPS; i++) {
+                consume(ROOT.sliceHandle(depth.elements));
+            }
+        });
+        LayoutAccessorCache cache = new LayoutAccessorCache(16);
+        Result hit = measure("sliceHandle hit " + depth, HIT_OPS, 0, () -> {
+            for (int i = 0; i < HIT_OPS; i++) {
+                consume(cache.sliceHandle(ROOT, depth.steps));
+            }
+        });
+        System.out.printf(Locale.ROOT, "sliceHandle %s: hit is %.1fx cheaper%n", depth, miss.nsPerOp() / hit.nsPerOp());
+    }
+
+    /**
+     * Every lookup misses when the working set is larger than the cache:
+     * shows the overhead the cache adds on top of building the accessor.
+     */
+    @Test
+    public void benchThrashing() throws Throwable {
+        LayoutAccessorCache cache = new LayoutAccessorCache(4);
+        Step[][] paths = new Step[8][];
+        for (int i = 0; i < paths.length; i++) {
+            paths[i] = new Step[]{Step.group("middles"), Step.sequence(i % 4),
+                    Step.group("leaves"), Step.sequence(i), Step.group("a")};
+        }
+        measure("varHandle thrashing", MISS_OPS, 0, () -> {
+            for (int i = 0; i < MISS_OPS; i++) {
+                consume(cache.varHandle(ROOT, paths[i % paths.length]));
+            }
+        });
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] depths() {
+        Object[][] cases = new Object[Depth.values().length][];
+        for (Depth depth : Depth.values()) {
+            cases[depth.ordinal()] = new Object[]{depth};
+        }
+        return cases;
+    }
+}
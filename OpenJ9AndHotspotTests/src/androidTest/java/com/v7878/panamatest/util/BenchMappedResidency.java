@@ -0,0 +1,123 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.MB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.consume;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.formatSize;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.percentile;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.FileChannelUtils;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Latency of the first access to random pages of a mapped file, after the
+ * file was dropped from the page cache (COLD), after a cold start followed
+ * by a {@link MappedResidency#prefetch} of the whole mapping (PREFETCHED),
+ * and with the file fully cached (WARM).
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchMappedResidency {
+
+    static final long SIZE = 256 * MB;
+    static final long PAGE = MappedResidency.pageSize();
+    static final int SAMPLES = 4096;
+    static final int RUNS = 5;
+
+    enum State {
+        COLD,
+        PREFETCHED,
+        WARM
+    }
+
+    @Test
+    @UseDataProvider("states")
+    public void benchFirstTouch(State state) throws Throwable {
+        File file = File.createTempFile("benchMappedResidency", "out");
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(SIZE);
+        }
+        try (Arena arena = Arena.ofConfined();
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MemorySegment mapped = FileChannelUtils.map(channel, FileChannel.MapMode.READ_WRITE, 0L, SIZE, arena);
+            // real data, so that nothing is served from file holes
+            for (long offset = 0; offset < SIZE; offset += PAGE) {
+                mapped.set(ValueLayout.JAVA_LONG, offset, offset);
+            }
+            MappedResidency.flush(mapped, 0, SIZE);
+
+            Random random = new Random(42);
+            int[] pages = new int[(int) (SIZE / PAGE)];
+            for (int i = 0; i < pages.length; i++) {
+                pages[i] = i;
+            }
+            long[] samples = new long[SAMPLES];
+            long[] p50 = new long[RUNS];
+            long[] p99 = new long[RUNS];
+            for (int run = 0; run < RUNS; run++) {
+                long prefetchNanos = 0;
+                if (state != State.WARM) {
+                    MappedResidency.evict(mapped, 0, SIZE);
+                    MappedResidency.dropPageCache(file.toPath());
+                }
+                if (state == State.PREFETCHED) {
+                    long start = System.nanoTime();
+                    MappedResidency.prefetch(mapped, 0, SIZE);
+                    prefetchNanos = System.nanoTime() - start;
+                } else if (state == State.WARM) {
+                    MappedResidency.prefetch(mapped, 0, SIZE);
+                }
+                double resident = MappedResidency.residentFraction(mapped, MB);
+
+                long sum = 0;
+                for (int i = 0; i < SAMPLES; i++) {
+                    // a partial shuffle, so that no page is touched twice and every sample is a first touch
+                    int swap = i + random.nextInt(pages.length - i);
+                    int page = pages[swap];
+                    pages[swap] = pages[i];
+                    pages[i] = page;
+                    long offset = page * PAGE;
+                    long start = System.nanoTime();
+                    sum += mapped.get(ValueLayout.JAVA_LONG, offset);
+                    samples[i] = System.nanoTime() - start;
+                }
+                consume(sum);
+                p50[run] = percentile(samples, SAMPLES, 50);
+                p99[run] = percentile(samples, SAMPLES, 99);
+                System.out.printf(Locale.ROOT,
+                        "%s %s run %d: resident %.2f, prefetch %.1f ms, first touch p50 %d ns, p99 %d ns, max %d ns%n",
+                        state, formatSize(SIZE), run, resident, prefetchNanos / 1e6,
+                        p50[run], p99[run], percentile(samples, SAMPLES, 100));
+            }
+            System.out.printf(Locale.ROOT, "%s %s: median p50 %d ns, median p99 %d ns%n",
+                    state, formatSize(SIZE), percentile(p50, RUNS, 50), percentile(p99, RUNS, 50));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] states() {
+        Object[][] cases = new Object[State.values().length][];
+        for (State state : State.values()) {
+            cases[state.ordinal()] = new Object[]{state};
+        }
+        return cases;
+    }
+}
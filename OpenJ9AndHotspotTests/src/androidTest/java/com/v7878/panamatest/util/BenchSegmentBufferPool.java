@@ -0,0 +1,128 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.KB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.allocatedBytes;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.formatSize;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Steady-state channel I/O where every message gets a fresh pair of buffers:
+ * from a {@link SegmentBufferPool}, from a confined arena opened and closed
+ * per message, from {@link ByteBuffer#allocateDirect} and from
+ * {@link ByteBuffer#allocate}. Each operation writes one message to a pipe
+ * and reads it back on the same thread, so messages must fit in the pipe.
+ * After the timed rounds, one more round reports the Java heap allocated per
+ * message.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchSegmentBufferPool {
+
+    static final int[] MESSAGE_SIZES = {256, (int) (4 * KB), (int) (16 * KB)};
+    static final int MESSAGES = 100_000;
+
+    enum Source {
+        POOLED,
+        ARENA_PER_MESSAGE,
+        ALLOCATE_DIRECT,
+        HEAP
+    }
+
+    static void writeFully(Pipe.SinkChannel sink, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            sink.write(buffer);
+        }
+    }
+
+    static void readFully(Pipe.SourceChannel source, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer) < 0) {
+                throw new IOException("Unexpected end of stream");
+            }
+        }
+    }
+
+    static void roundTrips(Source source, int size, SegmentBufferPool pool,
+                           Pipe.SinkChannel sink, Pipe.SourceChannel in) throws IOException {
+        for (int i = 0; i < MESSAGES; i++) {
+            switch (source) {
+                case POOLED -> {
+                    ByteBuffer out = pool.acquire();
+                    ByteBuffer back = pool.acquire();
+                    writeFully(sink, out);
+                    readFully(in, back);
+                    pool.release(back);
+                    pool.release(out);
+                }
+                case ARENA_PER_MESSAGE -> {
+                    try (Arena message = Arena.ofConfined()) {
+                        ByteBuffer out = message.allocate(size).asByteBuffer();
+                        ByteBuffer back = message.allocate(size).asByteBuffer();
+                        writeFully(sink, out);
+                        readFully(in, back);
+                    }
+                }
+                case ALLOCATE_DIRECT -> {
+                    ByteBuffer out = ByteBuffer.allocateDirect(size);
+                    ByteBuffer back = ByteBuffer.allocateDirect(size);
+                    writeFully(sink, out);
+                    readFully(in, back);
+                }
+                case HEAP -> {
+                    ByteBuffer out = ByteBuffer.allocate(size);
+                    ByteBuffer back = ByteBuffer.allocate(size);
+                    writeFully(sink, out);
+                    readFully(in, back);
+                }
+            }
+        }
+    }
+
+    @Test
+    @UseDataProvider("sourcesAndSizes")
+    public void benchMessageRoundTrip(Source source, int size) throws Throwable {
+        Pipe pipe = Pipe.open();
+        try (Arena arena = Arena.ofShared();
+             Pipe.SinkChannel sink = pipe.sink();
+             Pipe.SourceChannel in = pipe.source()) {
+            SegmentBufferPool pool = new SegmentBufferPool(arena, size);
+            measure(String.format(Locale.ROOT, "%s message=%s", source, formatSize(size)),
+                    MESSAGES, 2L * MESSAGES * size, () -> roundTrips(source, size, pool, sink, in));
+            // the pool is warm now, so the pooled round trips should not allocate at all
+            long before = allocatedBytes();
+            roundTrips(source, size, pool, sink, in);
+            long allocated = allocatedBytes() - before;
+            System.out.printf(Locale.ROOT, "  %.1f bytes allocated per message%n", (double) allocated / MESSAGES);
+            if (source == Source.POOLED) {
+                System.out.println("  pooled buffers allocated: " + pool.allocatedBuffers());
+            }
+        }
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] sourcesAndSizes() {
+        List<Object[]> cases = new ArrayList<>();
+        for (Source source : Source.values()) {
+            for (int size : MESSAGE_SIZES) {
+                cases.add(new Object[]{source, size});
+            }
+        }
+        return cases.toArray(new Object[0][]);
+    }
+}
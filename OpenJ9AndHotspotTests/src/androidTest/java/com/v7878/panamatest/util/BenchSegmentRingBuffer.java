@@ -0,0 +1,154 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Throughput of {@link SegmentRingBuffer} with P producers and C consumers,
+ * next to {@link ArrayBlockingQueue} of the same capacity as an on-heap
+ * reference.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchSegmentRingBuffer {
+
+    static final int OPS_PER_PRODUCER = 1_000_000;
+    static final int CAPACITY = 1024;
+    static final long EMPTY = -1;
+    static final long POISON = -2;
+
+    interface Queue {
+        boolean offer(long value);
+
+        long poll();
+    }
+
+    enum Kind {
+        SEGMENT,
+        ARRAY_BLOCKING
+    }
+
+    @Test
+    @UseDataProvider("kindsAndThreads")
+    public void benchThroughput(Kind kind, int producers, int consumers) throws Throwable {
+        try (Arena arena = Arena.ofShared()) {
+            long total = (long) OPS_PER_PRODUCER * producers;
+            measure(String.format(Locale.ROOT, "%s producers=%d consumers=%d", kind, producers, consumers),
+                    total, 0, () -> {
+                        Queue queue = switch (kind) {
+                            case SEGMENT -> {
+                                SegmentRingBuffer ring = SegmentRingBuffer.create(
+                                        arena.allocate(SegmentRingBuffer.byteSize(CAPACITY), 8), CAPACITY);
+                                yield new Queue() {
+                                    public boolean offer(long value) {
+                                        return ring.offer(value);
+                                    }
+
+                                    public long poll() {
+                                        return ring.poll(EMPTY);
+                                    }
+                                };
+                            }
+                            case ARRAY_BLOCKING -> {
+                                ArrayBlockingQueue<Long> abq = new ArrayBlockingQueue<>(CAPACITY);
+                                yield new Queue() {
+                                    public boolean offer(long value) {
+                                        return abq.offer(value);
+                                    }
+
+                                    public long poll() {
+                                        Long value = abq.poll();
+                                        return value == null ? EMPTY : value;
+                                    }
+                                };
+                            }
+                        };
+                        run(queue, producers, consumers);
+                    });
+        }
+    }
+
+    static void run(Queue queue, int producers, int consumers) throws Throwable {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch produced = new CountDownLatch(producers);
+        CountDownLatch finished = new CountDownLatch(consumers);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        for (int p = 0; p < producers; p++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (long i = 0; i < OPS_PER_PRODUCER; i++) {
+                        offer(queue, i);
+                    }
+                } catch (Throwable th) {
+                    failure.compareAndSet(null, th);
+                } finally {
+                    produced.countDown();
+                }
+            }).start();
+        }
+        for (int c = 0; c < consumers; c++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    while (true) {
+                        long value = queue.poll();
+                        if (value == POISON) {
+                            break;
+                        }
+                        if (value == EMPTY) {
+                            Thread.yield();
+                        }
+                    }
+                } catch (Throwable th) {
+                    failure.compareAndSet(null, th);
+                } finally {
+                    finished.countDown();
+                }
+            }).start();
+        }
+        start.countDown();
+        produced.await();
+        // every consumer stops at the first poison pill it takes
+        for (int c = 0; c < consumers; c++) {
+            offer(queue, POISON);
+        }
+        finished.await();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    static void offer(Queue queue, long value) {
+        while (!queue.offer(value)) {
+            Thread.yield();
+        }
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] kindsAndThreads() {
+        int[][] threads = {{1, 1}, {2, 2}, {4, 4}, {1, 4}, {4, 1}};
+        Object[][] cases = new Object[Kind.values().length * threads.length][];
+        int i = 0;
+        for (Kind kind : Kind.values()) {
+            for (int[] pc : threads) {
+                cases[i++] = new Object[]{kind, pc[0], pc[1]};
+            }
+        }
+        return cases;
+    }
+}
@@ -0,0 +1,200 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.consume;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.AddressLayout;
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.GroupLayout;
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.PaddingLayout;
+import com.v7878.foreign.SequenceLayout;
+import com.v7878.foreign.StructLayout;
+import com.v7878.foreign.ValueLayout;
+import com.v7878.invoke.VarHandle;
+import com.v7878.panamatest.hotspot.CallGeneratorHelper.ParamType;
+import com.v7878.panamatest.hotspot.CallGeneratorHelper.StructFieldType;
+import com.v7878.panamatest.hotspot.NativeTestHelper;
+import com.v7878.panamatest.util.LayoutAccessorCache.Step;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Copies a struct out to a {@code long[]} and back into another segment,
+ * either by walking the layout with path accessors (derived on every call
+ * like NativeTestHelper.genTestValue does, or looked up in a
+ * {@link LayoutAccessorCache}), or with a precompiled {@link StructCodec}.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchStructCodec {
+
+    static final int PATH_OPS = 2_000;
+    static final int OPS = 1_000_000;
+
+    enum Mode {
+        PATH,
+        CACHED_PATH,
+        CODEC
+    }
+
+    enum Shape {
+        I(List.of(StructFieldType.INT)),
+        IFP(List.of(StructFieldType.INT, StructFieldType.FLOAT, StructFieldType.POINTER)),
+        DDD(List.of(StructFieldType.DOUBLE, StructFieldType.DOUBLE, StructFieldType.DOUBLE)),
+        NESTED_IFP(List.of(StructFieldType.INT, StructFieldType.FLOAT, StructFieldType.POINTER));
+
+        final GroupLayout layout;
+
+        Shape(List<StructFieldType> fields) {
+            MemoryLayout struct = ParamType.STRUCT.layout(fields);
+            this.layout = name().startsWith("NESTED") ?
+                    MemoryLayout.structLayout(
+                            struct.withName("first"),
+                            MemoryLayout.sequenceLayout(4, struct).withName("rest")) :
+                    (GroupLayout) struct;
+        }
+    }
+
+    interface Copier {
+        void copy(MemorySegment from, MemorySegment to, long[] slots);
+    }
+
+    @Test
+    @UseDataProvider("modesAndShapes")
+    public void benchCopy(Mode mode, Shape shape) throws Throwable {
+        GroupLayout layout = shape.layout;
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment from = (MemorySegment) NativeTestHelper.genTestValue(
+                    new Random(42), layout, arena).value();
+            MemorySegment to = arena.allocate(layout);
+            StructCodec codec = StructCodec.compile(layout);
+            long[] slots = new long[codec.fieldCount()];
+            Copier copier = switch (mode) {
+                case PATH -> (src, dst, scratch) -> {
+                    new PathWalker(layout, null).read(src, scratch);
+                    new PathWalker(layout, null).write(dst, scratch);
+                };
+                case CACHED_PATH -> {
+                    LayoutAccessorCache cache = new LayoutAccessorCache(64);
+                    yield (src, dst, scratch) -> {
+                        new PathWalker(layout, cache).read(src, scratch);
+                        new PathWalker(layout, cache).write(dst, scratch);
+                    };
+                }
+                case CODEC -> (src, dst, scratch) -> {
+                    codec.read(src, 0, scratch);
+                    codec.write(dst, 0, scratch);
+                };
+            };
+            long ops = mode == Mode.PATH ? PATH_OPS : OPS;
+            measure(String.format(Locale.ROOT, "%s %s", mode, shape), ops, layout.byteSize() * ops, () -> {
+                for (long i = 0; i < ops; i++) {
+                    copier.copy(from, to, slots);
+                }
+                consume(to.get(ValueLayout.JAVA_BYTE, 0));
+            });
+            if (from.mismatch(to) != -1) {
+                throw new AssertionError("Copy differs for " + layout);
+            }
+        }
+    }
+
+    /**
+     * The genTestValue way: a recursive walk that derives a path accessor
+     * for every value field and boxes every value.
+     */
+    static final class PathWalker {
+        final GroupLayout root;
+        final LayoutAccessorCache cache;
+        final List<Step> path = new ArrayList<>();
+        int slot;
+
+        PathWalker(GroupLayout root, LayoutAccessorCache cache) {
+            this.root = root;
+            this.cache = cache;
+        }
+
+        VarHandle accessor() {
+            Step[] steps = path.toArray(new Step[0]);
+            return cache == null ?
+                    root.varHandle(LayoutAccessorCache.toPathElements(List.of(steps))) :
+                    cache.varHandle(root, steps);
+        }
+
+        void read(MemorySegment segment, long[] slots) {
+            slot = 0;
+            walk(root, leaf -> slots[slot] = toBits(accessor().get(segment, 0L)));
+        }
+
+        void write(MemorySegment segment, long[] slots) {
+            slot = 0;
+            walk(root, leaf -> accessor().set(segment, 0L, fromBits(leaf, slots[slot])));
+        }
+
+        interface Leaf {
+            void visit(ValueLayout layout);
+        }
+
+        void walk(MemoryLayout layout, Leaf leaf) {
+            if (layout instanceof ValueLayout value) {
+                leaf.visit(value);
+                slot++;
+            } else if (layout instanceof StructLayout struct) {
+                for (MemoryLayout member : struct.memberLayouts()) {
+                    if (member instanceof PaddingLayout) continue;
+                    path.add(Step.group(member.name().orElseThrow()));
+                    walk(member, leaf);
+                    path.remove(path.size() - 1);
+                }
+            } else if (layout instanceof SequenceLayout sequence) {
+                for (long i = 0; i < sequence.elementCount(); i++) {
+                    path.add(Step.sequence(i));
+                    walk(sequence.elementLayout(), leaf);
+                    path.remove(path.size() - 1);
+                }
+            } else {
+                throw new IllegalStateException("Unexpected layout: " + layout);
+            }
+        }
+
+        static long toBits(Object value) {
+            if (value instanceof Integer i) return i;
+            if (value instanceof Float f) return Float.floatToRawIntBits(f);
+            if (value instanceof Double d) return Double.doubleToRawLongBits(d);
+            if (value instanceof MemorySegment s) return s.address();
+            throw new IllegalStateException("Unexpected value: " + value);
+        }
+
+        static Object fromBits(ValueLayout layout, long bits) {
+            if (layout instanceof ValueLayout.OfInt) return (int) bits;
+            if (layout instanceof ValueLayout.OfFloat) return Float.intBitsToFloat((int) bits);
+            if (layout instanceof ValueLayout.OfDouble) return Double.longBitsToDouble(bits);
+            if (layout instanceof AddressLayout) return MemorySegment.ofAddress(bits);
+            throw new IllegalStateException("Unexpected layout: " + layout);
+        }
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] modesAndShapes() {
+        Object[][] cases = new Object[Mode.values().length * Shape.values().length][];
+        int i = 0;
+        for (Mode mode : Mode.values()) {
+            for (Shape shape : Shape.values()) {
+                cases[i++] = new Object[]{mode, shape};
+            }
+        }
+        return cases;
+    }
+}
@@ -0,0 +1,147 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.consume;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.SymbolLookup;
+import com.v7878.panamatest.hotspot.CallGeneratorHelper;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Cost of resolving the generated {@code f*_} functions of libTestDowncall:
+ * through {@link SymbolLookup#loaderLookup()} as
+ * {@code NativeTestHelper.findNativeOrThrow} does it, through a hoisted
+ * loader lookup, and through a {@link SymbolIndex}, including or excluding
+ * the time to build the index; and cost of loader lookups as more libraries
+ * are loaded by the same class loader.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchSymbolLookup {
+
+    static final String LIBRARY = "TestDowncall";
+    static final String[] OTHER_LIBRARIES = {
+            "CaptureCallState", "TestDowncallStack", "Intrinsics", "SafeAccess", "LookupTest",
+            "TestUpcallStructScope", "TestHFA", "Null", "VarArgs", "clinkerffitests"
+    };
+    static final int[] SYMBOL_COUNTS = {100, 1000, 5000, Integer.MAX_VALUE};
+    static final int[] LIBRARY_COUNTS = {0, 2, 5, OTHER_LIBRARIES.length};
+    static final int LOOKUPS = 5000;
+
+    static final String ANCHOR;
+    static final String[] NAMES;
+
+    static {
+        System.loadLibrary(LIBRARY);
+        ANCHOR = (String) CallGeneratorHelper.functions()[0][1];
+        List<String> names = new ArrayList<>();
+        for (String name : SymbolIndex.ofLibraryContaining(SymbolLookup.loaderLookup(), ANCHOR).names()) {
+            if (name.matches("f\\d+_.*")) {
+                names.add(name);
+            }
+        }
+        names.sort(null);
+        NAMES = names.toArray(new String[0]);
+    }
+
+    enum Strategy {
+        LOADER_LOOKUP_PER_CALL,
+        LOADER_LOOKUP,
+        INDEX,
+        INDEX_WITH_BUILD
+    }
+
+    @Test
+    @UseDataProvider("strategiesAndCounts")
+    public void benchResolve(Strategy strategy, int count) {
+        int symbols = Math.min(count, NAMES.length);
+        SymbolLookup loader = SymbolLookup.loaderLookup();
+        SymbolIndex index = SymbolIndex.ofLibraryContaining(loader, ANCHOR);
+        measure(String.format(Locale.ROOT, "resolve %s symbols=%d", strategy, symbols), symbols, 0, () -> {
+            long sum = 0;
+            SymbolLookup lookup = switch (strategy) {
+                case LOADER_LOOKUP_PER_CALL, LOADER_LOOKUP -> loader;
+                case INDEX -> index;
+                case INDEX_WITH_BUILD -> SymbolIndex.ofLibraryContaining(loader, ANCHOR);
+            };
+            for (int i = 0; i < symbols; i++) {
+                if (strategy == Strategy.LOADER_LOOKUP_PER_CALL) {
+                    lookup = SymbolLookup.loaderLookup();
+                }
+                sum += lookup.find(NAMES[i]).orElseThrow().address();
+            }
+            consume(sum);
+        });
+    }
+
+    @Test
+    public void benchIndexBuild() {
+        SymbolLookup loader = SymbolLookup.loaderLookup();
+        int size = SymbolIndex.ofLibraryContaining(loader, ANCHOR).size();
+        measure("build index of " + size + " symbols", 1, 0, () ->
+                consume(SymbolIndex.ofLibraryContaining(loader, ANCHOR)));
+    }
+
+    /**
+     * Libraries cannot be unloaded from a class loader, so the cases of this
+     * benchmark must run in increasing order of library count.
+     */
+    @Test
+    @UseDataProvider("libraryCounts")
+    public void benchLoaderLookupByLibraries(int libraries) {
+        for (int i = 0; i < libraries; i++) {
+            System.loadLibrary(OTHER_LIBRARIES[i]);
+        }
+        SymbolLookup loader = SymbolLookup.loaderLookup();
+        int lookups = Math.min(LOOKUPS, NAMES.length);
+        measure(String.format(Locale.ROOT, "loader lookup hit, %d more libraries", libraries), lookups, 0, () -> {
+            long sum = 0;
+            for (int i = 0; i < lookups; i++) {
+                sum += loader.find(NAMES[i]).orElseThrow().address();
+            }
+            consume(sum);
+        });
+        String[] missing = new String[lookups];
+        for (int i = 0; i < lookups; i++) {
+            missing[i] = "missing_" + NAMES[i];
+        }
+        // a miss has to search every library
+        measure(String.format(Locale.ROOT, "loader lookup miss, %d more libraries", libraries), lookups, 0, () -> {
+            long found = 0;
+            for (int i = 0; i < lookups; i++) {
+                found += loader.find(missing[i]).isPresent() ? 1 : 0;
+            }
+            consume(found);
+        });
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] strategiesAndCounts() {
+        List<Object[]> cases = new ArrayList<>();
+        for (Strategy strategy : Strategy.values()) {
+            for (int count : SYMBOL_COUNTS) {
+                cases.add(new Object[]{strategy, count});
+            }
+        }
+        return cases.toArray(new Object[0][]);
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] libraryCounts() {
+        Object[][] cases = new Object[LIBRARY_COUNTS.length][];
+        for (int i = 0; i < LIBRARY_COUNTS.length; i++) {
+            cases[i] = new Object[]{LIBRARY_COUNTS[i]};
+        }
+        return cases;
+    }
+}
@@ -0,0 +1,200 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.consume;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+import static com.v7878.panamatest.hotspot.NativeTestHelper.C_DOUBLE;
+import static com.v7878.panamatest.hotspot.NativeTestHelper.C_FLOAT;
+import static com.v7878.panamatest.hotspot.NativeTestHelper.C_INT;
+import static com.v7878.panamatest.hotspot.NativeTestHelper.C_POINTER;
+import static com.v7878.panamatest.hotspot.NativeTestHelper.findNativeOrThrow;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.FunctionDescriptor;
+import com.v7878.foreign.Linker;
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.MemorySegment;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Link and call cost of {@code varargs(call_info*, int num, ...)} of
+ * libVarArgs for variadic argument mixes of growing length: linking a handle
+ * per call, a {@link VariadicHandleCache} hit, and a handle linked up front;
+ * and calls through one cache that cycles over all mixes, as a printf-style
+ * logging bridge does, with room for all of them and with too little room.
+ * <p>
+ * The calls pass {@code num = 0}, so that the callee reads none of the
+ * variadic arguments and only the cost of passing them is measured.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchVariadicLink {
+
+    // i: int, f: float, d: double, p: pointer
+    static final String[] SHAPES = {
+            "i", "f", "p", "id", "dp", "iii", "ifp", "dddd", "ipdipd", "iiiiiiii", "ffffffff", "idpidpidpidp"
+    };
+    static final int LINKS = 200;
+    static final int CALLS = 5_000;
+
+    static final FunctionDescriptor FIXED = FunctionDescriptor.ofVoid(C_POINTER, C_INT);
+    static final Linker LINKER = Linker.nativeLinker();
+
+    static {
+        System.loadLibrary("VarArgs");
+    }
+
+    static final MemorySegment VARARGS = findNativeOrThrow("varargs");
+    // call_info with a null writeback, which is never called for num = 0
+    static final MemorySegment CALL_INFO = Arena.global().allocate(C_POINTER, 2);
+
+    /**
+     * The layouts and values of a mix, as requested and as promoted.
+     */
+    record Shape(String name, MemoryLayout[] layouts, MemoryLayout[] promoted,
+                 Object[] values, Object[] promotedValues) {
+
+        static Shape of(String name) {
+            int length = name.length();
+            MemoryLayout[] layouts = new MemoryLayout[length];
+            MemoryLayout[] promoted = new MemoryLayout[length];
+            Object[] values = new Object[length];
+            Object[] promotedValues = new Object[length + 2];
+            promotedValues[0] = CALL_INFO;
+            promotedValues[1] = 0;
+            for (int i = 0; i < length; i++) {
+                switch (name.charAt(i)) {
+                    case 'i' -> {
+                        layouts[i] = promoted[i] = C_INT;
+                        values[i] = promotedValues[i + 2] = i;
+                    }
+                    case 'f' -> {
+                        layouts[i] = C_FLOAT;
+                        promoted[i] = C_DOUBLE;
+                        values[i] = i + 0.5f;
+                        promotedValues[i + 2] = i + 0.5;
+                    }
+                    case 'd' -> {
+                        layouts[i] = promoted[i] = C_DOUBLE;
+                        values[i] = promotedValues[i + 2] = i + 0.5;
+                    }
+                    case 'p' -> {
+                        layouts[i] = promoted[i] = C_POINTER;
+                        values[i] = promotedValues[i + 2] = MemorySegment.ofAddress(i);
+                    }
+                    default -> throw new IllegalArgumentException(name);
+                }
+            }
+            return new Shape(name, layouts, promoted, values, promotedValues);
+        }
+
+        MethodHandle link() {
+            return LINKER.downcallHandle(VARARGS, FIXED.appendArgumentLayouts(promoted),
+                    Linker.Option.firstVariadicArg(FIXED.argumentLayouts().size()));
+        }
+    }
+
+    enum Strategy {
+        LINK_PER_CALL,
+        CACHE,
+        PRELINKED
+    }
+
+    static VariadicHandleCache cache(int maxEntries) {
+        return new VariadicHandleCache(LINKER, VARARGS, FIXED, maxEntries);
+    }
+
+    @Test
+    @UseDataProvider("shapes")
+    public void benchLink(String name) {
+        Shape shape = Shape.of(name);
+        measure("link " + name, LINKS, 0, () -> {
+            for (int i = 0; i < LINKS; i++) {
+                consume(shape.link());
+            }
+        });
+        VariadicHandleCache cache = cache(SHAPES.length);
+        measure("cached handle " + name, CALLS, 0, () -> {
+            for (int i = 0; i < CALLS; i++) {
+                consume(cache.handle(shape.layouts()));
+            }
+        });
+    }
+
+    @Test
+    @UseDataProvider("strategiesAndShapes")
+    public void benchCall(Strategy strategy, String name) {
+        Shape shape = Shape.of(name);
+        VariadicHandleCache cache = cache(SHAPES.length);
+        MethodHandle prelinked = shape.link();
+        Object[] fixedArgs = {CALL_INFO, 0};
+        int calls = strategy == Strategy.LINK_PER_CALL ? LINKS : CALLS;
+        measure(String.format(Locale.ROOT, "call %s %s", strategy, name), calls, 0, () -> {
+            for (int i = 0; i < calls; i++) {
+                switch (strategy) {
+                    case LINK_PER_CALL -> shape.link().invokeWithArguments(shape.promotedValues());
+                    case CACHE -> cache.invoke(fixedArgs, shape.values());
+                    case PRELINKED -> prelinked.invokeWithArguments(shape.promotedValues());
+                }
+            }
+        });
+    }
+
+    /**
+     * Every round calls all mixes in turn through one cache, which holds
+     * {@code maxEntries} handles.
+     */
+    @Test
+    @UseDataProvider("cacheSizes")
+    public void benchMixedShapes(int maxEntries) {
+        Shape[] shapes = new Shape[SHAPES.length];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = Shape.of(SHAPES[i]);
+        }
+        VariadicHandleCache cache = cache(maxEntries);
+        Object[] fixedArgs = {CALL_INFO, 0};
+        int calls = maxEntries < shapes.length ? LINKS : CALLS;
+        String name = String.format(Locale.ROOT, "mixed shapes, %d of %d cached", maxEntries, shapes.length);
+        measure(name, calls, 0, () -> {
+            for (int i = 0; i < calls; i++) {
+                cache.invoke(fixedArgs, shapes[i % shapes.length].values());
+            }
+        });
+        System.out.printf(Locale.ROOT, "%d hits, %d misses, %d handles%n", cache.hits(), cache.misses(), cache.size());
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] shapes() {
+        Object[][] cases = new Object[SHAPES.length][];
+        for (int i = 0; i < SHAPES.length; i++) {
+            cases[i] = new Object[]{SHAPES[i]};
+        }
+        return cases;
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] strategiesAndShapes() {
+        List<Object[]> cases = new ArrayList<>();
+        for (Strategy strategy : Strategy.values()) {
+            for (String shape : SHAPES) {
+                cases.add(new Object[]{strategy, shape});
+            }
+        }
+        return cases.toArray(new Object[0][]);
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] cacheSizes() {
+        return new Object[][]{{SHAPES.length}, {SHAPES.length / 2}, {1}};
+    }
+}
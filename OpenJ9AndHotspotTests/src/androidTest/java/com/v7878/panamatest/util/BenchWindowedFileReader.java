@@ -0,0 +1,142 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.GB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.MB;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.consume;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.formatSize;
+import static com.v7878.panamatest.hotspot.BenchmarkHelper.measure;
+import static org.junit.Assume.assumeNoException;
+
+import com.tngtech.java.junit.dataprovider.DataProvider;
+import com.tngtech.java.junit.dataprovider.DataProviderRunner;
+import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Sequential scan of a 2 GB file through a {@link WindowedFileReader} with
+ * an address space budget of 64 MB (windows times window size), for several
+ * window sizes and read-ahead depths, next to positional
+ * {@link FileChannel} reads into a native buffer of the window size.
+ */
+@Ignore("BENCHMARK GROUP")
+@RunWith(DataProviderRunner.class)
+public class BenchWindowedFileReader {
+
+    static final long FILE_SIZE = 2 * GB;
+    static final long BUDGET = 64 * MB;
+    static final long[] WINDOW_SIZES = {MB, 4 * MB, 16 * MB};
+    static final int[] READ_AHEADS = {0, 1, 2};
+
+    static File file;
+
+    @BeforeClass
+    public static void createFile() throws IOException {
+        file = File.createTempFile("benchWindowedReader", "out");
+        file.deleteOnExit();
+        try (Arena arena = Arena.ofConfined();
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            MemorySegment chunk = arena.allocate(MB, 8);
+            for (long i = 0; i < MB; i += 8) {
+                chunk.set(ValueLayout.JAVA_LONG, i, i);
+            }
+            ByteBuffer buffer = chunk.asByteBuffer();
+            for (long position = 0; position < FILE_SIZE; position += MB) {
+                buffer.clear();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, position + buffer.position());
+                }
+            }
+        } catch (IOException ex) {
+            assumeNoException("cannot create a file of " + formatSize(FILE_SIZE), ex);
+        }
+    }
+
+    @AfterClass
+    public static void deleteFile() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Test
+    @UseDataProvider("windowSizesAndReadAheads")
+    public void benchWindowedScan(long windowSize, int readAhead) throws Throwable {
+        int maxWindows = (int) (BUDGET / windowSize);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long[] maps = new long[1];
+            measure(String.format(Locale.ROOT, "windowed window=%s readAhead=%d", formatSize(windowSize), readAhead),
+                    FILE_SIZE / Long.BYTES, FILE_SIZE, () -> {
+                        try (WindowedFileReader reader = new WindowedFileReader(
+                                channel, windowSize, maxWindows, readAhead)) {
+                            long sum = 0;
+                            for (long position = 0; position < FILE_SIZE; position += Long.BYTES) {
+                                sum += reader.getLong(position);
+                            }
+                            consume(sum);
+                            maps[0] = reader.mapCount();
+                        }
+                    });
+            System.out.println("  mappings per scan: " + maps[0]);
+        }
+    }
+
+    @Test
+    @UseDataProvider("windowSizes")
+    public void benchChannelScan(long bufferSize) throws Throwable {
+        try (Arena arena = Arena.ofConfined();
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MemorySegment buffer = arena.allocate(bufferSize, 8);
+            ByteBuffer byteBuffer = buffer.asByteBuffer();
+            measure("channel buffer=" + formatSize(bufferSize), FILE_SIZE / Long.BYTES, FILE_SIZE, () -> {
+                long sum = 0;
+                for (long position = 0; position < FILE_SIZE; position += bufferSize) {
+                    byteBuffer.clear();
+                    while (byteBuffer.hasRemaining()) {
+                        channel.read(byteBuffer, position + byteBuffer.position());
+                    }
+                    for (long offset = 0; offset < bufferSize; offset += Long.BYTES) {
+                        sum += buffer.get(ValueLayout.JAVA_LONG, offset);
+                    }
+                }
+                consume(sum);
+            });
+        }
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] windowSizesAndReadAheads() {
+        List<Object[]> cases = new ArrayList<>();
+        for (long windowSize : WINDOW_SIZES) {
+            for (int readAhead : READ_AHEADS) {
+                cases.add(new Object[]{windowSize, readAhead});
+            }
+        }
+        return cases.toArray(new Object[0][]);
+    }
+
+    @DataProvider(format = "%m[%i]")
+    public static Object[][] windowSizes() {
+        Object[][] cases = new Object[WINDOW_SIZES.length][];
+        for (int i = 0; i < WINDOW_SIZES.length; i++) {
+            cases[i] = new Object[]{WINDOW_SIZES[i]};
+        }
+        return cases;
+    }
+}
@@ -0,0 +1,74 @@
+package com.v7878.panamatest.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A map of at most {@code maxEntries} computed values, that evicts the least
+ * recently used one first and counts hits and misses. It is safe to use from
+ * several threads; values are computed outside the lock, so racing threads
+ * may both compute the same value, and the last one is kept.
+ */
+final class BoundedCache<K, V> {
+
+    private final int maxEntries;
+    private final Map<K, V> entries;
+    private long hits;
+    private long misses;
+
+    BoundedCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > BoundedCache.this.maxEntries;
+            }
+        };
+    }
+
+    private synchronized V cached(K key) {
+        V value = entries.get(key);
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    private synchronized void store(K key, V value) {
+        entries.put(key, value);
+    }
+
+    /**
+     * Returns the value for {@code key}, computing and storing it on a miss.
+     */
+    V get(K key, Function<? super K, ? extends V> compute) {
+        V value = cached(key);
+        if (value == null) {
+            value = compute.apply(key);
+            store(key, value);
+        }
+        return value;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,122 @@
+package com.v7878.panamatest.util;
+
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.SymbolLookup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Composite of symbol lookups with the semantics of
+ * {@code first.or(second).or(...)} (the first delegate that finds a name
+ * wins), that remembers which delegate resolved each name, so that a
+ * repeated {@link #find} does not walk the chain again.
+ * <p>
+ * Nested instances of this class are flattened into a single list of
+ * delegates; chains built with {@link SymbolLookup#or} are opaque and stay
+ * single delegates. Misses are only remembered when requested, since a
+ * delegate may start to find a name later (for example, a loader lookup
+ * after another library is loaded). The delegates themselves must not
+ * change the address they return for a name.
+ * <p>
+ * Instances are immutable apart from their cache and thread-safe.
+ */
+public final class CachingCompositeLookup implements SymbolLookup {
+
+    private record Entry(int delegate, Optional<MemorySegment> symbol) {
+    }
+
+    private static final Entry MISS = new Entry(-1, Optional.empty());
+
+    private final SymbolLookup[] delegates;
+    private final boolean cacheMisses;
+    private final Map<String, Entry> cache;
+
+    private CachingCompositeLookup(SymbolLookup[] delegates, boolean cacheMisses, Map<String, Entry> cache) {
+        this.delegates = delegates;
+        this.cacheMisses = cacheMisses;
+        this.cache = cache;
+    }
+
+    public static CachingCompositeLookup of(boolean cacheMisses, List<? extends SymbolLookup> delegates) {
+        List<SymbolLookup> flat = new ArrayList<>();
+        for (SymbolLookup delegate : delegates) {
+            Objects.requireNonNull(delegate);
+            if (delegate instanceof CachingCompositeLookup composite) {
+                flat.addAll(Arrays.asList(composite.delegates));
+            } else {
+                flat.add(delegate);
+            }
+        }
+        return new CachingCompositeLookup(flat.toArray(new SymbolLookup[0]), cacheMisses, new ConcurrentHashMap<>());
+    }
+
+    public static CachingCompositeLookup of(SymbolLookup... delegates) {
+        return of(false, Arrays.asList(delegates));
+    }
+
+    /**
+     * Returns a composite with {@code delegate} appended. Names resolved so
+     * far keep their delegate, since an appended delegate is only consulted
+     * after all others; remembered misses are dropped.
+     */
+    public CachingCompositeLookup append(SymbolLookup delegate) {
+        CachingCompositeLookup appended = of(cacheMisses, Arrays.asList(this, delegate));
+        for (Map.Entry<String, Entry> entry : cache.entrySet()) {
+            if (entry.getValue() != MISS) {
+                appended.cache.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return appended;
+    }
+
+    public List<SymbolLookup> delegates() {
+        return Collections.unmodifiableList(Arrays.asList(delegates));
+    }
+
+    /**
+     * Returns the number of names whose result is remembered.
+     */
+    public int cachedNames() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the index of the delegate that resolves {@code name}, or -1 if
+     * none does.
+     */
+    public int delegateOf(String name) {
+        return entry(name).delegate();
+    }
+
+    private Entry entry(String name) {
+        Objects.requireNonNull(name);
+        Entry entry = cache.get(name);
+        if (entry != null) {
+            return entry;
+        }
+        for (int i = 0; i < delegates.length; i++) {
+            Optional<MemorySegment> symbol = delegates[i].find(name);
+            if (symbol.isPresent()) {
+                entry = new Entry(i, symbol);
+                cache.put(name, entry);
+                return entry;
+            }
+        }
+        if (cacheMisses) {
+            cache.put(name, MISS);
+        }
+        return MISS;
+    }
+
+    @Override
+    public Optional<MemorySegment> find(String name) {
+        return entry(name).symbol();
+    }
+}
@@ -0,0 +1,157 @@
+package com.v7878.panamatest.util;
+
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.MemoryLayout.PathElement;
+import com.v7878.invoke.VarHandle;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Memoizes the accessors that {@link MemoryLayout} derives from layout paths
+ * ({@link MemoryLayout#varHandle}, {@link MemoryLayout#sliceHandle} and
+ * {@link MemoryLayout#byteOffset}), keyed by layout and path.
+ * <p>
+ * {@link PathElement} has no value-based equality, so paths are described
+ * with {@link Step}s, which mirror the path element factories. Layouts are
+ * compared with {@link MemoryLayout#equals}, so structurally equal layouts
+ * share their accessors. The cache keeps at most {@code maxEntries} accessors
+ * and evicts the least recently used one first. It is safe to use from
+ * several threads.
+ */
+public final class LayoutAccessorCache {
+
+    /**
+     * A value-based description of a {@link PathElement}.
+     */
+    public record Step(Kind kind, String name, long index) {
+
+        enum Kind {
+            GROUP_NAME,
+            GROUP_INDEX,
+            SEQUENCE_INDEX,
+            SEQUENCE_ANY,
+            DEREFERENCE
+        }
+
+        /**
+         * @see PathElement#groupElement(String)
+         */
+        public static Step group(String name) {
+            return new Step(Kind.GROUP_NAME, Objects.requireNonNull(name), 0);
+        }
+
+        /**
+         * @see PathElement#groupElement(long)
+         */
+        public static Step group(long index) {
+            return new Step(Kind.GROUP_INDEX, null, index);
+        }
+
+        /**
+         * @see PathElement#sequenceElement(long)
+         */
+        public static Step sequence(long index) {
+            return new Step(Kind.SEQUENCE_INDEX, null, index);
+        }
+
+        /**
+         * @see PathElement#sequenceElement()
+         */
+        public static Step sequence() {
+            return new Step(Kind.SEQUENCE_ANY, null, 0);
+        }
+
+        /**
+         * @see PathElement#dereferenceElement()
+         */
+        public static Step dereference() {
+            return new Step(Kind.DEREFERENCE, null, 0);
+        }
+
+        PathElement toPathElement() {
+            return switch (kind) {
+                case GROUP_NAME -> PathElement.groupElement(name);
+                case GROUP_INDEX -> PathElement.groupElement(index);
+                case SEQUENCE_INDEX -> PathElement.sequenceElement(index);
+                case SEQUENCE_ANY -> PathElement.sequenceElement();
+                case DEREFERENCE -> PathElement.dereferenceElement();
+            };
+        }
+    }
+
+    private enum AccessorKind {
+        VAR_HANDLE,
+        SLICE_HANDLE,
+        BYTE_OFFSET
+    }
+
+    private record Key(AccessorKind kind, MemoryLayout layout, List<Step> path) {
+    }
+
+    private final BoundedCache<Key, Object> accessors;
+
+    public LayoutAccessorCache(int maxEntries) {
+        this.accessors = new BoundedCache<>(maxEntries);
+    }
+
+    static PathElement[] toPathElements(List<Step> path) {
+        PathElement[] elements = new PathElement[path.size()];
+        for (int i = 0; i < elements.length; i++) {
+            elements[i] = path.get(i).toPathElement();
+        }
+        return elements;
+    }
+
+    private static Object build(Key key) {
+        PathElement[] elements = toPathElements(key.path());
+        return switch (key.kind()) {
+            case VAR_HANDLE -> key.layout().varHandle(elements);
+            case SLICE_HANDLE -> key.layout().sliceHandle(elements);
+            case BYTE_OFFSET -> key.layout().byteOffset(elements);
+        };
+    }
+
+    private Object accessor(AccessorKind kind, MemoryLayout layout, Step... path) {
+        return accessors.get(new Key(kind, Objects.requireNonNull(layout), List.of(path)),
+                LayoutAccessorCache::build);
+    }
+
+    /**
+     * Cached {@link MemoryLayout#varHandle(PathElement...)}.
+     */
+    public VarHandle varHandle(MemoryLayout layout, Step... path) {
+        return (VarHandle) accessor(AccessorKind.VAR_HANDLE, layout, path);
+    }
+
+    /**
+     * Cached {@link MemoryLayout#sliceHandle(PathElement...)}.
+     */
+    public MethodHandle sliceHandle(MemoryLayout layout, Step... path) {
+        return (MethodHandle) accessor(AccessorKind.SLICE_HANDLE, layout, path);
+    }
+
+    /**
+     * Cached {@link MemoryLayout#byteOffset(PathElement...)}.
+     */
+    public long byteOffset(MemoryLayout layout, Step... path) {
+        return (Long) accessor(AccessorKind.BYTE_OFFSET, layout, path);
+    }
+
+    public int size() {
+        return accessors.size();
+    }
+
+    public long hits() {
+        return accessors.hits();
+    }
+
+    public long misses() {
+        return accessors.misses();
+    }
+
+    public void clear() {
+        accessors.clear();
+    }
+}
@@ -0,0 +1,145 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.foreign.ValueLayout.ADDRESS;
+import static com.v7878.foreign.ValueLayout.JAVA_INT;
+import static com.v7878.foreign.ValueLayout.JAVA_LONG;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.FunctionDescriptor;
+import com.v7878.foreign.Linker;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.SymbolLookup;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Path;
+
+/**
+ * Page residency control for ranges of mapped segments: prefetch
+ * ({@link MemorySegment#load()}), residency checks
+ * ({@link MemorySegment#isLoaded()}), flush ({@link MemorySegment#force()})
+ * and eviction ({@link MemorySegment#unload()}), each restricted to a
+ * subrange instead of the whole mapping.
+ * <p>
+ * Residency is a hint: the kernel may drop pages at any time, so a range
+ * reported as resident may fault again on the next access.
+ * {@link #dropPageCache} additionally asks the kernel to drop the cached
+ * pages of a file, which together with {@link #evict} gives a cold start
+ * without root access.
+ */
+public final class MappedResidency {
+
+    private MappedResidency() {
+    }
+
+    // from <fcntl.h>
+    static final int O_RDONLY = 0;
+    static final int POSIX_FADV_DONTNEED = 4;
+
+    private static final MethodHandle OPEN;
+    private static final MethodHandle CLOSE;
+    private static final MethodHandle POSIX_FADVISE64;
+    private static final long PAGE_SIZE;
+
+    static {
+        Linker linker = Linker.nativeLinker();
+        SymbolLookup libc = linker.defaultLookup();
+        // only the named arguments of the variadic open() are passed
+        OPEN = linker.downcallHandle(libc.find("open").orElseThrow(),
+                FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_INT));
+        CLOSE = linker.downcallHandle(libc.find("close").orElseThrow(),
+                FunctionDescriptor.of(JAVA_INT, JAVA_INT));
+        // the 64-bit variant, since off_t is 32 bits wide on 32-bit Android
+        POSIX_FADVISE64 = linker.downcallHandle(libc.find("posix_fadvise64").orElseThrow(),
+                FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_LONG, JAVA_LONG, JAVA_INT));
+        MethodHandle getpagesize = linker.downcallHandle(libc.find("getpagesize").orElseThrow(),
+                FunctionDescriptor.of(JAVA_INT));
+        try {
+            PAGE_SIZE = (int) getpagesize.invokeExact();
+        } catch (Throwable th) {
+            throw new AssertionError(th);
+        }
+    }
+
+    /**
+     * Returns the page size of the device, which is not 4K on all of them.
+     */
+    public static long pageSize() {
+        return PAGE_SIZE;
+    }
+
+    /**
+     * Asks the kernel to read the pages of the given range ahead of use.
+     */
+    public static void prefetch(MemorySegment mapped, long offset, long length) {
+        mapped.asSlice(offset, length).load();
+    }
+
+    /**
+     * Returns whether all pages of the given range are likely resident.
+     */
+    public static boolean isResident(MemorySegment mapped, long offset, long length) {
+        return mapped.asSlice(offset, length).isLoaded();
+    }
+
+    /**
+     * Returns the fraction of {@code chunkSize}-byte chunks of the mapping
+     * that are likely resident.
+     */
+    public static double residentFraction(MemorySegment mapped, long chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        long chunks = 0;
+        long resident = 0;
+        for (long offset = 0; offset < mapped.byteSize(); offset += chunkSize) {
+            chunks++;
+            if (isResident(mapped, offset, Math.min(chunkSize, mapped.byteSize() - offset))) {
+                resident++;
+            }
+        }
+        return chunks == 0 ? 1 : resident / (double) chunks;
+    }
+
+    /**
+     * Writes the modified pages of the given range back to the file.
+     */
+    public static void flush(MemorySegment mapped, long offset, long length) {
+        mapped.asSlice(offset, length).force();
+    }
+
+    /**
+     * Tells the kernel that the pages of the given range are not needed;
+     * the next access faults them in again. Modified pages of a shared
+     * mapping should be {@linkplain #flush flushed} first.
+     */
+    public static void evict(MemorySegment mapped, long offset, long length) {
+        mapped.asSlice(offset, length).unload();
+    }
+
+    /**
+     * Asks the kernel to drop the clean cached pages of {@code file}. Pages
+     * that are still mapped, or dirty, may stay.
+     */
+    public static void dropPageCache(Path file) throws IOException {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment path = arena.allocateFrom(file.toAbsolutePath().toString());
+            int fd = (int) OPEN.invokeExact(path, O_RDONLY);
+            if (fd < 0) {
+                throw new IOException("Cannot open " + file);
+            }
+            try {
+                int error = (int) POSIX_FADVISE64.invokeExact(fd, 0L, 0L, POSIX_FADV_DONTNEED);
+                if (error != 0) {
+                    throw new IOException("posix_fadvise failed for " + file + ": error " + error);
+                }
+            } finally {
+                int ignored = (int) CLOSE.invokeExact(fd);
+            }
+        } catch (IOException | RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable th) {
+            throw new IllegalStateException(th);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.foreign.ValueLayout.JAVA_INT;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.invoke.VarHandle;
+
+import java.util.Objects;
+
+/**
+ * Open-addressing {@code int -> int} hash map stored in a native segment.
+ * <p>
+ * Entries live in a single table segment; no keys or values are ever boxed.
+ * The table uses linear probing, key {@code 0} marks an empty slot, and the
+ * entry for key {@code 0} itself is kept aside.
+ * <p>
+ * The map supports one writer and any number of concurrent readers: a new
+ * entry is published by a release store of its key after its value, and
+ * readers load keys and values with acquire semantics. On resize the writer
+ * fills a new table, publishes it and frees the old one; readers that were
+ * still on the old table start over on the new one. The current table is
+ * freed when the given arena is closed.
+ * <p>
+ * Once the arena is closed, {@link #forEach} and every operation on a key
+ * other than {@code 0} throw {@link IllegalStateException}; the entry for
+ * key {@code 0}, {@link #size()} and {@link #capacity()} are kept on the
+ * heap and stay readable.
+ */
+public final class OffHeapIntIntMap {
+
+    @FunctionalInterface
+    public interface IntIntConsumer {
+        void accept(int key, int value);
+    }
+
+    static final long SLOT_SIZE = 8;
+    static final long KEY_OFFSET = 0;
+    static final long VALUE_OFFSET = 4;
+    static final long MIN_CAPACITY = 16;
+
+    static final int EMPTY = 0;
+
+    private static final VarHandle INT_HANDLE = JAVA_INT.varHandle();
+
+    private final OffHeapTables tables;
+    private volatile MemorySegment table;
+    private long threshold;
+    private volatile long size;
+
+    private volatile boolean hasZeroKey;
+    private volatile int zeroValue;
+
+    public OffHeapIntIntMap(Arena arena, long expectedSize) {
+        long capacity = capacityFor(expectedSize);
+        this.tables = new OffHeapTables(Objects.requireNonNull(arena), SLOT_SIZE);
+        MemorySegment t = allocateTable(capacity);
+        tables.swap();
+        setTable(t);
+    }
+
+    static long capacityFor(long expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Negative expected size: " + expectedSize);
+        }
+        // keep the load factor at or below 3/4
+        long needed = Math.max(MIN_CAPACITY, expectedSize + expectedSize / 3 + 1);
+        return Long.highestOneBit(needed - 1) << 1;
+    }
+
+    static long mix(int key) {
+        key ^= key >>> 16;
+        key *= 0x85ebca6b;
+        key ^= key >>> 13;
+        key *= 0xc2b2ae35;
+        key ^= key >>> 16;
+        return key & 0xFFFFFFFFL;
+    }
+
+    private MemorySegment allocateTable(long capacity) {
+        // Arena allocations are zeroed, so every slot starts out empty
+        return tables.allocate(capacity * SLOT_SIZE);
+    }
+
+    private void setTable(MemorySegment table) {
+        long capacity = table.byteSize() / SLOT_SIZE;
+        this.threshold = capacity - (capacity >>> 2);
+        this.table = table;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long capacity() {
+        return table.byteSize() / SLOT_SIZE;
+    }
+
+    // for tests
+    MemorySegment table() {
+        return table;
+    }
+
+    /**
+     * Called by readers that failed on {@code t}: if it was freed by a
+     * resize they start over on the new table, otherwise the map is closed.
+     */
+    private void checkReplaced(MemorySegment t, IllegalStateException ex) {
+        if (table == t) {
+            throw ex;
+        }
+    }
+
+    /**
+     * Associates {@code value} with {@code key}. Must only be called from the writer thread.
+     */
+    public void put(int key, int value) {
+        if (key == EMPTY) {
+            zeroValue = value;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            return;
+        }
+        if (size >= threshold) {
+            resize();
+        }
+        MemorySegment t = table;
+        long mask = t.byteSize() / SLOT_SIZE - 1;
+        for (long index = mix(key) & mask; ; index = (index + 1) & mask) {
+            long offset = index * SLOT_SIZE;
+            int current = t.get(JAVA_INT, offset + KEY_OFFSET);
+            if (current == key) {
+                INT_HANDLE.setRelease(t, offset + VALUE_OFFSET, value);
+                return;
+            }
+            if (current == EMPTY) {
+                INT_HANDLE.setRelease(t, offset + VALUE_OFFSET, value);
+                INT_HANDLE.setRelease(t, offset + KEY_OFFSET, key);
+                size++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the value associated with {@code key}, or {@code defaultValue}
+     * if there is none. Safe to call concurrently with the writer.
+     */
+    public int get(int key, int defaultValue) {
+        if (key == EMPTY) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        while (true) {
+            MemorySegment t = table;
+            try {
+                return get(t, key, defaultValue);
+            } catch (IllegalStateException ex) {
+                checkReplaced(t, ex);
+            }
+        }
+    }
+
+    private static int get(MemorySegment t, int key, int defaultValue) {
+        long mask = t.byteSize() / SLOT_SIZE - 1;
+        for (long index = mix(key) & mask; ; index = (index + 1) & mask) {
+            long offset = index * SLOT_SIZE;
+            int current = (int) INT_HANDLE.getAcquire(t, offset + KEY_OFFSET);
+            if (current == key) {
+                return (int) INT_HANDLE.getAcquire(t, offset + VALUE_OFFSET);
+            }
+            if (current == EMPTY) {
+                return defaultValue;
+            }
+        }
+    }
+
+    public boolean containsKey(int key) {
+        if (key == EMPTY) {
+            return hasZeroKey;
+        }
+        while (true) {
+            MemorySegment t = table;
+            try {
+                return containsKey(t, key);
+            } catch (IllegalStateException ex) {
+                checkReplaced(t, ex);
+            }
+        }
+    }
+
+    private static boolean containsKey(MemorySegment t, int key) {
+        long mask = t.byteSize() / SLOT_SIZE - 1;
+        for (long index = mix(key) & mask; ; index = (index + 1) & mask) {
+            int current = (int) INT_HANDLE.getAcquire(t, index * SLOT_SIZE + KEY_OFFSET);
+            if (current == key) {
+                return true;
+            }
+            if (current == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Passes every entry to {@code action}, in table order. When called
+     * concurrently with the writer, entries added during the walk may or may
+     * not be seen, and if the table is resized the walk starts over on the new
+     * one, so that entries may be seen twice.
+     */
+    public void forEach(IntIntConsumer action) {
+        if (hasZeroKey) {
+            action.accept(EMPTY, zeroValue);
+        }
+        while (true) {
+            MemorySegment t = table;
+            try {
+                forEach(t, action);
+                return;
+            } catch (IllegalStateException ex) {
+                checkReplaced(t, ex);
+            }
+        }
+    }
+
+    private static void forEach(MemorySegment t, IntIntConsumer action) {
+        for (long offset = 0; offset < t.byteSize(); offset += SLOT_SIZE) {
+            int key = (int) INT_HANDLE.getAcquire(t, offset + KEY_OFFSET);
+            if (key != EMPTY) {
+                action.accept(key, (int) INT_HANDLE.getAcquire(t, offset + VALUE_OFFSET));
+            }
+        }
+    }
+
+    private void resize() {
+        MemorySegment old = table;
+        MemorySegment t = allocateTable(old.byteSize() / SLOT_SIZE * 2);
+        try {
+            long mask = t.byteSize() / SLOT_SIZE - 1;
+            for (long offset = 0; offset < old.byteSize(); offset += SLOT_SIZE) {
+                int key = old.get(JAVA_INT, offset + KEY_OFFSET);
+                if (key == EMPTY) {
+                    continue;
+                }
+                long index = mix(key) & mask;
+                while (t.get(JAVA_INT, index * SLOT_SIZE + KEY_OFFSET) != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                t.set(JAVA_INT, index * SLOT_SIZE + KEY_OFFSET, key);
+                t.set(JAVA_INT, index * SLOT_SIZE + VALUE_OFFSET, old.get(JAVA_INT, offset + VALUE_OFFSET));
+            }
+        } catch (RuntimeException | Error ex) {
+            tables.discard();
+            throw ex;
+        }
+        Arena previous = tables.swap();
+        // the volatile store of the table publishes all plain stores above
+        setTable(t);
+        OffHeapTables.free(previous);
+    }
+}
@@ -0,0 +1,262 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.foreign.ValueLayout.JAVA_LONG;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.invoke.VarHandle;
+
+import java.util.Objects;
+
+/**
+ * Open-addressing {@code long -> long} hash map stored in a native segment.
+ * <p>
+ * Entries live in a single table segment; no keys or values are ever boxed.
+ * The table uses linear probing, key {@code 0} marks an empty slot, and the
+ * entry for key {@code 0} itself is kept aside.
+ * <p>
+ * The map supports one writer and any number of concurrent readers: a new
+ * entry is published by a release store of its key after its value, and
+ * readers load keys and values with acquire semantics. On resize the writer
+ * fills a new table, publishes it and frees the old one; readers that were
+ * still on the old table start over on the new one. The current table is
+ * freed when the given arena is closed.
+ * <p>
+ * Once the arena is closed, {@link #forEach} and every operation on a key
+ * other than {@code 0} throw {@link IllegalStateException}; the entry for
+ * key {@code 0}, {@link #size()} and {@link #capacity()} are kept on the
+ * heap and stay readable.
+ */
+public final class OffHeapLongLongMap {
+
+    @FunctionalInterface
+    public interface LongLongConsumer {
+        void accept(long key, long value);
+    }
+
+    static final long SLOT_SIZE = 16;
+    static final long KEY_OFFSET = 0;
+    static final long VALUE_OFFSET = 8;
+    static final long MIN_CAPACITY = 16;
+
+    static final long EMPTY = 0;
+
+    private static final VarHandle LONG_HANDLE = JAVA_LONG.varHandle();
+
+    private final OffHeapTables tables;
+    private volatile MemorySegment table;
+    private long threshold;
+    private volatile long size;
+
+    private volatile boolean hasZeroKey;
+    private volatile long zeroValue;
+
+    public OffHeapLongLongMap(Arena arena, long expectedSize) {
+        long capacity = capacityFor(expectedSize);
+        this.tables = new OffHeapTables(Objects.requireNonNull(arena), SLOT_SIZE);
+        MemorySegment t = allocateTable(capacity);
+        tables.swap();
+        setTable(t);
+    }
+
+    static long capacityFor(long expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Negative expected size: " + expectedSize);
+        }
+        // keep the load factor at or below 3/4
+        long needed = Math.max(MIN_CAPACITY, expectedSize + expectedSize / 3 + 1);
+        return Long.highestOneBit(needed - 1) << 1;
+    }
+
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private MemorySegment allocateTable(long capacity) {
+        // Arena allocations are zeroed, so every slot starts out empty
+        return tables.allocate(capacity * SLOT_SIZE);
+    }
+
+    private void setTable(MemorySegment table) {
+        long capacity = table.byteSize() / SLOT_SIZE;
+        this.threshold = capacity - (capacity >>> 2);
+        this.table = table;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long capacity() {
+        return table.byteSize() / SLOT_SIZE;
+    }
+
+    // for tests
+    MemorySegment table() {
+        return table;
+    }
+
+    /**
+     * Called by readers that failed on {@code t}: if it was freed by a
+     * resize they start over on the new table, otherwise the map is closed.
+     */
+    private void checkReplaced(MemorySegment t, IllegalStateException ex) {
+        if (table == t) {
+            throw ex;
+        }
+    }
+
+    /**
+     * Associates {@code value} with {@code key}. Must only be called from the writer thread.
+     */
+    public void put(long key, long value) {
+        if (key == EMPTY) {
+            zeroValue = value;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            return;
+        }
+        if (size >= threshold) {
+            resize();
+        }
+        MemorySegment t = table;
+        long mask = t.byteSize() / SLOT_SIZE - 1;
+        for (long index = mix(key) & mask; ; index = (index + 1) & mask) {
+            long offset = index * SLOT_SIZE;
+            long current = t.get(JAVA_LONG, offset + KEY_OFFSET);
+            if (current == key) {
+                LONG_HANDLE.setRelease(t, offset + VALUE_OFFSET, value);
+                return;
+            }
+            if (current == EMPTY) {
+                LONG_HANDLE.setRelease(t, offset + VALUE_OFFSET, value);
+                LONG_HANDLE.setRelease(t, offset + KEY_OFFSET, key);
+                size++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the value associated with {@code key}, or {@code defaultValue}
+     * if there is none. Safe to call concurrently with the writer.
+     */
+    public long get(long key, long defaultValue) {
+        if (key == EMPTY) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        while (true) {
+            MemorySegment t = table;
+            try {
+                return get(t, key, defaultValue);
+            } catch (IllegalStateException ex) {
+                checkReplaced(t, ex);
+            }
+        }
+    }
+
+    private static long get(MemorySegment t, long key, long defaultValue) {
+        long mask = t.byteSize() / SLOT_SIZE - 1;
+        for (long index = mix(key) & mask; ; index = (index + 1) & mask) {
+            long offset = index * SLOT_SIZE;
+            long current = (long) LONG_HANDLE.getAcquire(t, offset + KEY_OFFSET);
+            if (current == key) {
+                return (long) LONG_HANDLE.getAcquire(t, offset + VALUE_OFFSET);
+            }
+            if (current == EMPTY) {
+                return defaultValue;
+            }
+        }
+    }
+
+    public boolean containsKey(long key) {
+        if (key == EMPTY) {
+            return hasZeroKey;
+        }
+        while (true) {
+            MemorySegment t = table;
+            try {
+                return containsKey(t, key);
+            } catch (IllegalStateException ex) {
+                checkReplaced(t, ex);
+            }
+        }
+    }
+
+    private static boolean containsKey(MemorySegment t, long key) {
+        long mask = t.byteSize() / SLOT_SIZE - 1;
+        for (long index = mix(key) & mask; ; index = (index + 1) & mask) {
+            long current = (long) LONG_HANDLE.getAcquire(t, index * SLOT_SIZE + KEY_OFFSET);
+            if (current == key) {
+                return true;
+            }
+            if (current == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Passes every entry to {@code action}, in table order. When called
+     * concurrently with the writer, entries added during the walk may or may
+     * not be seen, and if the table is resized the walk starts over on the new
+     * one, so that entries may be seen twice.
+     */
+    public void forEach(LongLongConsumer action) {
+        if (hasZeroKey) {
+            action.accept(EMPTY, zeroValue);
+        }
+        while (true) {
+            MemorySegment t = table;
+            try {
+                forEach(t, action);
+                return;
+            } catch (IllegalStateException ex) {
+                checkReplaced(t, ex);
+            }
+        }
+    }
+
+    private static void forEach(MemorySegment t, LongLongConsumer action) {
+        for (long offset = 0; offset < t.byteSize(); offset += SLOT_SIZE) {
+            long key = (long) LONG_HANDLE.getAcquire(t, offset + KEY_OFFSET);
+            if (key != EMPTY) {
+                action.accept(key, (long) LONG_HANDLE.getAcquire(t, offset + VALUE_OFFSET));
+            }
+        }
+    }
+
+    private void resize() {
+        MemorySegment old = table;
+        MemorySegment t = allocateTable(old.byteSize() / SLOT_SIZE * 2);
+        try {
+            long mask = t.byteSize() / SLOT_SIZE - 1;
+            for (long offset = 0; offset < old.byteSize(); offset += SLOT_SIZE) {
+                long key = old.get(JAVA_LONG, offset + KEY_OFFSET);
+                if (key == EMPTY) {
+                    continue;
+                }
+                long index = mix(key) & mask;
+                while (t.get(JAVA_LONG, index * SLOT_SIZE + KEY_OFFSET) != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                t.set(JAVA_LONG, index * SLOT_SIZE + KEY_OFFSET, key);
+                t.set(JAVA_LONG, index * SLOT_SIZE + VALUE_OFFSET, old.get(JAVA_LONG, offset + VALUE_OFFSET));
+            }
+        } catch (RuntimeException | Error ex) {
+            tables.discard();
+            throw ex;
+        }
+        Arena previous = tables.swap();
+        // the volatile store of the table publishes all plain stores above
+        setTable(t);
+        OffHeapTables.free(previous);
+    }
+}
@@ -0,0 +1,116 @@
+package com.v7878.panamatest.util;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.MemorySegment;
+
+/**
+ * The table segments of an off-heap map.
+ * <p>
+ * Every table is allocated in its own shared arena, so that a table that
+ * was replaced by a larger one can be freed right away instead of when the
+ * map's arena is closed. The current table is freed when the map's arena is
+ * closed. Readers that were still reading a freed table get an
+ * {@link IllegalStateException} and must retry with the current one.
+ */
+final class OffHeapTables {
+
+    /**
+     * The arena of the current table. It is what the owner's cleanup action
+     * frees, so it must not point back to the owner: an automatic owner that
+     * is reachable from its own cleanup action is never collected.
+     */
+    private static final class Current {
+        private Arena arena;
+        private boolean closed;
+
+        synchronized Arena swap(Arena next) {
+            if (closed) {
+                throw new IllegalStateException("Already closed");
+            }
+            Arena previous = arena;
+            arena = next;
+            return previous;
+        }
+
+        synchronized void close() {
+            closed = true;
+            free(arena);
+            arena = null;
+        }
+    }
+
+    // keeps an automatic owner, and so the current table, alive as long as the map
+    private final Arena owner;
+    private final long alignment;
+    private final Current current;
+    private Arena pending;
+
+    OffHeapTables(Arena owner, long alignment) {
+        this.owner = owner;
+        this.alignment = alignment;
+        Current current = new Current();
+        this.current = current;
+        // the current table goes away together with the rest of the owner's memory
+        MemorySegment.NULL.reinterpret(owner, ignored -> current.close());
+    }
+
+    /**
+     * Allocates a zeroed table, that becomes current on the next call to
+     * {@link #swap()}. Must only be called from the writer thread.
+     */
+    MemorySegment allocate(long byteSize) {
+        Arena arena = Arena.ofShared();
+        try {
+            MemorySegment table = arena.allocate(byteSize, alignment);
+            pending = arena;
+            return table;
+        } catch (RuntimeException | Error ex) {
+            arena.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Frees the table allocated last, that will never be published.
+     */
+    void discard() {
+        if (pending != null) {
+            free(pending);
+            pending = null;
+        }
+    }
+
+    /**
+     * Makes the table allocated last the current one, and returns the arena
+     * of the previous table, to be passed to {@link #free} once the new one
+     * is published.
+     */
+    Arena swap() {
+        try {
+            Arena previous = current.swap(pending);
+            pending = null;
+            return previous;
+        } catch (IllegalStateException ex) {
+            discard();
+            throw ex;
+        }
+    }
+
+    static void free(Arena arena) {
+        if (arena == null) {
+            return;
+        }
+        // closing may fail while readers access the table, they are done after a single lookup
+        while (true) {
+            try {
+                arena.close();
+                return;
+            } catch (IllegalStateException ex) {
+                if (!arena.scope().isAlive()) {
+                    return;
+                }
+                Thread.yield();
+            }
+        }
+    }
+}
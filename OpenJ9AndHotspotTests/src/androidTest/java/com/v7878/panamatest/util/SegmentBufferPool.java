@@ -0,0 +1,212 @@
+package com.v7878.panamatest.util;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.MemorySegment;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of fixed-size {@link ByteBuffer} views over memory of one arena, for
+ * channel I/O without an allocation per operation.
+ * <p>
+ * Buffers are carved out of slabs of {@code slabBuffers} buffers, allocated
+ * from the arena on demand. A released buffer goes to a cache of the
+ * releasing thread, holding at most {@code localCapacity} buffers, and to a
+ * shared overflow list when that cache is full; {@link #acquire()} takes from
+ * the cache of the calling thread first, then from the shared list, and only
+ * allocates a new slab when both are empty. The memory is never freed before
+ * the arena is closed. Once the pool holds as many buffers as are in use at
+ * the same time, neither {@link #acquire()} nor {@link #release} allocate.
+ * <p>
+ * The pool keeps track of the buffers it handed out: {@link #release} only
+ * takes a buffer that was returned by {@link #acquire()} of this pool and
+ * not released since, so that a buffer can never be in the pool twice.
+ * <p>
+ * Once the arena is closed, {@link #acquire()} throws and released buffers
+ * are dropped, so that no view of freed memory is handed out again. The pool
+ * is thread-safe if the arena is shared; with a confined arena, new slabs can
+ * only be allocated by its owner thread.
+ */
+public final class SegmentBufferPool {
+
+    public static final int DEFAULT_SLAB_BUFFERS = 16;
+    public static final int DEFAULT_LOCAL_CAPACITY = 16;
+
+    // slabs start on a cache line
+    static final long SLAB_ALIGNMENT = 64;
+
+    private final Arena arena;
+    private final int bufferSize;
+    private final int slabBuffers;
+    private final int localCapacity;
+    private final ThreadLocal<ArrayDeque<Slot>> local;
+    private final Object lock = new Object();
+    // every buffer of every slab; replaced as a whole when a slab is added, so that lookups need no lock
+    private volatile IdentityHashMap<ByteBuffer, Slot> slots = new IdentityHashMap<>();
+    // the shared overflow list, a stack with room for every buffer of the pool; guarded by lock
+    private Slot[] shared = new Slot[0];
+    private int sharedSize;
+    private final AtomicInteger slabs = new AtomicInteger();
+
+    private static final class Slot {
+        final ByteBuffer buffer;
+        final AtomicBoolean acquired = new AtomicBoolean();
+
+        Slot(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    public SegmentBufferPool(Arena arena, int bufferSize, int slabBuffers, int localCapacity) {
+        this.arena = Objects.requireNonNull(arena);
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        if (slabBuffers <= 0) {
+            throw new IllegalArgumentException("Buffers per slab must be positive: " + slabBuffers);
+        }
+        if (localCapacity < 0) {
+            throw new IllegalArgumentException("Negative local capacity: " + localCapacity);
+        }
+        this.bufferSize = bufferSize;
+        this.slabBuffers = slabBuffers;
+        this.localCapacity = localCapacity;
+        this.local = ThreadLocal.withInitial(() -> new ArrayDeque<>(localCapacity));
+    }
+
+    public SegmentBufferPool(Arena arena, int bufferSize) {
+        this(arena, bufferSize, DEFAULT_SLAB_BUFFERS, DEFAULT_LOCAL_CAPACITY);
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Returns the number of buffers allocated so far; it stops growing once
+     * the pool holds as many buffers as are in use at the same time.
+     */
+    public long allocatedBuffers() {
+        return (long) slabs.get() * slabBuffers;
+    }
+
+    /**
+     * Returns the number of buffers in the shared overflow list.
+     */
+    public int sharedBuffers() {
+        synchronized (lock) {
+            return sharedSize;
+        }
+    }
+
+    private Slot pollShared() {
+        synchronized (lock) {
+            if (sharedSize == 0) {
+                return null;
+            }
+            Slot slot = shared[--sharedSize];
+            shared[sharedSize] = null;
+            return slot;
+        }
+    }
+
+    private void offerShared(Slot slot) {
+        synchronized (lock) {
+            shared[sharedSize++] = slot;
+        }
+    }
+
+    private void checkAlive() {
+        if (!arena.scope().isAlive()) {
+            throw new IllegalStateException("Already closed");
+        }
+    }
+
+    /**
+     * Returns a cleared buffer of {@link #bufferSize()} bytes. Its content is
+     * whatever was written to it by its previous user.
+     */
+    public ByteBuffer acquire() {
+        checkAlive();
+        ArrayDeque<Slot> cache = local.get();
+        Slot slot = cache.pollLast();
+        if (slot == null) {
+            slot = pollShared();
+        }
+        if (slot == null) {
+            slot = allocateSlab(cache);
+        }
+        slot.acquired.set(true);
+        slot.buffer.clear();
+        return slot.buffer;
+    }
+
+    private Slot allocateSlab(ArrayDeque<Slot> cache) {
+        MemorySegment slab = arena.allocate((long) bufferSize * slabBuffers, SLAB_ALIGNMENT);
+        Slot[] fresh = new Slot[slabBuffers];
+        for (int i = 0; i < slabBuffers; i++) {
+            fresh[i] = new Slot(slab.asSlice((long) i * bufferSize, bufferSize).asByteBuffer());
+        }
+        synchronized (lock) {
+            IdentityHashMap<ByteBuffer, Slot> all = new IdentityHashMap<>(slots);
+            for (Slot slot : fresh) {
+                all.put(slot.buffer, slot);
+            }
+            slots = all;
+            int total = slabs.incrementAndGet() * slabBuffers;
+            if (shared.length < total) {
+                shared = Arrays.copyOf(shared, total);
+            }
+        }
+        for (int i = 1; i < slabBuffers; i++) {
+            if (cache.size() < localCapacity) {
+                cache.addLast(fresh[i]);
+            } else {
+                offerShared(fresh[i]);
+            }
+        }
+        return fresh[0];
+    }
+
+    /**
+     * Gives a buffer back to the pool. The caller must not use it afterwards.
+     *
+     * @throws IllegalArgumentException if the buffer was not acquired from a
+     *                                  pool of this arena and buffer size
+     * @throws IllegalStateException    if the buffer was not acquired from this
+     *                                  pool, or was released already
+     */
+    public void release(ByteBuffer buffer) {
+        Objects.requireNonNull(buffer);
+        if (!buffer.isDirect() || buffer.isReadOnly() || buffer.capacity() != bufferSize) {
+            throw new IllegalArgumentException("Not a buffer of this pool: " + buffer);
+        }
+        Slot slot = slots.get(buffer);
+        if (slot == null) {
+            // only a failing release gets here, where a segment view does not hurt
+            if (!MemorySegment.ofBuffer(buffer).scope().equals(arena.scope())) {
+                throw new IllegalArgumentException("Not a buffer of this pool: " + buffer);
+            }
+            throw new IllegalStateException("Not acquired from this pool: " + buffer);
+        }
+        if (!slot.acquired.compareAndSet(true, false)) {
+            throw new IllegalStateException("Already released: " + buffer);
+        }
+        if (!arena.scope().isAlive()) {
+            // the memory went away with the arena
+            return;
+        }
+        ArrayDeque<Slot> cache = local.get();
+        if (cache.size() < localCapacity) {
+            cache.addLast(slot);
+        } else {
+            offerShared(slot);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.foreign.ValueLayout.JAVA_LONG;
+
+import com.v7878.foreign.MemorySegment;
+import com.v7878.invoke.VarHandle;
+
+import java.util.Objects;
+
+/**
+ * Bounded lock-free multi-producer/multi-consumer queue of {@code long}s,
+ * stored entirely in a memory segment.
+ * <p>
+ * This is the array-based queue by Dmitry Vyukov: every cell carries a
+ * sequence number next to its value, producers and consumers claim positions
+ * with a compare-and-set on the shared enqueue/dequeue counters and hand the
+ * cell over with a release store of its sequence number.
+ * <p>
+ * All state, including the counters, lives in the segment: nothing is
+ * allocated on the Java heap per operation, and two instances attached to
+ * the same memory (for example, two shared mappings of one file) operate on
+ * the same queue. The segment must come from a shared arena (or a mapping)
+ * when it is used from several threads.
+ *
+ * <pre>
+ * offset 0               capacity
+ * offset LINE            enqueue position
+ * offset 2 * LINE        dequeue position
+ * offset 3 * LINE + 16i  cell i: sequence, value
+ * </pre>
+ */
+public final class SegmentRingBuffer {
+
+    // Keeps the counters on separate cache lines, also with adjacent-line prefetch
+    static final long LINE = 128;
+
+    static final long CAPACITY_OFFSET = 0;
+    static final long ENQUEUE_OFFSET = LINE;
+    static final long DEQUEUE_OFFSET = 2 * LINE;
+    static final long CELLS_OFFSET = 3 * LINE;
+
+    static final long CELL_SIZE = 16;
+    static final long SEQUENCE_OFFSET = 0;
+    static final long VALUE_OFFSET = 8;
+
+    private static final VarHandle LONG_HANDLE = JAVA_LONG.varHandle();
+
+    private final MemorySegment segment;
+    private final long mask;
+
+    private SegmentRingBuffer(MemorySegment segment, long capacity) {
+        this.segment = segment;
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Returns the number of bytes needed for a queue of the given capacity.
+     */
+    public static long byteSize(long capacity) {
+        checkCapacity(capacity);
+        return CELLS_OFFSET + capacity * CELL_SIZE;
+    }
+
+    private static void checkCapacity(long capacity) {
+        if (capacity < 2 || Long.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two >= 2: " + capacity);
+        }
+    }
+
+    private static void checkSegment(MemorySegment segment, long capacity) {
+        if (segment.byteSize() < byteSize(capacity)) {
+            throw new IllegalArgumentException("Segment too small for capacity " + capacity + ": " + segment);
+        }
+        if (segment.maxByteAlignment() < JAVA_LONG.byteAlignment()) {
+            throw new IllegalArgumentException("Segment is not 8-byte aligned: " + segment);
+        }
+    }
+
+    /**
+     * Initializes an empty queue in the given segment. Must not race with any
+     * other access to the same memory.
+     */
+    public static SegmentRingBuffer create(MemorySegment segment, long capacity) {
+        Objects.requireNonNull(segment);
+        checkCapacity(capacity);
+        checkSegment(segment, capacity);
+        for (long i = 0; i < capacity; i++) {
+            segment.set(JAVA_LONG, CELLS_OFFSET + i * CELL_SIZE + SEQUENCE_OFFSET, i);
+        }
+        LONG_HANDLE.setVolatile(segment, ENQUEUE_OFFSET, 0L);
+        LONG_HANDLE.setVolatile(segment, DEQUEUE_OFFSET, 0L);
+        LONG_HANDLE.setVolatile(segment, CAPACITY_OFFSET, capacity);
+        return new SegmentRingBuffer(segment, capacity);
+    }
+
+    /**
+     * Attaches to a queue previously initialized with {@link #create}.
+     */
+    public static SegmentRingBuffer attach(MemorySegment segment) {
+        Objects.requireNonNull(segment);
+        long capacity = (long) LONG_HANDLE.getVolatile(segment, CAPACITY_OFFSET);
+        checkCapacity(capacity);
+        checkSegment(segment, capacity);
+        return new SegmentRingBuffer(segment, capacity);
+    }
+
+    public long capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns an estimate of the number of elements in the queue.
+     */
+    public long size() {
+        long dequeue = (long) LONG_HANDLE.getVolatile(segment, DEQUEUE_OFFSET);
+        long enqueue = (long) LONG_HANDLE.getVolatile(segment, ENQUEUE_OFFSET);
+        return Math.max(0, Math.min(capacity(), enqueue - dequeue));
+    }
+
+    /**
+     * Adds {@code value} to the tail of the queue.
+     *
+     * @return {@code false} if the queue is full
+     */
+    public boolean offer(long value) {
+        long pos = (long) LONG_HANDLE.getVolatile(segment, ENQUEUE_OFFSET);
+        while (true) {
+            long cell = CELLS_OFFSET + (pos & mask) * CELL_SIZE;
+            long sequence = (long) LONG_HANDLE.getAcquire(segment, cell + SEQUENCE_OFFSET);
+            long diff = sequence - pos;
+            if (diff == 0) {
+                if ((boolean) LONG_HANDLE.compareAndSet(segment, ENQUEUE_OFFSET, pos, pos + 1)) {
+                    segment.set(JAVA_LONG, cell + VALUE_OFFSET, value);
+                    LONG_HANDLE.setRelease(segment, cell + SEQUENCE_OFFSET, pos + 1);
+                    return true;
+                }
+                pos = (long) LONG_HANDLE.getVolatile(segment, ENQUEUE_OFFSET);
+            } else if (diff < 0) {
+                // the cell still holds the element from the previous lap
+                return false;
+            } else {
+                pos = (long) LONG_HANDLE.getVolatile(segment, ENQUEUE_OFFSET);
+            }
+        }
+    }
+
+    /**
+     * Removes the head of the queue.
+     *
+     * @return the removed element, or {@code emptyValue} if the queue is empty
+     */
+    public long poll(long emptyValue) {
+        long pos = (long) LONG_HANDLE.getVolatile(segment, DEQUEUE_OFFSET);
+        while (true) {
+            long cell = CELLS_OFFSET + (pos & mask) * CELL_SIZE;
+            long sequence = (long) LONG_HANDLE.getAcquire(segment, cell + SEQUENCE_OFFSET);
+            long diff = sequence - (pos + 1);
+            if (diff == 0) {
+                if ((boolean) LONG_HANDLE.compareAndSet(segment, DEQUEUE_OFFSET, pos, pos + 1)) {
+                    long value = segment.get(JAVA_LONG, cell + VALUE_OFFSET);
+                    LONG_HANDLE.setRelease(segment, cell + SEQUENCE_OFFSET, pos + mask + 1);
+                    return value;
+                }
+                pos = (long) LONG_HANDLE.getVolatile(segment, DEQUEUE_OFFSET);
+            } else if (diff < 0) {
+                // the producer of this cell has not published it yet
+                return emptyValue;
+            } else {
+                pos = (long) LONG_HANDLE.getVolatile(segment, DEQUEUE_OFFSET);
+            }
+        }
+    }
+}
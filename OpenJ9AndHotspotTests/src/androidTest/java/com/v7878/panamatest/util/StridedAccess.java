@@ -0,0 +1,184 @@
+package com.v7878.panamatest.util;
+
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.MemoryLayout.PathElement;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.SequenceLayout;
+import com.v7878.foreign.ValueLayout;
+
+import java.lang.reflect.Array;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Bulk access to one value field of every element of a
+ * {@link SequenceLayout}, that is, to a column of a row-major array of
+ * structs.
+ * <p>
+ * {@link #gather} copies the field of a range of elements into a primitive
+ * array, {@link #scatter} copies it back. Both check the whole range once up
+ * front, so that a bad range fails before anything is copied, and then
+ * access every element with {@link MemorySegment#get}/{@link MemorySegment#set},
+ * which still check bounds on every access. Like
+ * {@link MemorySegment#copy(MemorySegment, ValueLayout, long, Object, int, int)},
+ * the array component type must be the carrier of the field, and values
+ * are converted from and to the byte order of the field. When the elements
+ * are nothing but the field, both fall back to that bulk copy.
+ */
+public final class StridedAccess {
+
+    private final SequenceLayout sequence;
+    private final ValueLayout field;
+    private final long fieldOffset;
+    private final long stride;
+
+    private StridedAccess(SequenceLayout sequence, ValueLayout field, long fieldOffset) {
+        this.sequence = sequence;
+        this.field = field;
+        this.fieldOffset = fieldOffset;
+        this.stride = sequence.elementLayout().byteSize();
+    }
+
+    /**
+     * Selects the field at {@code path} of the sequence element layout.
+     *
+     * @throws IllegalArgumentException if the path does not select a value
+     *                                  layout at a fixed offset, or selects a
+     *                                  {@code boolean} or address field
+     */
+    public static StridedAccess of(SequenceLayout sequence, PathElement... path) {
+        Objects.requireNonNull(sequence);
+        MemoryLayout element = sequence.elementLayout();
+        MemoryLayout selected = element.select(path);
+        if (!(selected instanceof ValueLayout field) || arrayType(field) == null) {
+            throw new IllegalArgumentException("Path does not select a primitive field: " + selected);
+        }
+        // throws for open sequence elements and dereferences
+        long offset = element.byteOffset(path);
+        return new StridedAccess(sequence, field.withoutName(), offset);
+    }
+
+    private static Class<?> arrayType(ValueLayout layout) {
+        if (layout instanceof ValueLayout.OfByte) return byte[].class;
+        if (layout instanceof ValueLayout.OfChar) return char[].class;
+        if (layout instanceof ValueLayout.OfShort) return short[].class;
+        if (layout instanceof ValueLayout.OfInt) return int[].class;
+        if (layout instanceof ValueLayout.OfLong) return long[].class;
+        if (layout instanceof ValueLayout.OfFloat) return float[].class;
+        if (layout instanceof ValueLayout.OfDouble) return double[].class;
+        return null;
+    }
+
+    public ValueLayout field() {
+        return field;
+    }
+
+    public long fieldOffset() {
+        return fieldOffset;
+    }
+
+    public long stride() {
+        return stride;
+    }
+
+    private long checkAccess(MemorySegment segment, long offset, long fromIndex,
+                             Object array, int arrayIndex, int count) {
+        Objects.requireNonNull(segment);
+        if (array.getClass() != arrayType(field)) {
+            throw new IllegalArgumentException("Array of type " + array.getClass().getSimpleName() +
+                    " does not match field " + field);
+        }
+        checkFromIndexSize(arrayIndex, count, Array.getLength(array));
+        checkFromIndexSize(fromIndex, count, sequence.elementCount());
+        long start = offset + fromIndex * stride + fieldOffset;
+        if (count > 0) {
+            checkFromIndexSize(start, (count - 1) * stride + field.byteSize(), segment.byteSize());
+        }
+        return start;
+    }
+
+    // Objects.checkFromIndexSize(long, long, long) is not available on older Android versions
+    private static void checkFromIndexSize(long from, long size, long length) {
+        if ((length | from | size) < 0 || size > length - from) {
+            throw new IndexOutOfBoundsException(String.format(Locale.ROOT,
+                    "Range [%d, %d + %d) out of bounds for length %d", from, from, size, length));
+        }
+    }
+
+    /**
+     * Copies the field of elements {@code [fromIndex, fromIndex + count)} of
+     * the sequence at {@code offset} in {@code segment} to
+     * {@code dstArray[dstIndex, dstIndex + count)}.
+     */
+    public void gather(MemorySegment segment, long offset, long fromIndex,
+                       Object dstArray, int dstIndex, int count) {
+        long at = checkAccess(segment, offset, fromIndex, dstArray, dstIndex, count);
+        if (stride == field.byteSize()) {
+            MemorySegment.copy(segment, field, at, dstArray, dstIndex, count);
+            return;
+        }
+        int end = dstIndex + count;
+        if (dstArray instanceof byte[] array) {
+            ValueLayout.OfByte layout = (ValueLayout.OfByte) field;
+            for (int i = dstIndex; i < end; i++, at += stride) array[i] = segment.get(layout, at);
+        } else if (dstArray instanceof char[] array) {
+            ValueLayout.OfChar layout = (ValueLayout.OfChar) field;
+            for (int i = dstIndex; i < end; i++, at += stride) array[i] = segment.get(layout, at);
+        } else if (dstArray instanceof short[] array) {
+            ValueLayout.OfShort layout = (ValueLayout.OfShort) field;
+            for (int i = dstIndex; i < end; i++, at += stride) array[i] = segment.get(layout, at);
+        } else if (dstArray instanceof int[] array) {
+            ValueLayout.OfInt layout = (ValueLayout.OfInt) field;
+            for (int i = dstIndex; i < end; i++, at += stride) array[i] = segment.get(layout, at);
+        } else if (dstArray instanceof long[] array) {
+            ValueLayout.OfLong layout = (ValueLayout.OfLong) field;
+            for (int i = dstIndex; i < end; i++, at += stride) array[i] = segment.get(layout, at);
+        } else if (dstArray instanceof float[] array) {
+            ValueLayout.OfFloat layout = (ValueLayout.OfFloat) field;
+            for (int i = dstIndex; i < end; i++, at += stride) array[i] = segment.get(layout, at);
+        } else {
+            double[] array = (double[]) dstArray;
+            ValueLayout.OfDouble layout = (ValueLayout.OfDouble) field;
+            for (int i = dstIndex; i < end; i++, at += stride) array[i] = segment.get(layout, at);
+        }
+    }
+
+    /**
+     * Copies {@code srcArray[srcIndex, srcIndex + count)} to the field of
+     * elements {@code [fromIndex, fromIndex + count)} of the sequence at
+     * {@code offset} in {@code segment}. The other bytes of the elements are
+     * left alone.
+     */
+    public void scatter(Object srcArray, int srcIndex, MemorySegment segment, long offset,
+                        long fromIndex, int count) {
+        long at = checkAccess(segment, offset, fromIndex, srcArray, srcIndex, count);
+        if (stride == field.byteSize()) {
+            MemorySegment.copy(srcArray, srcIndex, segment, field, at, count);
+            return;
+        }
+        int end = srcIndex + count;
+        if (srcArray instanceof byte[] array) {
+            ValueLayout.OfByte layout = (ValueLayout.OfByte) field;
+            for (int i = srcIndex; i < end; i++, at += stride) segment.set(layout, at, array[i]);
+        } else if (srcArray instanceof char[] array) {
+            ValueLayout.OfChar layout = (ValueLayout.OfChar) field;
+            for (int i = srcIndex; i < end; i++, at += stride) segment.set(layout, at, array[i]);
+        } else if (srcArray instanceof short[] array) {
+            ValueLayout.OfShort layout = (ValueLayout.OfShort) field;
+            for (int i = srcIndex; i < end; i++, at += stride) segment.set(layout, at, array[i]);
+        } else if (srcArray instanceof int[] array) {
+            ValueLayout.OfInt layout = (ValueLayout.OfInt) field;
+            for (int i = srcIndex; i < end; i++, at += stride) segment.set(layout, at, array[i]);
+        } else if (srcArray instanceof long[] array) {
+            ValueLayout.OfLong layout = (ValueLayout.OfLong) field;
+            for (int i = srcIndex; i < end; i++, at += stride) segment.set(layout, at, array[i]);
+        } else if (srcArray instanceof float[] array) {
+            ValueLayout.OfFloat layout = (ValueLayout.OfFloat) field;
+            for (int i = srcIndex; i < end; i++, at += stride) segment.set(layout, at, array[i]);
+        } else {
+            double[] array = (double[]) srcArray;
+            ValueLayout.OfDouble layout = (ValueLayout.OfDouble) field;
+            for (int i = srcIndex; i < end; i++, at += stride) segment.set(layout, at, array[i]);
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package com.v7878.panamatest.util;
+
+import com.v7878.foreign.AddressLayout;
+import com.v7878.foreign.GroupLayout;
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.PaddingLayout;
+import com.v7878.foreign.SequenceLayout;
+import com.v7878.foreign.StructLayout;
+import com.v7878.foreign.UnionLayout;
+import com.v7878.foreign.ValueLayout;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Moves the value fields of a {@link GroupLayout} between a memory segment
+ * and a flat scratch array.
+ * <p>
+ * {@link #compile} walks the layout once, through nested structs and
+ * sequences, and records the offset and carrier of every value field. The
+ * field order is the order of a depth-first walk of the layout, which is also
+ * the order of the slots in the scratch array. After that, {@link #read} and
+ * {@link #write} are plain loops over the fields: they build no path
+ * accessors and allocate nothing.
+ * <p>
+ * In a {@code long[]} scratch array, integral fields are sign-extended
+ * ({@code char} and {@code boolean} are zero-extended), {@code float} and
+ * {@code double} fields hold their raw bits, and addresses hold the raw
+ * address. A {@code double[]} scratch array can only be used when all fields
+ * are {@code float} or {@code double}. Padding is never touched. Unions are
+ * rejected, since there is no single set of fields to encode for them.
+ * <p>
+ * {@link #forRecord} maps the struct onto a record type instead of a scratch
+ * array; see {@link RecordCodec} for the records it accepts. Only the scratch
+ * array path is allocation-free: records are objects, and their components
+ * are boxed on the way in and out.
+ */
+public final class StructCodec {
+
+    static final byte BYTE = 0;
+    static final byte BOOLEAN = 1;
+    static final byte CHAR = 2;
+    static final byte SHORT = 3;
+    static final byte INT = 4;
+    static final byte LONG = 5;
+    static final byte FLOAT = 6;
+    static final byte DOUBLE = 7;
+
+    private final GroupLayout layout;
+    private final long[] offsets;
+    private final byte[] kinds;
+    private final ValueLayout[] layouts;
+    private final boolean floatingOnly;
+
+    private StructCodec(GroupLayout layout, long[] offsets, byte[] kinds, ValueLayout[] layouts) {
+        this.layout = layout;
+        this.offsets = offsets;
+        this.kinds = kinds;
+        this.layouts = layouts;
+        boolean floating = true;
+        for (byte kind : kinds) {
+            floating &= kind == FLOAT || kind == DOUBLE;
+        }
+        this.floatingOnly = floating;
+    }
+
+    public static StructCodec compile(GroupLayout layout) {
+        Objects.requireNonNull(layout);
+        List<Long> offsets = new ArrayList<>();
+        List<ValueLayout> layouts = new ArrayList<>();
+        flatten(layout, 0, offsets, layouts);
+        int count = layouts.size();
+        long[] offsetArray = new long[count];
+        byte[] kindArray = new byte[count];
+        ValueLayout[] layoutArray = new ValueLayout[count];
+        for (int i = 0; i < count; i++) {
+            offsetArray[i] = offsets.get(i);
+            ValueLayout field = layouts.get(i);
+            if (field instanceof AddressLayout) {
+                // read and written as a raw integer, so no MemorySegment is created
+                field = field.byteSize() == 8 ?
+                        ValueLayout.JAVA_LONG.withOrder(field.order()).withByteAlignment(field.byteAlignment()) :
+                        ValueLayout.JAVA_INT.withOrder(field.order()).withByteAlignment(field.byteAlignment());
+            }
+            kindArray[i] = kindOf(field);
+            layoutArray[i] = field.withoutName();
+        }
+        return new StructCodec(layout, offsetArray, kindArray, layoutArray);
+    }
+
+    private static void flatten(MemoryLayout layout, long offset, List<Long> offsets, List<ValueLayout> layouts) {
+        if (layout instanceof ValueLayout value) {
+            offsets.add(offset);
+            layouts.add(value);
+        } else if (layout instanceof StructLayout struct) {
+            long memberOffset = offset;
+            for (MemoryLayout member : struct.memberLayouts()) {
+                flatten(member, memberOffset, offsets, layouts);
+                memberOffset += member.byteSize();
+            }
+        } else if (layout instanceof UnionLayout) {
+            throw new IllegalArgumentException("Unions are not supported: " + layout);
+        } else if (layout instanceof SequenceLayout sequence) {
+            MemoryLayout element = sequence.elementLayout();
+            for (long i = 0; i < sequence.elementCount(); i++) {
+                flatten(element, offset + i * element.byteSize(), offsets, layouts);
+            }
+        } else if (!(layout instanceof PaddingLayout)) {
+            throw new IllegalArgumentException("Unexpected layout: " + layout);
+        }
+    }
+
+    /**
+     * Returns a codec between this struct and records of type {@code type}.
+     *
+     * @throws IllegalArgumentException if {@code type} does not match the layout,
+     *                                  as described in {@link RecordCodec}
+     */
+    public <R extends Record> RecordCodec<R> forRecord(Class<R> type) {
+        Objects.requireNonNull(type);
+        int[] cursor = {0};
+        RecordShape shape = RecordShape.of(this, layout, type, cursor);
+        assert cursor[0] == kinds.length;
+        return new RecordCodec<>(this, type, shape);
+    }
+
+    private static byte kindOf(ValueLayout layout) {
+        if (layout instanceof ValueLayout.OfByte) return BYTE;
+        if (layout instanceof ValueLayout.OfBoolean) return BOOLEAN;
+        if (layout instanceof ValueLayout.OfChar) return CHAR;
+        if (layout instanceof ValueLayout.OfShort) return SHORT;
+        if (layout instanceof ValueLayout.OfInt) return INT;
+        if (layout instanceof ValueLayout.OfLong) return LONG;
+        if (layout instanceof ValueLayout.OfFloat) return FLOAT;
+        if (layout instanceof ValueLayout.OfDouble) return DOUBLE;
+        throw new IllegalArgumentException("Unexpected layout: " + layout);
+    }
+
+    public GroupLayout layout() {
+        return layout;
+    }
+
+    /**
+     * Returns the number of value fields, that is, the scratch array length.
+     */
+    public int fieldCount() {
+        return kinds.length;
+    }
+
+    /**
+     * Returns the offset of the given field from the start of the struct.
+     */
+    public long fieldOffset(int field) {
+        return offsets[field];
+    }
+
+    private void checkScratch(int length) {
+        if (length < kinds.length) {
+            throw new IllegalArgumentException("Scratch array too short: " + length + " < " + kinds.length);
+        }
+    }
+
+    private void checkFloatingOnly() {
+        if (!floatingOnly) {
+            throw new UnsupportedOperationException("Not all fields are floating point: " + layout);
+        }
+    }
+
+    /**
+     * Reads the struct at {@code offset} in {@code segment} into {@code slots}.
+     */
+    public void read(MemorySegment segment, long offset, long[] slots) {
+        checkScratch(slots.length);
+        for (int i = 0; i < kinds.length; i++) {
+            long at = offset + offsets[i];
+            ValueLayout field = layouts[i];
+            slots[i] = switch (kinds[i]) {
+                case BYTE -> segment.get((ValueLayout.OfByte) field, at);
+                case BOOLEAN -> segment.get((ValueLayout.OfBoolean) field, at) ? 1 : 0;
+                case CHAR -> segment.get((ValueLayout.OfChar) field, at);
+                case SHORT -> segment.get((ValueLayout.OfShort) field, at);
+                case INT -> segment.get((ValueLayout.OfInt) field, at);
+                case LONG -> segment.get((ValueLayout.OfLong) field, at);
+                case FLOAT -> Float.floatToRawIntBits(segment.get((ValueLayout.OfFloat) field, at));
+                case DOUBLE -> Double.doubleToRawLongBits(segment.get((ValueLayout.OfDouble) field, at));
+                default -> throw new AssertionError();
+            };
+        }
+    }
+
+    /**
+     * Writes {@code slots} to the struct at {@code offset} in {@code segment}.
+     */
+    public void write(MemorySegment segment, long offset, long[] slots) {
+        checkScratch(slots.length);
+        for (int i = 0; i < kinds.length; i++) {
+            long at = offset + offsets[i];
+            ValueLayout field = layouts[i];
+            long value = slots[i];
+            switch (kinds[i]) {
+                case BYTE -> segment.set((ValueLayout.OfByte) field, at, (byte) value);
+                case BOOLEAN -> segment.set((ValueLayout.OfBoolean) field, at, value != 0);
+                case CHAR -> segment.set((ValueLayout.OfChar) field, at, (char) value);
+                case SHORT -> segment.set((ValueLayout.OfShort) field, at, (short) value);
+                case INT -> segment.set((ValueLayout.OfInt) field, at, (int) value);
+                case LONG -> segment.set((ValueLayout.OfLong) field, at, value);
+                case FLOAT -> segment.set((ValueLayout.OfFloat) field, at, Float.intBitsToFloat((int) value));
+                case DOUBLE -> segment.set((ValueLayout.OfDouble) field, at, Double.longBitsToDouble(value));
+                default -> throw new AssertionError();
+            }
+        }
+    }
+
+    /**
+     * Reads the struct at {@code offset} in {@code segment} into {@code slots}.
+     *
+     * @throws UnsupportedOperationException if not all fields are {@code float} or {@code double}
+     */
+    public void read(MemorySegment segment, long offset, double[] slots) {
+        checkFloatingOnly();
+        checkScratch(slots.length);
+        for (int i = 0; i < kinds.length; i++) {
+            long at = offset + offsets[i];
+            slots[i] = kinds[i] == FLOAT ?
+                    segment.get((ValueLayout.OfFloat) layouts[i], at) :
+                    segment.get((ValueLayout.OfDouble) layouts[i], at);
+        }
+    }
+
+    /**
+     * Writes {@code slots} to the struct at {@code offset} in {@code segment};
+     * {@code float} fields receive the value narrowed to {@code float}.
+     *
+     * @throws UnsupportedOperationException if not all fields are {@code float} or {@code double}
+     */
+    public void write(MemorySegment segment, long offset, double[] slots) {
+        checkFloatingOnly();
+        checkScratch(slots.length);
+        for (int i = 0; i < kinds.length; i++) {
+            long at = offset + offsets[i];
+            if (kinds[i] == FLOAT) {
+                segment.set((ValueLayout.OfFloat) layouts[i], at, (float) slots[i]);
+            } else {
+                segment.set((ValueLayout.OfDouble) layouts[i], at, slots[i]);
+            }
+        }
+    }
+
+    /**
+     * Reads and writes a struct as a record. The struct must be a
+     * {@link StructLayout} whose members, apart from padding, are all named:
+     * every value member maps to the record component of the same name and of
+     * the member's carrier type ({@link MemorySegment} for addresses, read as
+     * zero-length segments), and every nested struct member maps to a
+     * component of a record type that matches that struct in the same way.
+     * Sequences are not supported; use the scratch arrays of
+     * {@link StructCodec} for them.
+     * <p>
+     * Components are found through the accessors of the record, and records
+     * are created with the constructor whose parameter types are the
+     * component types in layout order, so the record must declare its
+     * components in the same order as the layout declares its members.
+     * <p>
+     * Instances are thread-safe. Unlike {@link StructCodec#read} and
+     * {@link StructCodec#write}, every call allocates: a scratch array of
+     * {@link StructCodec#fieldCount()} longs, an argument array per record,
+     * the boxed components and, for {@link #read}, the records themselves.
+     */
+    public static final class RecordCodec<R extends Record> {
+
+        private final StructCodec codec;
+        private final Class<R> type;
+        private final RecordShape shape;
+
+        private RecordCodec(StructCodec codec, Class<R> type, RecordShape shape) {
+            this.codec = codec;
+            this.type = type;
+            this.shape = shape;
+        }
+
+        public R read(MemorySegment segment, long offset) {
+            long[] slots = new long[codec.fieldCount()];
+            codec.read(segment, offset, slots);
+            return type.cast(shape.construct(slots));
+        }
+
+        public void write(MemorySegment segment, long offset, R value) {
+            Objects.requireNonNull(value);
+            long[] slots = new long[codec.fieldCount()];
+            shape.deconstruct(value, slots);
+            codec.write(segment, offset, slots);
+        }
+    }
+
+    /**
+     * How the components of one record type map to the slots of the codec.
+     */
+    private static final class RecordShape {
+
+        private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+        private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+        private final MethodHandle constructor;
+        private final MethodHandle[] accessors;
+        // the slot of every value component, -1 for nested records
+        private final int[] slots;
+        private final byte[] kinds;
+        private final boolean[] addresses;
+        private final long[] addressMasks;
+        private final RecordShape[] nested;
+
+        private RecordShape(MethodHandle constructor, MethodHandle[] accessors, int[] slots, byte[] kinds,
+                            boolean[] addresses, long[] addressMasks, RecordShape[] nested) {
+            this.constructor = constructor;
+            this.accessors = accessors;
+            this.slots = slots;
+            this.kinds = kinds;
+            this.addresses = addresses;
+            this.addressMasks = addressMasks;
+            this.nested = nested;
+        }
+
+        static RecordShape of(StructCodec codec, GroupLayout group, Class<?> type, int[] cursor) {
+            if (!(group instanceof StructLayout)) {
+                throw new IllegalArgumentException("Not a struct: " + group);
+            }
+            if (!Record.class.isAssignableFrom(type)) {
+                throw new IllegalArgumentException("Not a record: " + type.getName());
+            }
+            List<MemoryLayout> members = new ArrayList<>();
+            for (MemoryLayout member : group.memberLayouts()) {
+                if (!(member instanceof PaddingLayout)) {
+                    members.add(member);
+                }
+            }
+            int count = members.size();
+            MethodHandle[] accessors = new MethodHandle[count];
+            Class<?>[] componentTypes = new Class<?>[count];
+            int[] slots = new int[count];
+            byte[] kinds = new byte[count];
+            boolean[] addresses = new boolean[count];
+            long[] addressMasks = new long[count];
+            RecordShape[] nested = new RecordShape[count];
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            for (int i = 0; i < count; i++) {
+                MemoryLayout member = members.get(i);
+                String name = member.name().orElseThrow(() ->
+                        new IllegalArgumentException("Unnamed member in " + group));
+                Method accessor;
+                try {
+                    accessor = type.getDeclaredMethod(name);
+                    accessor.setAccessible(true);
+                    accessors[i] = lookup.unreflect(accessor).asType(ACCESSOR_TYPE);
+                } catch (ReflectiveOperationException ex) {
+                    throw new IllegalArgumentException("No component " + name + " in " + type.getName(), ex);
+                }
+                componentTypes[i] = accessor.getReturnType();
+                if (member instanceof ValueLayout value) {
+                    if (componentTypes[i] != value.carrier()) {
+                        throw new IllegalArgumentException("Component " + name + " of " + type.getName() +
+                                " is not a " + value.carrier().getName());
+                    }
+                    slots[i] = cursor[0]++;
+                    kinds[i] = codec.kinds[slots[i]];
+                    addresses[i] = value instanceof AddressLayout;
+                    addressMasks[i] = value.byteSize() == 4 ? 0xFFFFFFFFL : -1L;
+                } else if (member instanceof GroupLayout struct) {
+                    slots[i] = -1;
+                    nested[i] = of(codec, struct, componentTypes[i], cursor);
+                } else {
+                    throw new IllegalArgumentException("Member " + name + " cannot be mapped to a component: " + member);
+                }
+            }
+            try {
+                Constructor<?> canonical = type.getDeclaredConstructor(componentTypes);
+                canonical.setAccessible(true);
+                MethodHandle constructor = lookup.unreflectConstructor(canonical)
+                        .asSpreader(Object[].class, count).asType(CONSTRUCTOR_TYPE);
+                return new RecordShape(constructor, accessors, slots, kinds, addresses, addressMasks, nested);
+            } catch (ReflectiveOperationException ex) {
+                throw new IllegalArgumentException("No constructor for the layout members in " + type.getName(), ex);
+            }
+        }
+
+        Object construct(long[] values) {
+            Object[] args = new Object[accessors.length];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = nested[i] != null ? nested[i].construct(values) : box(i, values[slots[i]]);
+            }
+            try {
+                return (Object) constructor.invokeExact(args);
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable th) {
+                throw new IllegalStateException(th);
+            }
+        }
+
+        void deconstruct(Object record, long[] values) {
+            for (int i = 0; i < accessors.length; i++) {
+                Object component;
+                try {
+                    component = (Object) accessors[i].invokeExact(record);
+                } catch (RuntimeException | Error ex) {
+                    throw ex;
+                } catch (Throwable th) {
+                    throw new IllegalStateException(th);
+                }
+                if (nested[i] != null) {
+                    nested[i].deconstruct(Objects.requireNonNull(component), values);
+                } else {
+                    values[slots[i]] = unbox(i, component);
+                }
+            }
+        }
+
+        private Object box(int component, long value) {
+            if (addresses[component]) {
+                return MemorySegment.ofAddress(value & addressMasks[component]);
+            }
+            return switch (kinds[component]) {
+                case BYTE -> (byte) value;
+                case BOOLEAN -> value != 0;
+                case CHAR -> (char) value;
+                case SHORT -> (short) value;
+                case INT -> (int) value;
+                case LONG -> value;
+                case FLOAT -> Float.intBitsToFloat((int) value);
+                case DOUBLE -> Double.longBitsToDouble(value);
+                default -> throw new AssertionError();
+            };
+        }
+
+        private long unbox(int component, Object value) {
+            if (addresses[component]) {
+                return ((MemorySegment) Objects.requireNonNull(value)).address();
+            }
+            return switch (kinds[component]) {
+                case BOOLEAN -> (Boolean) value ? 1 : 0;
+                case CHAR -> (Character) value;
+                case FLOAT -> Float.floatToRawIntBits((Float) value);
+                case DOUBLE -> Double.doubleToRawLongBits((Double) value);
+                default -> ((Number) value).longValue();
+            };
+        }
+    }
+}
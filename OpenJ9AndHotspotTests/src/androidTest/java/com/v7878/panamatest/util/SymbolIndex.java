@@ -0,0 +1,274 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.foreign.ValueLayout.ADDRESS;
+import static com.v7878.foreign.ValueLayout.JAVA_BYTE;
+import static com.v7878.foreign.ValueLayout.JAVA_INT;
+import static com.v7878.foreign.ValueLayout.JAVA_LONG;
+import static com.v7878.foreign.ValueLayout.JAVA_SHORT;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.FunctionDescriptor;
+import com.v7878.foreign.Linker;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.SymbolLookup;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Symbol lookup over a hash table of all symbols exported by one loaded
+ * library, built once from its dynamic symbol table, so that every
+ * {@link #find} is a single hash lookup instead of a {@code dlsym} call.
+ * <p>
+ * The library is identified by the address of any of its symbols; the
+ * symbol table is read from the loaded image in memory (through its
+ * {@code PT_DYNAMIC} segment), so this also works for libraries loaded
+ * directly from an APK. Only defined, default or protected visibility,
+ * global or weak symbols are indexed, which matches what {@code dlsym}
+ * can return for the library, except for absolute ({@code SHN_ABS}) and
+ * thread-local ({@code STT_TLS}) symbols: their values are not addresses in
+ * the image, and {@code dlsym} resolves them in ways an index cannot. The
+ * index must not be used after the library is unloaded.
+ */
+public final class SymbolIndex implements SymbolLookup {
+
+    // from <elf.h>
+    static final int PT_LOAD = 1;
+    static final int PT_DYNAMIC = 2;
+    static final long DT_NULL = 0;
+    static final long DT_HASH = 4;
+    static final long DT_STRTAB = 5;
+    static final long DT_SYMTAB = 6;
+    static final long DT_GNU_HASH = 0x6ffffef5L;
+    static final int STB_GLOBAL = 1;
+    static final int STB_WEAK = 2;
+    static final int STB_GNU_UNIQUE = 10;
+    static final int STT_SECTION = 3;
+    static final int STT_FILE = 4;
+    static final int STT_TLS = 6;
+    static final int SHN_UNDEF = 0;
+    static final int SHN_ABS = 0xfff1;
+    static final int STV_DEFAULT = 0;
+    static final int STV_PROTECTED = 3;
+
+    static final boolean IS64 = ADDRESS.byteSize() == 8;
+    static final long WORD = ADDRESS.byteSize();
+
+    // all of the address space, for reading the loaded image
+    private static final MemorySegment MEMORY = MemorySegment.NULL.reinterpret(Long.MAX_VALUE);
+
+    private static final MethodHandle DLADDR = Linker.nativeLinker().downcallHandle(
+            findDladdr(), FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS));
+
+    private static MemorySegment findDladdr() {
+        Optional<MemorySegment> dladdr = Linker.nativeLinker().defaultLookup().find("dladdr");
+        if (dladdr.isPresent()) {
+            return dladdr.get();
+        }
+        // bionic exports the dl* functions from libdl.so rather than from libc.so
+        return SymbolLookup.libraryLookup("libdl.so", Arena.global()).find("dladdr").orElseThrow();
+    }
+
+    private final String library;
+    private final Map<String, MemorySegment> symbols;
+
+    private SymbolIndex(String library, Map<String, MemorySegment> symbols) {
+        this.library = library;
+        this.symbols = symbols;
+    }
+
+    /**
+     * Indexes the library that contains the symbol {@code anchor}.
+     */
+    public static SymbolIndex ofLibraryContaining(MemorySegment anchor) {
+        try (Arena arena = Arena.ofConfined()) {
+            // Dl_info: dli_fname, dli_fbase, dli_sname, dli_saddr
+            MemorySegment info = arena.allocate(4 * WORD, WORD);
+            int found;
+            try {
+                found = (int) DLADDR.invokeExact(anchor, info);
+            } catch (Throwable th) {
+                throw new AssertionError(th);
+            }
+            if (found == 0) {
+                throw new IllegalArgumentException("No library contains " + anchor);
+            }
+            MemorySegment fileName = info.get(ADDRESS, 0);
+            String library = fileName.address() == 0 ? "?" :
+                    fileName.reinterpret(Long.MAX_VALUE).getString(0);
+            long base = info.get(ADDRESS, WORD).address();
+            Map<String, MemorySegment> symbols = readSymbols(library, base);
+
+            // the load bias is derived from the ELF headers, cross-check it
+            MemorySegment sname = info.get(ADDRESS, 2 * WORD);
+            if (sname.address() != 0) {
+                String name = sname.reinterpret(Long.MAX_VALUE).getString(0);
+                MemorySegment indexed = symbols.get(name);
+                if (indexed == null || indexed.address() != info.get(ADDRESS, 3 * WORD).address()) {
+                    throw new IllegalStateException("Inconsistent symbol table in " + library + " for " + name);
+                }
+            }
+            return new SymbolIndex(library, symbols);
+        }
+    }
+
+    /**
+     * Indexes the library in which {@code lookup} finds {@code anchor}.
+     */
+    public static SymbolIndex ofLibraryContaining(SymbolLookup lookup, String anchor) {
+        return ofLibraryContaining(lookup.find(anchor).orElseThrow(
+                () -> new IllegalArgumentException("Symbol not found: " + anchor)));
+    }
+
+    private static long word(long address) {
+        return IS64 ? MEMORY.get(JAVA_LONG, address) : Integer.toUnsignedLong(MEMORY.get(JAVA_INT, address));
+    }
+
+    private static long u32(long address) {
+        return Integer.toUnsignedLong(MEMORY.get(JAVA_INT, address));
+    }
+
+    private static int u16(long address) {
+        return Short.toUnsignedInt(MEMORY.get(JAVA_SHORT, address));
+    }
+
+    private static Map<String, MemorySegment> readSymbols(String library, long base) {
+        if (MEMORY.get(JAVA_BYTE, base) != 0x7f || MEMORY.get(JAVA_BYTE, base + 1) != 'E' ||
+                MEMORY.get(JAVA_BYTE, base + 2) != 'L' || MEMORY.get(JAVA_BYTE, base + 3) != 'F') {
+            throw new IllegalStateException("No ELF header at the base of " + library);
+        }
+        long phoff = word(base + (IS64 ? 32 : 28));
+        int phentsize = u16(base + (IS64 ? 54 : 42));
+        int phnum = u16(base + (IS64 ? 56 : 44));
+
+        long minVaddr = Long.MAX_VALUE;
+        long maxVaddr = 0;
+        long dynamicVaddr = -1;
+        for (int i = 0; i < phnum; i++) {
+            long phdr = base + phoff + (long) i * phentsize;
+            int type = MEMORY.get(JAVA_INT, phdr);
+            long vaddr = word(phdr + (IS64 ? 16 : 8));
+            if (type == PT_LOAD) {
+                long memsz = word(phdr + (IS64 ? 40 : 20));
+                minVaddr = Math.min(minVaddr, vaddr);
+                maxVaddr = Math.max(maxVaddr, vaddr + memsz);
+            } else if (type == PT_DYNAMIC) {
+                dynamicVaddr = vaddr;
+            }
+        }
+        if (dynamicVaddr < 0 || minVaddr == Long.MAX_VALUE) {
+            throw new IllegalStateException("No dynamic segment in " + library);
+        }
+        // dli_fbase is the start of the page that holds the lowest loaded address
+        long bias = base - (minVaddr & -MappedResidency.pageSize());
+
+        long hash = 0, gnuHash = 0, strtab = 0, symtab = 0;
+        for (long dyn = bias + dynamicVaddr; ; dyn += 2 * WORD) {
+            long tag = word(dyn);
+            if (tag == DT_NULL) {
+                break;
+            }
+            long value = word(dyn + WORD);
+            if (tag == DT_HASH) {
+                hash = value;
+            } else if (tag == DT_GNU_HASH) {
+                gnuHash = value;
+            } else if (tag == DT_STRTAB) {
+                strtab = value;
+            } else if (tag == DT_SYMTAB) {
+                symtab = value;
+            }
+        }
+        if (strtab == 0 || symtab == 0 || (hash == 0 && gnuHash == 0)) {
+            throw new IllegalStateException("Incomplete dynamic section in " + library);
+        }
+        // The dynamic section is read from the loaded image, not from the file, and
+        // loaders may have relocated its pointers there: glibc does, bionic does not.
+        // Decide once for the whole section, by where the string table would be.
+        long start = bias + minVaddr;
+        long end = bias + maxVaddr;
+        boolean linkTime = bias + strtab >= start && bias + strtab < end;
+        boolean relocated = strtab >= start && strtab < end;
+        if (linkTime == relocated) {
+            throw new IllegalStateException("Cannot tell whether the dynamic section of " +
+                    library + " was relocated");
+        }
+        if (linkTime) {
+            hash = hash == 0 ? 0 : bias + hash;
+            gnuHash = gnuHash == 0 ? 0 : bias + gnuHash;
+            strtab += bias;
+            symtab += bias;
+        }
+        long count = hash != 0 ? u32(hash + 4) : gnuSymbolCount(gnuHash);
+
+        long entrySize = IS64 ? 24 : 16;
+        Map<String, MemorySegment> symbols = new HashMap<>((int) (count * 4 / 3) + 1);
+        for (long i = 1; i < count; i++) {
+            long sym = symtab + i * entrySize;
+            int info = MEMORY.get(JAVA_BYTE, sym + (IS64 ? 4 : 12)) & 0xff;
+            int other = MEMORY.get(JAVA_BYTE, sym + (IS64 ? 5 : 13)) & 0xff;
+            int shndx = u16(sym + (IS64 ? 6 : 14));
+            long value = word(sym + (IS64 ? 8 : 4));
+            int bind = info >>> 4;
+            int type = info & 0xf;
+            int visibility = other & 0x3;
+            if (shndx == SHN_UNDEF || shndx == SHN_ABS || value == 0 ||
+                    type == STT_SECTION || type == STT_FILE || type == STT_TLS ||
+                    (bind != STB_GLOBAL && bind != STB_WEAK && bind != STB_GNU_UNIQUE) ||
+                    (visibility != STV_DEFAULT && visibility != STV_PROTECTED)) {
+                continue;
+            }
+            String name = MEMORY.getString(strtab + u32(sym));
+            symbols.putIfAbsent(name, MemorySegment.ofAddress(bias + value));
+        }
+        return symbols;
+    }
+
+    /**
+     * Returns the number of entries of the symbol table, which the GNU hash
+     * table only gives implicitly: one past the end of the longest chain of
+     * the last non-empty bucket.
+     */
+    private static long gnuSymbolCount(long gnuHash) {
+        long buckets = u32(gnuHash);
+        long symOffset = u32(gnuHash + 4);
+        long bloomSize = u32(gnuHash + 8);
+        long bucketArray = gnuHash + 16 + bloomSize * WORD;
+        long chainArray = bucketArray + buckets * 4;
+        long last = 0;
+        for (long i = 0; i < buckets; i++) {
+            last = Math.max(last, u32(bucketArray + i * 4));
+        }
+        if (last < symOffset) {
+            return symOffset;
+        }
+        while ((u32(chainArray + (last - symOffset) * 4) & 1) == 0) {
+            last++;
+        }
+        return last + 1;
+    }
+
+    /**
+     * Returns the file name of the indexed library, as reported by the loader.
+     */
+    public String library() {
+        return library;
+    }
+
+    public int size() {
+        return symbols.size();
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(symbols.keySet());
+    }
+
+    @Override
+    public Optional<MemorySegment> find(String name) {
+        return Optional.ofNullable(symbols.get(name));
+    }
+}
@@ -0,0 +1,261 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.foreign.MemoryLayout.PathElement.groupElement;
+import static com.v7878.foreign.ValueLayout.ADDRESS;
+import static com.v7878.foreign.ValueLayout.JAVA_BYTE;
+import static com.v7878.foreign.ValueLayout.JAVA_FLOAT;
+import static com.v7878.foreign.ValueLayout.JAVA_INT;
+import static com.v7878.foreign.ValueLayout.JAVA_SHORT;
+import static com.v7878.panamatest.openj9.Shared.C_DOUBLE;
+import static com.v7878.panamatest.openj9.Shared.C_LONG_LONG;
+import static com.v7878.panamatest.openj9.Shared.IS_DOUBLE_SMALL_ALIGNMENT;
+import static com.v7878.panamatest.openj9.Shared.IS_LONG_SMALL_ALIGNMENT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.FunctionDescriptor;
+import com.v7878.foreign.Linker;
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.SymbolLookup;
+import com.v7878.foreign.ValueLayout;
+
+import org.junit.Test;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Calls the va_list functions of valist.c (clinkerffitests) through their
+ * {@code _fromArgBlock} and {@code _variadic} shims.
+ */
+public class TestArgumentBlock {
+
+    static final Linker LINKER = Linker.nativeLinker();
+    static final ValueLayout C_LONG = (ValueLayout) LINKER.canonicalLayouts().get("long");
+    // VALIST_BLOCK_MAX_ARGS of valist_block.c
+    static final int MAX_ARGS = 16;
+
+    static final MemoryLayout STRU_3_BYTES = MemoryLayout.structLayout(
+            JAVA_BYTE.withName("elem1"), JAVA_BYTE.withName("elem2"), JAVA_BYTE.withName("elem3"));
+    static final MemoryLayout STRU_2_SHORTS = MemoryLayout.structLayout(
+            JAVA_SHORT.withName("elem1"), JAVA_SHORT.withName("elem2"));
+    static final MemoryLayout STRU_3_INTS = MemoryLayout.structLayout(
+            JAVA_INT.withName("elem1"), JAVA_INT.withName("elem2"), JAVA_INT.withName("elem3"));
+    static final MemoryLayout STRU_2_LONGS = MemoryLayout.structLayout(
+            C_LONG_LONG.withName("elem1"), C_LONG_LONG.withName("elem2"));
+    static final MemoryLayout STRU_3_FLOATS = MemoryLayout.structLayout(
+            JAVA_FLOAT.withName("elem1"), JAVA_FLOAT.withName("elem2"), JAVA_FLOAT.withName("elem3"));
+    static final MemoryLayout STRU_SHORT_INT = MemoryLayout.structLayout(
+            JAVA_SHORT.withName("elem1"), MemoryLayout.paddingLayout(2), JAVA_INT.withName("elem2"));
+    static final MemoryLayout STRU_LONG_INT = IS_LONG_SMALL_ALIGNMENT
+            ? MemoryLayout.structLayout(C_LONG_LONG.withName("elem1"), JAVA_INT.withName("elem2"))
+            : MemoryLayout.structLayout(C_LONG_LONG.withName("elem1"), JAVA_INT.withName("elem2"),
+            MemoryLayout.paddingLayout(4));
+    static final MemoryLayout STRU_FLOAT_DOUBLE = IS_DOUBLE_SMALL_ALIGNMENT
+            ? MemoryLayout.structLayout(JAVA_FLOAT.withName("elem1"), C_DOUBLE.withName("elem2"))
+            : MemoryLayout.structLayout(JAVA_FLOAT.withName("elem1"), MemoryLayout.paddingLayout(4),
+            C_DOUBLE.withName("elem2"));
+
+    static {
+        System.loadLibrary("clinkerffitests");
+    }
+
+    static MethodHandle fromArgBlock(String function, ValueLayout returnLayout) {
+        return LINKER.downcallHandle(SymbolLookup.loaderLookup().find(function + "_fromArgBlock").orElseThrow(),
+                FunctionDescriptor.of(returnLayout, JAVA_INT, ADDRESS));
+    }
+
+    static long offset(MemoryLayout struct, int element) {
+        return struct.byteOffset(groupElement("elem" + element));
+    }
+
+    static void addLong(ArgumentBlock block, long value) {
+        if (C_LONG instanceof ValueLayout.OfLong layout) {
+            block.add(layout, value);
+        } else {
+            block.add((ValueLayout.OfInt) C_LONG, (int) value);
+        }
+    }
+
+    @Test
+    public void testScalars() throws Throwable {
+        MethodHandle addInts = fromArgBlock("addIntsFromVaList", JAVA_INT);
+        MethodHandle addLongs = fromArgBlock("addLongsFromVaList", C_LONG_LONG);
+        MethodHandle addDoubles = fromArgBlock("addDoublesFromVaList", C_DOUBLE);
+        try (Arena arena = Arena.ofConfined()) {
+            ArgumentBlock ints = new ArgumentBlock(arena, JAVA_INT, MAX_ARGS);
+            ArgumentBlock longs = new ArgumentBlock(arena, C_LONG_LONG, MAX_ARGS);
+            ArgumentBlock doubles = new ArgumentBlock(arena, C_DOUBLE, MAX_ARGS);
+            for (int count : new int[]{0, 1, 5, MAX_ARGS}) {
+                ints.reset();
+                longs.reset();
+                doubles.reset();
+                int intSum = 0;
+                long longSum = 0;
+                double doubleSum = 0;
+                for (int i = 0; i < count; i++) {
+                    ints.add(JAVA_INT, i * 1000 - 3);
+                    intSum += i * 1000 - 3;
+                    longs.add(C_LONG_LONG, (1L << 40) + i);
+                    longSum += (1L << 40) + i;
+                    doubles.add(C_DOUBLE, i + 0.25);
+                    doubleSum += i + 0.25;
+                }
+                assertEquals(count, ints.count());
+                assertEquals(intSum, (int) addInts.invokeExact(ints.count(), ints.segment()));
+                assertEquals(longSum, (long) addLongs.invokeExact(longs.count(), longs.segment()));
+                assertEquals(doubleSum, (double) addDoubles.invokeExact(doubles.count(), doubles.segment()), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testPointers() throws Throwable {
+        MethodHandle addInts = fromArgBlock("addIntsByPtrFromVaList", JAVA_INT);
+        MethodHandle addDoubles = fromArgBlock("addDoublesByPtrFromVaList", C_DOUBLE);
+        try (Arena arena = Arena.ofConfined()) {
+            ArgumentBlock ints = new ArgumentBlock(arena, ADDRESS, 8);
+            ArgumentBlock doubles = new ArgumentBlock(arena, ADDRESS, 8);
+            for (int i = 0; i < 8; i++) {
+                ints.add(ADDRESS, arena.allocateFrom(JAVA_INT, i * 7));
+                doubles.add(ADDRESS, arena.allocateFrom(C_DOUBLE, i * 0.5));
+            }
+            assertEquals(196, (int) addInts.invokeExact(ints.count(), ints.segment()));
+            assertEquals(14.0, (double) addDoubles.invokeExact(doubles.count(), doubles.segment()), 0);
+        }
+    }
+
+    @Test
+    public void testStructs() throws Throwable {
+        try (Arena arena = Arena.ofConfined()) {
+            int count = 5;
+            ArgumentBlock bytes = new ArgumentBlock(arena, STRU_3_BYTES, count);
+            ArgumentBlock shorts = new ArgumentBlock(arena, STRU_2_SHORTS, count);
+            ArgumentBlock ints = new ArgumentBlock(arena, STRU_3_INTS, count);
+            ArgumentBlock longs = new ArgumentBlock(arena, STRU_2_LONGS, count);
+            ArgumentBlock floats = new ArgumentBlock(arena, STRU_3_FLOATS, count);
+            ArgumentBlock shortInts = new ArgumentBlock(arena, STRU_SHORT_INT, count);
+            ArgumentBlock longInts = new ArgumentBlock(arena, STRU_LONG_INT, count);
+            ArgumentBlock floatDoubles = new ArgumentBlock(arena, STRU_FLOAT_DOUBLE, count);
+            for (int i = 0; i < count; i++) {
+                MemorySegment struct = arena.allocate(STRU_3_BYTES);
+                for (int e = 1; e <= 3; e++) {
+                    struct.set(JAVA_BYTE, offset(STRU_3_BYTES, e), (byte) (i + e));
+                }
+                bytes.add(struct);
+
+                long slot = shorts.addSlot();
+                shorts.segment().set(JAVA_SHORT, slot + offset(STRU_2_SHORTS, 1), (short) (i * 100));
+                shorts.segment().set(JAVA_SHORT, slot + offset(STRU_2_SHORTS, 2), (short) -i);
+
+                slot = ints.addSlot();
+                for (int e = 1; e <= 3; e++) {
+                    ints.segment().set(JAVA_INT, slot + offset(STRU_3_INTS, e), i * 10 + e);
+                }
+
+                slot = longs.addSlot();
+                longs.segment().set(C_LONG_LONG, slot + offset(STRU_2_LONGS, 1), 1L << (32 + i));
+                longs.segment().set(C_LONG_LONG, slot + offset(STRU_2_LONGS, 2), i);
+
+                slot = floats.addSlot();
+                for (int e = 1; e <= 3; e++) {
+                    floats.segment().set(JAVA_FLOAT, slot + offset(STRU_3_FLOATS, e), i + e * 0.25f);
+                }
+
+                slot = shortInts.addSlot();
+                shortInts.segment().set(JAVA_SHORT, slot + offset(STRU_SHORT_INT, 1), (short) i);
+                shortInts.segment().set(JAVA_INT, slot + offset(STRU_SHORT_INT, 2), 100_000 * i);
+
+                slot = longInts.addSlot();
+                longInts.segment().set(C_LONG_LONG, slot + offset(STRU_LONG_INT, 1), 1L << (40 + i));
+                longInts.segment().set(JAVA_INT, slot + offset(STRU_LONG_INT, 2), -i);
+
+                slot = floatDoubles.addSlot();
+                floatDoubles.segment().set(JAVA_FLOAT, slot + offset(STRU_FLOAT_DOUBLE, 1), i + 0.5f);
+                floatDoubles.segment().set(C_DOUBLE, slot + offset(STRU_FLOAT_DOUBLE, 2), i * 1.5);
+            }
+            // 1+2+3 + 2+3+4 + ... + 5+6+7
+            assertEquals(60, (byte) fromArgBlock("add3BytesOfStructsFromVaList", JAVA_BYTE)
+                    .invokeExact(count, bytes.segment()));
+            assertEquals(990, (short) fromArgBlock("add2ShortsOfStructsFromVaList", JAVA_SHORT)
+                    .invokeExact(count, shorts.segment()));
+            assertEquals(330, (int) fromArgBlock("add3IntsOfStructsFromVaList", JAVA_INT)
+                    .invokeExact(count, ints.segment()));
+            assertEquals((0x1FL << 32) + 10, (long) fromArgBlock("add2LongsOfStructsFromVaList", C_LONG_LONG)
+                    .invokeExact(count, longs.segment()));
+            assertEquals(37.5f, (float) fromArgBlock("add3FloatsOfStructsFromVaList", JAVA_FLOAT)
+                    .invokeExact(count, floats.segment()), 0);
+            assertEquals(1_000_010, (int) fromArgBlock("addShortIntOfStructsFromVaList", JAVA_INT)
+                    .invokeExact(count, shortInts.segment()));
+            assertEquals((0x1FL << 40) - 10, (long) fromArgBlock("addLongIntOfStructsFromVaList", C_LONG_LONG)
+                    .invokeExact(count, longInts.segment()));
+            assertEquals(27.5, (double) fromArgBlock("addFloatDoubleOfStructsFromVaList", C_DOUBLE)
+                    .invokeExact(count, floatDoubles.segment()), 0);
+        }
+    }
+
+    @Test
+    public void testMixed() throws Throwable {
+        MethodHandle addMixed = LINKER.downcallHandle(
+                SymbolLookup.loaderLookup().find("addMixedArgsFromVaList_fromArgBlock").orElseThrow(),
+                FunctionDescriptor.of(C_DOUBLE, ADDRESS));
+        MethodHandle addMoreMixed = LINKER.downcallHandle(
+                SymbolLookup.loaderLookup().find("addMoreMixedArgsFromVaList_fromArgBlock").orElseThrow(),
+                FunctionDescriptor.of(C_DOUBLE, ADDRESS));
+        try (Arena arena = Arena.ofConfined()) {
+            ArgumentBlock block = new ArgumentBlock(arena, ArgumentBlock.MIXED_SLOT, MAX_ARGS);
+            block.add(JAVA_INT, 700);
+            addLong(block, 800);
+            block.add(C_DOUBLE, 16.25);
+            assertEquals(1516.25, (double) addMixed.invokeExact(block.segment()), 0);
+
+            // int, long, int, long, int, long, int, double, then int and double alternating
+            block.reset();
+            double sum = 0;
+            for (int i = 0; i < MAX_ARGS; i++) {
+                if (i % 2 == 0) {
+                    block.add(JAVA_INT, i);
+                    sum += i;
+                } else if (i < 7) {
+                    addLong(block, i * 1000L);
+                    sum += i * 1000L;
+                } else {
+                    block.add(C_DOUBLE, i + 0.5);
+                    sum += i + 0.5;
+                }
+            }
+            assertEquals(sum, (double) addMoreMixed.invokeExact(block.segment()), 0);
+        }
+    }
+
+    @Test
+    public void testVariadic() throws Throwable {
+        VariadicHandleCache addInts = new VariadicHandleCache(LINKER,
+                SymbolLookup.loaderLookup().find("addIntsFromVaList_variadic").orElseThrow(),
+                FunctionDescriptor.of(JAVA_INT, JAVA_INT), 4);
+        VariadicHandleCache addDoubles = new VariadicHandleCache(LINKER,
+                SymbolLookup.loaderLookup().find("addDoublesFromVaList_variadic").orElseThrow(),
+                FunctionDescriptor.of(C_DOUBLE, JAVA_INT), 4);
+        assertEquals(66, addInts.invoke(new Object[]{3}, 11, 22, 33));
+        assertEquals(3.75, (double) addDoubles.invoke(new Object[]{2}, 1.5, 2.25f), 0);
+    }
+
+    @Test
+    public void testLimits() throws Throwable {
+        MethodHandle addInts = fromArgBlock("addIntsFromVaList", JAVA_INT);
+        try (Arena arena = Arena.ofConfined()) {
+            ArgumentBlock block = new ArgumentBlock(arena, JAVA_INT, MAX_ARGS + 1);
+            for (int i = 0; i <= MAX_ARGS; i++) {
+                block.add(JAVA_INT, 1);
+            }
+            assertThrows(IllegalStateException.class, () -> block.add(JAVA_INT, 1));
+            assertThrows(IllegalArgumentException.class, () -> block.reset().add(C_DOUBLE, 1));
+            assertEquals(0, block.count());
+            // more arguments than the shim forwards
+            assertEquals(0, (int) addInts.invokeExact(MAX_ARGS + 1, block.segment()));
+            assertEquals(MAX_ARGS, (int) addInts.invokeExact(MAX_ARGS, block.segment()));
+            assertThrows(IllegalArgumentException.class, () -> new ArgumentBlock(arena, JAVA_INT, 0));
+        }
+    }
+}
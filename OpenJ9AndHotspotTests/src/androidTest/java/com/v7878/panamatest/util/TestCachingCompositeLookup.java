@@ -0,0 +1,121 @@
+package com.v7878.panamatest.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.SymbolLookup;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+public class TestCachingCompositeLookup {
+
+    /**
+     * Finds its names at address {@code id}, and counts the calls to find.
+     */
+    static class CountingLookup implements SymbolLookup {
+        final long id;
+        final Set<String> symbols;
+        int calls;
+
+        CountingLookup(long id, String... symbols) {
+            this.id = id;
+            this.symbols = new HashSet<>(List.of(symbols));
+        }
+
+        @Override
+        public Optional<MemorySegment> find(String name) {
+            calls++;
+            return symbols.contains(name) ?
+                    Optional.of(MemorySegment.ofAddress(id)) : Optional.empty();
+        }
+    }
+
+    static long address(SymbolLookup lookup, String name) {
+        return lookup.find(name).orElseThrow().address();
+    }
+
+    @Test
+    public void testFirstMatchWins() {
+        CountingLookup a = new CountingLookup(1, "a", "b");
+        CountingLookup b = new CountingLookup(2, "b", "c");
+        CountingLookup c = new CountingLookup(3, "c", "d");
+        SymbolLookup chain = a.or(b).or(c);
+        CachingCompositeLookup composite = CachingCompositeLookup.of(a, b, c);
+        for (String name : new String[]{"a", "b", "c", "d"}) {
+            assertEquals(name, address(chain, name), address(composite, name));
+        }
+        assertFalse(composite.find("e").isPresent());
+        assertEquals(0, composite.delegateOf("b"));
+        assertEquals(1, composite.delegateOf("c"));
+        assertEquals(2, composite.delegateOf("d"));
+        assertEquals(-1, composite.delegateOf("e"));
+    }
+
+    @Test
+    public void testCaching() {
+        CountingLookup a = new CountingLookup(1, "a");
+        CountingLookup b = new CountingLookup(2, "b");
+        CachingCompositeLookup composite = CachingCompositeLookup.of(a, b);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(2, address(composite, "b"));
+        }
+        assertEquals(1, a.calls);
+        assertEquals(1, b.calls);
+        assertEquals(1, composite.cachedNames());
+
+        // misses are not remembered by default
+        composite.find("x");
+        composite.find("x");
+        assertEquals(3, a.calls);
+        assertEquals(1, composite.cachedNames());
+
+        CachingCompositeLookup negative = CachingCompositeLookup.of(true, List.of(a, b));
+        negative.find("x");
+        negative.find("x");
+        assertEquals(4, a.calls);
+        assertEquals(1, negative.cachedNames());
+    }
+
+    @Test
+    public void testFlattening() {
+        CountingLookup a = new CountingLookup(1, "a");
+        CountingLookup b = new CountingLookup(2, "b");
+        CountingLookup c = new CountingLookup(3, "c");
+        SymbolLookup opaque = b.or(c);
+        CachingCompositeLookup inner = CachingCompositeLookup.of(a, opaque);
+        CachingCompositeLookup outer = CachingCompositeLookup.of(inner, new CountingLookup(4, "d"), inner);
+        assertEquals(List.of(a, opaque, outer.delegates().get(2), a, opaque), outer.delegates());
+        assertEquals(1, outer.delegateOf("c"));
+        assertEquals(2, outer.delegateOf("d"));
+        assertThrows(NullPointerException.class, () -> CachingCompositeLookup.of(a, null));
+        assertThrows(NullPointerException.class, () -> outer.find(null));
+    }
+
+    @Test
+    public void testAppend() {
+        CountingLookup a = new CountingLookup(1, "a");
+        CountingLookup b = new CountingLookup(2, "a", "b");
+        CachingCompositeLookup composite = CachingCompositeLookup.of(true, List.of(a));
+        assertEquals(1, address(composite, "a"));
+        assertFalse(composite.find("b").isPresent());
+
+        CachingCompositeLookup appended = composite.append(b);
+        assertEquals(2, appended.delegates().size());
+        // the hit is kept, the miss is not
+        assertEquals(1, appended.cachedNames());
+        int calls = a.calls;
+        assertEquals(1, address(appended, "a"));
+        assertEquals(calls, a.calls);
+        assertEquals(2, address(appended, "b"));
+        assertEquals(1, appended.delegateOf("b"));
+        // the original is unchanged
+        assertFalse(composite.find("b").isPresent());
+    }
+}
@@ -0,0 +1,112 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.foreign.MemoryLayout.PathElement.groupElement;
+import static com.v7878.foreign.MemoryLayout.PathElement.sequenceElement;
+import static com.v7878.foreign.ValueLayout.JAVA_INT;
+import static com.v7878.foreign.ValueLayout.JAVA_LONG;
+import static com.v7878.foreign.ValueLayout.JAVA_SHORT;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.StructLayout;
+import com.v7878.invoke.VarHandle;
+import com.v7878.panamatest.util.LayoutAccessorCache.Step;
+
+import org.junit.Test;
+
+import java.lang.invoke.MethodHandle;
+
+public class TestLayoutAccessorCache {
+
+    static StructLayout point() {
+        return MemoryLayout.structLayout(
+                JAVA_INT.withName("x"),
+                JAVA_INT.withName("y")
+        ).withName("point");
+    }
+
+    static StructLayout polygon() {
+        return MemoryLayout.structLayout(
+                JAVA_SHORT.withName("kind"),
+                MemoryLayout.paddingLayout(2),
+                JAVA_INT.withName("count"),
+                MemoryLayout.sequenceLayout(4, point()).withName("points"),
+                JAVA_LONG.withName("tag")
+        );
+    }
+
+    @Test
+    public void testSameAsDirect() throws Throwable {
+        LayoutAccessorCache cache = new LayoutAccessorCache(16);
+        StructLayout polygon = polygon();
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(polygon);
+
+            VarHandle cachedY = cache.varHandle(polygon, Step.group("points"), Step.sequence(2), Step.group("y"));
+            cachedY.set(segment, 0L, 42);
+            VarHandle directY = polygon.varHandle(groupElement("points"), sequenceElement(2), groupElement("y"));
+            assertEquals(42, (int) directY.get(segment, 0L));
+
+            VarHandle cachedX = cache.varHandle(polygon, Step.group("points"), Step.sequence(), Step.group(0));
+            cachedX.set(segment, 0L, 3L, 7);
+            VarHandle directX = polygon.varHandle(groupElement("points"), sequenceElement(), groupElement("x"));
+            assertEquals(7, (int) directX.get(segment, 0L, 3L));
+
+            MethodHandle slice = cache.sliceHandle(polygon, Step.group("points"), Step.sequence(1));
+            MemorySegment point = (MemorySegment) slice.invokeExact(segment, 0L);
+            assertEquals(point().byteSize(), point.byteSize());
+            assertEquals(polygon.byteOffset(groupElement("points"), sequenceElement(1)),
+                    point.address() - segment.address());
+
+            assertEquals(polygon.byteOffset(groupElement("tag")), cache.byteOffset(polygon, Step.group("tag")));
+        }
+    }
+
+    @Test
+    public void testHits() {
+        LayoutAccessorCache cache = new LayoutAccessorCache(16);
+        VarHandle first = cache.varHandle(point(), Step.group("x"));
+        // structurally equal layouts and paths share the accessor
+        VarHandle second = cache.varHandle(point(), Step.group("x"));
+        assertSame(first, second);
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+
+        // the kind of accessor is part of the key
+        cache.sliceHandle(point(), Step.group("x"));
+        assertNotSame(first, cache.varHandle(point(), Step.group("y")));
+        assertEquals(3, cache.size());
+        assertEquals(3, cache.misses());
+    }
+
+    @Test
+    public void testEviction() {
+        LayoutAccessorCache cache = new LayoutAccessorCache(2);
+        StructLayout point = point();
+        VarHandle x = cache.varHandle(point, Step.group("x"));
+        cache.varHandle(point, Step.group("y"));
+        // touch x, so that y is the least recently used entry
+        assertSame(x, cache.varHandle(point, Step.group("x")));
+        cache.varHandle(point, Step.group(1));
+        assertEquals(2, cache.size());
+        long misses = cache.misses();
+        assertSame(x, cache.varHandle(point, Step.group("x")));
+        cache.varHandle(point, Step.group("y"));
+        assertEquals(misses + 1, cache.misses());
+    }
+
+    @Test
+    public void testBadPath() {
+        LayoutAccessorCache cache = new LayoutAccessorCache(16);
+        assertThrows(IllegalArgumentException.class, () -> cache.varHandle(point(), Step.group("z")));
+        assertThrows(IllegalArgumentException.class, () -> cache.varHandle(point(), Step.sequence(0)));
+        // failed lookups are not cached
+        assertEquals(0, cache.size());
+        assertThrows(IllegalArgumentException.class, () -> new LayoutAccessorCache(0));
+    }
+}
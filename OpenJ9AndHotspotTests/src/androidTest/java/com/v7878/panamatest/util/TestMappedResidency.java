@@ -0,0 +1,107 @@
+package com.v7878.panamatest.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.FileChannelUtils;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+public class TestMappedResidency {
+
+    static final long SIZE = 1 << 20;
+    static final long RANGE = 64 * 1024;
+
+    static File tempFile(long size) throws IOException {
+        File file = File.createTempFile("mappedResidency", "out");
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+        }
+        return file;
+    }
+
+    @Test
+    public void testPrefetch() throws IOException {
+        File file = tempFile(SIZE);
+        try (Arena arena = Arena.ofConfined();
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MemorySegment mapped = FileChannelUtils.map(channel, FileChannel.MapMode.READ_WRITE, 0L, SIZE, arena);
+            MappedResidency.prefetch(mapped, RANGE, RANGE);
+            assertTrue(MappedResidency.isResident(mapped, RANGE, RANGE));
+            double fraction = MappedResidency.residentFraction(mapped, RANGE);
+            assertTrue(fraction > 0 && fraction <= 1);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testFlushSubrange() throws IOException {
+        File file = tempFile(SIZE);
+        try (Arena arena = Arena.ofConfined();
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MemorySegment mapped = FileChannelUtils.map(channel, FileChannel.MapMode.READ_WRITE, 0L, SIZE, arena);
+            mapped.asSlice(RANGE, RANGE).fill((byte) 42);
+            MappedResidency.flush(mapped, RANGE, RANGE);
+            // evicted pages are read back from the file
+            MappedResidency.evict(mapped, RANGE, RANGE);
+            assertEquals(42, mapped.get(ValueLayout.JAVA_BYTE, RANGE));
+            assertEquals(42, mapped.get(ValueLayout.JAVA_BYTE, 2 * RANGE - 1));
+            assertEquals(0, mapped.get(ValueLayout.JAVA_BYTE, 2 * RANGE));
+
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+            channel.read(buffer, RANGE + 1);
+            assertEquals(42, buffer.get(0));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testDropPageCache() throws IOException {
+        File file = tempFile(SIZE);
+        try (Arena arena = Arena.ofConfined();
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MemorySegment mapped = FileChannelUtils.map(channel, FileChannel.MapMode.READ_WRITE, 0L, SIZE, arena);
+            mapped.fill((byte) 7);
+            MappedResidency.flush(mapped, 0, SIZE);
+            MappedResidency.evict(mapped, 0, SIZE);
+            MappedResidency.dropPageCache(file.toPath());
+            // whether or not the kernel dropped the pages, the data is still there
+            assertEquals(7, mapped.get(ValueLayout.JAVA_BYTE, SIZE / 2));
+        } finally {
+            file.delete();
+        }
+        assertThrows(IOException.class, () -> MappedResidency.dropPageCache(file.toPath()));
+    }
+
+    @Test
+    public void testBadArguments() throws IOException {
+        File file = tempFile(SIZE);
+        try (Arena arena = Arena.ofConfined();
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MemorySegment mapped = FileChannelUtils.map(channel, FileChannel.MapMode.READ_ONLY, 0L, SIZE, arena);
+            assertThrows(IndexOutOfBoundsException.class, () -> MappedResidency.prefetch(mapped, SIZE - 1, 2));
+            assertThrows(IndexOutOfBoundsException.class, () -> MappedResidency.flush(mapped, -1, 1));
+            assertThrows(IllegalArgumentException.class, () -> MappedResidency.residentFraction(mapped, 0));
+
+            MemorySegment notMapped = arena.allocate(RANGE);
+            assertThrows(UnsupportedOperationException.class, () -> MappedResidency.prefetch(notMapped, 0, RANGE));
+            assertThrows(UnsupportedOperationException.class, () -> MappedResidency.isResident(notMapped, 0, RANGE));
+        } finally {
+            file.delete();
+        }
+    }
+}
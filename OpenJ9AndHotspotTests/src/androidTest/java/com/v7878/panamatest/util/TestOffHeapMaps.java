@@ -0,0 +1,288 @@
+package com.v7878.panamatest.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.MemorySegment;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestOffHeapMaps {
+
+    static final int NUM_READERS = Math.min(4, Runtime.getRuntime().availableProcessors());
+    static final int MAX_EXECUTOR_WAIT_SECONDS = 20;
+
+    static long valueOf(long key) {
+        return key * 31 + 7;
+    }
+
+    static int valueOf(int key) {
+        return key * 31 + 7;
+    }
+
+    @Test
+    public void testLongPutGet() {
+        try (Arena arena = Arena.ofConfined()) {
+            OffHeapLongLongMap map = new OffHeapLongLongMap(arena, 0);
+            Map<Long, Long> expected = new HashMap<>();
+            Random random = new Random(42);
+            for (int i = 0; i < 100_000; i++) {
+                // small key range, so that some puts overwrite existing entries
+                long key = random.nextInt(50_000) - 25_000;
+                long value = random.nextLong();
+                map.put(key, value);
+                expected.put(key, value);
+            }
+            assertEquals(expected.size(), map.size());
+            for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+                assertTrue(map.containsKey(entry.getKey()));
+                assertEquals((long) entry.getValue(), map.get(entry.getKey(), -1));
+            }
+            assertFalse(map.containsKey(Long.MAX_VALUE));
+            assertEquals(-1, map.get(Long.MAX_VALUE, -1));
+        }
+    }
+
+    @Test
+    public void testIntPutGet() {
+        try (Arena arena = Arena.ofConfined()) {
+            OffHeapIntIntMap map = new OffHeapIntIntMap(arena, 0);
+            Map<Integer, Integer> expected = new HashMap<>();
+            Random random = new Random(42);
+            for (int i = 0; i < 100_000; i++) {
+                int key = random.nextInt(50_000) - 25_000;
+                int value = random.nextInt();
+                map.put(key, value);
+                expected.put(key, value);
+            }
+            assertEquals(expected.size(), map.size());
+            for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+                assertTrue(map.containsKey(entry.getKey()));
+                assertEquals((int) entry.getValue(), map.get(entry.getKey(), -1));
+            }
+            assertFalse(map.containsKey(Integer.MAX_VALUE));
+            assertEquals(-1, map.get(Integer.MAX_VALUE, -1));
+        }
+    }
+
+    @Test
+    public void testZeroKey() {
+        try (Arena arena = Arena.ofConfined()) {
+            OffHeapLongLongMap longMap = new OffHeapLongLongMap(arena, 4);
+            assertFalse(longMap.containsKey(0));
+            longMap.put(0, 42);
+            longMap.put(0, 43);
+            assertEquals(1, longMap.size());
+            assertEquals(43, longMap.get(0, -1));
+
+            OffHeapIntIntMap intMap = new OffHeapIntIntMap(arena, 4);
+            assertFalse(intMap.containsKey(0));
+            intMap.put(0, 42);
+            intMap.put(0, 43);
+            assertEquals(1, intMap.size());
+            assertEquals(43, intMap.get(0, -1));
+        }
+    }
+
+    @Test
+    public void testResize() {
+        try (Arena arena = Arena.ofConfined()) {
+            OffHeapLongLongMap map = new OffHeapLongLongMap(arena, 0);
+            long initialCapacity = map.capacity();
+            for (long key = 1; key <= initialCapacity * 8; key++) {
+                map.put(key, valueOf(key));
+                // load factor stays at or below 3/4
+                assertTrue(map.size() * 4 <= map.capacity() * 3);
+            }
+            assertTrue(map.capacity() > initialCapacity);
+            for (long key = 1; key <= initialCapacity * 8; key++) {
+                assertEquals(valueOf(key), map.get(key, -1));
+            }
+        }
+    }
+
+    @Test
+    public void testResizeFreesOldTables() {
+        Arena arena = Arena.ofConfined();
+        OffHeapLongLongMap longMap = new OffHeapLongLongMap(arena, 0);
+        OffHeapIntIntMap intMap = new OffHeapIntIntMap(arena, 0);
+        MemorySegment oldLongs = longMap.table();
+        MemorySegment oldInts = intMap.table();
+        int entries = (int) longMap.capacity();
+        for (int key = 1; key <= entries; key++) {
+            longMap.put(key, valueOf((long) key));
+            intMap.put(key, valueOf(key));
+        }
+        // replaced tables are freed right away, the current ones with the arena
+        assertFalse(oldLongs.scope().isAlive());
+        assertFalse(oldInts.scope().isAlive());
+        MemorySegment longs = longMap.table();
+        MemorySegment ints = intMap.table();
+        assertTrue(longs.scope().isAlive());
+        assertTrue(ints.scope().isAlive());
+        arena.close();
+        assertFalse(longs.scope().isAlive());
+        assertFalse(ints.scope().isAlive());
+    }
+
+    static MemorySegment[] tablesOfDroppedMaps() {
+        OffHeapLongLongMap longMap = new OffHeapLongLongMap(Arena.ofAuto(), 0);
+        OffHeapIntIntMap intMap = new OffHeapIntIntMap(Arena.ofAuto(), 0);
+        for (int key = 1; key <= 100; key++) {
+            longMap.put(key, valueOf((long) key));
+            intMap.put(key, valueOf(key));
+        }
+        return new MemorySegment[]{longMap.table(), intMap.table()};
+    }
+
+    @Test
+    public void testAutoArenaFreesTables() throws InterruptedException {
+        // the table segments do not keep the maps or their arenas reachable
+        MemorySegment[] tables = tablesOfDroppedMaps();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(MAX_EXECUTOR_WAIT_SECONDS);
+        while (tables[0].scope().isAlive() || tables[1].scope().isAlive()) {
+            assertTrue("tables of unreachable maps were not freed", System.nanoTime() < deadline);
+            System.gc();
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    public void testIteration() {
+        try (Arena arena = Arena.ofConfined()) {
+            OffHeapLongLongMap longMap = new OffHeapLongLongMap(arena, 0);
+            OffHeapIntIntMap intMap = new OffHeapIntIntMap(arena, 0);
+            Map<Long, Long> expectedLongs = new HashMap<>();
+            Map<Integer, Integer> expectedInts = new HashMap<>();
+            for (int key = -1000; key <= 1000; key++) {
+                longMap.put(key, valueOf((long) key));
+                intMap.put(key, valueOf(key));
+                expectedLongs.put((long) key, valueOf((long) key));
+                expectedInts.put(key, valueOf(key));
+            }
+
+            Map<Long, Long> seenLongs = new HashMap<>();
+            longMap.forEach((key, value) -> assertNull(seenLongs.put(key, value)));
+            assertEquals(expectedLongs, seenLongs);
+
+            Map<Integer, Integer> seenInts = new HashMap<>();
+            intMap.forEach((key, value) -> assertNull(seenInts.put(key, value)));
+            assertEquals(expectedInts, seenInts);
+        }
+    }
+
+    @Test
+    public void testClosed() {
+        Arena arena = Arena.ofConfined();
+        OffHeapLongLongMap map = new OffHeapLongLongMap(arena, 16);
+        map.put(1, 2);
+        arena.close();
+        assertThrows(IllegalStateException.class, () -> map.get(1, -1));
+        assertThrows(IllegalStateException.class, () -> map.put(2, 3));
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Throwable {
+        final int count = 200_000;
+        try (Arena arena = Arena.ofShared()) {
+            // start small, so that readers run across several resizes
+            OffHeapLongLongMap map = new OffHeapLongLongMap(arena, 0);
+            AtomicBoolean done = new AtomicBoolean();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            ExecutorService readers = Executors.newFixedThreadPool(NUM_READERS);
+            for (int i = 0; i < NUM_READERS; i++) {
+                readers.execute(() -> {
+                    try {
+                        ThreadLocalRandom random = ThreadLocalRandom.current();
+                        while (!done.get()) {
+                            long key = 1 + random.nextInt(count);
+                            long value = map.get(key, -1);
+                            // a reader sees either no entry or a fully published one
+                            if (value != -1 && value != valueOf(key)) {
+                                throw new AssertionError("Torn entry: " + key + " -> " + value);
+                            }
+                        }
+                    } catch (Throwable th) {
+                        failure.compareAndSet(null, th);
+                    }
+                });
+            }
+            for (long key = 1; key <= count; key++) {
+                map.put(key, valueOf(key));
+            }
+            done.set(true);
+            readers.shutdown();
+            assertTrue(readers.awaitTermination(MAX_EXECUTOR_WAIT_SECONDS, TimeUnit.SECONDS));
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            for (long key = 1; key <= count; key++) {
+                assertEquals(valueOf(key), map.get(key, -1));
+            }
+        }
+    }
+
+    @Test
+    public void testHandshake() throws InterruptedException {
+        final int count = 100_000;
+        for (int it = 0; it < 5; it++) {
+            Arena arena = Arena.ofShared();
+            OffHeapLongLongMap longMap = new OffHeapLongLongMap(arena, count);
+            OffHeapIntIntMap intMap = new OffHeapIntIntMap(arena, count);
+            for (int key = 1; key <= count; key++) {
+                longMap.put(key, valueOf((long) key));
+                intMap.put(key, valueOf(key));
+            }
+            ExecutorService executor = Executors.newCachedThreadPool();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            for (int i = 0; i < NUM_READERS; i++) {
+                executor.execute(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (arena.scope().isAlive()) {
+                        try {
+                            int key = 1 + random.nextInt(count);
+                            if (longMap.get(key, -1) != valueOf((long) key) || intMap.get(key, -1) != valueOf(key)) {
+                                failure.compareAndSet(null, new AssertionError("Wrong value for " + key));
+                            }
+                        } catch (IllegalStateException ex) {
+                            // the arena was closed while we were reading, next isAlive check should fail
+                        } catch (Throwable th) {
+                            failure.compareAndSet(null, th);
+                        }
+                    }
+                });
+            }
+            Thread.sleep(ThreadLocalRandom.current().nextInt(200));
+            executor.execute(() -> {
+                // shared arenas may refuse to close while accesses are in flight
+                while (true) {
+                    try {
+                        arena.close();
+                        break;
+                    } catch (IllegalStateException ignored) {
+                    }
+                }
+            });
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(MAX_EXECUTOR_WAIT_SECONDS, TimeUnit.SECONDS));
+            assertNull(failure.get());
+            assertFalse(arena.scope().isAlive());
+            assertThrows(IllegalStateException.class, () -> longMap.get(1, -1));
+            assertThrows(IllegalStateException.class, () -> intMap.get(1, -1));
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.v7878.panamatest.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestSegmentBufferPool {
+
+    static final int SIZE = 256;
+
+    @Test
+    public void testReuse() {
+        try (Arena arena = Arena.ofConfined()) {
+            SegmentBufferPool pool = new SegmentBufferPool(arena, SIZE, 4, 8);
+            ByteBuffer first = pool.acquire();
+            assertEquals(SIZE, first.capacity());
+            assertEquals(SIZE, first.remaining());
+            assertTrue(first.isDirect());
+            assertEquals(4, pool.allocatedBuffers());
+
+            first.putLong(42).flip();
+            pool.release(first);
+            ByteBuffer again = pool.acquire();
+            assertSame(first, again);
+            // cleared, but not zeroed
+            assertEquals(SIZE, again.remaining());
+            assertEquals(42, again.getLong(0));
+
+            // the rest of the slab comes next, then a new slab
+            List<ByteBuffer> held = new ArrayList<>();
+            held.add(again);
+            for (int i = 0; i < 4; i++) {
+                ByteBuffer buffer = pool.acquire();
+                for (ByteBuffer other : held) {
+                    assertNotSame(other, buffer);
+                }
+                held.add(buffer);
+            }
+            assertEquals(8, pool.allocatedBuffers());
+
+            // slices of one slab do not overlap
+            MemorySegment a = MemorySegment.ofBuffer(held.get(1));
+            MemorySegment b = MemorySegment.ofBuffer(held.get(2));
+            assertFalse(a.asOverlappingSlice(b).isPresent());
+        }
+    }
+
+    @Test
+    public void testOverflowToShared() {
+        try (Arena arena = Arena.ofShared()) {
+            SegmentBufferPool pool = new SegmentBufferPool(arena, SIZE, 8, 2);
+            // 1 returned, 2 cached locally, 5 overflow
+            ByteBuffer buffer = pool.acquire();
+            assertEquals(5, pool.sharedBuffers());
+            pool.release(buffer);
+            assertEquals(6, pool.sharedBuffers());
+
+            List<ByteBuffer> held = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                held.add(pool.acquire());
+            }
+            assertEquals(0, pool.sharedBuffers());
+            assertEquals(8, pool.allocatedBuffers());
+            for (ByteBuffer b : held) {
+                pool.release(b);
+            }
+            assertEquals(6, pool.sharedBuffers());
+        }
+    }
+
+    @Test
+    public void testForeignBuffers() {
+        try (Arena arena = Arena.ofConfined();
+             Arena other = Arena.ofConfined()) {
+            SegmentBufferPool pool = new SegmentBufferPool(arena, SIZE);
+            SegmentBufferPool otherPool = new SegmentBufferPool(other, SIZE);
+            assertThrows(IllegalArgumentException.class, () -> pool.release(otherPool.acquire()));
+            assertThrows(IllegalArgumentException.class, () -> pool.release(ByteBuffer.allocate(SIZE)));
+            assertThrows(IllegalArgumentException.class, () -> pool.release(ByteBuffer.allocateDirect(SIZE)));
+            assertThrows(IllegalArgumentException.class, () -> pool.release(arena.allocate(SIZE / 2).asByteBuffer()));
+            assertThrows(IllegalArgumentException.class, () -> pool.release(pool.acquire().asReadOnlyBuffer()));
+            assertThrows(IllegalArgumentException.class, () -> new SegmentBufferPool(arena, 0));
+            assertThrows(IllegalArgumentException.class, () -> new SegmentBufferPool(arena, SIZE, 0, 1));
+            assertThrows(IllegalArgumentException.class, () -> new SegmentBufferPool(arena, SIZE, 1, -1));
+        }
+    }
+
+    @Test
+    public void testReleaseChecks() {
+        try (Arena arena = Arena.ofConfined()) {
+            SegmentBufferPool pool = new SegmentBufferPool(arena, SIZE, 4, 8);
+            SegmentBufferPool samePool = new SegmentBufferPool(arena, SIZE, 4, 8);
+            ByteBuffer buffer = pool.acquire();
+            // memory of the same arena, but not handed out by this pool
+            assertThrows(IllegalStateException.class, () -> pool.release(arena.allocate(SIZE).asByteBuffer()));
+            assertThrows(IllegalStateException.class, () -> pool.release(samePool.acquire()));
+            // another view of a buffer of this pool
+            assertThrows(IllegalStateException.class, () -> pool.release(buffer.duplicate()));
+
+            buffer.position(SIZE / 2);
+            pool.release(buffer);
+            assertThrows(IllegalStateException.class, () -> pool.release(buffer));
+            // the failed release did not put the buffer into the pool a second time
+            ByteBuffer again = pool.acquire();
+            assertSame(buffer, again);
+            assertNotSame(buffer, pool.acquire());
+            pool.release(again);
+        }
+    }
+
+    @Test
+    public void testClosedArena() {
+        Arena arena = Arena.ofShared();
+        SegmentBufferPool pool = new SegmentBufferPool(arena, SIZE);
+        ByteBuffer held = pool.acquire();
+        ByteBuffer cached = pool.acquire();
+        pool.release(cached);
+        arena.close();
+        assertThrows(IllegalStateException.class, pool::acquire);
+        // dropped without touching the memory
+        pool.release(held);
+        assertThrows(IllegalStateException.class, () -> MemorySegment.ofBuffer(held).get(ValueLayout.JAVA_BYTE, 0));
+    }
+
+    @Test
+    public void testConcurrentAcquireRelease() throws Throwable {
+        int threads = 8;
+        int rounds = 50_000;
+        try (Arena arena = Arena.ofShared()) {
+            SegmentBufferPool pool = new SegmentBufferPool(arena, SIZE, 4, 1);
+            Set<ByteBuffer> inUse = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long tag = t;
+                Thread worker = new Thread(() -> {
+                    try {
+                        start.await();
+                        for (int i = 0; i < rounds; i++) {
+                            ByteBuffer a = pool.acquire();
+                            ByteBuffer b = pool.acquire();
+                            assertTrue("handed out twice", inUse.add(a));
+                            assertTrue("handed out twice", inUse.add(b));
+                            a.putLong(0, tag);
+                            b.putLong(0, tag);
+                            assertEquals(tag, a.getLong(0));
+                            assertEquals(tag, b.getLong(0));
+                            inUse.remove(a);
+                            inUse.remove(b);
+                            // one buffer fits in the thread cache, the other one goes to
+                            // the shared list, so that buffers move between threads
+                            pool.release(b);
+                            pool.release(a);
+                        }
+                    } catch (Throwable th) {
+                        failure.compareAndSet(null, th);
+                    }
+                });
+                worker.start();
+                workers.add(worker);
+            }
+            start.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            assertNull(failure.get());
+            // a thread only allocates a slab when all buffers are in use or in thread caches
+            assertTrue(pool.allocatedBuffers() <= (long) threads * (2 + 1 + 4));
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.v7878.panamatest.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.FileChannelUtils;
+import com.v7878.foreign.MemorySegment;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestSegmentRingBuffer {
+
+    static final long EMPTY = -1;
+
+    static final int PRODUCERS = 4;
+    static final int CONSUMERS = 4;
+    static final int PER_PRODUCER = 200_000;
+
+    static long element(int producer, int sequence) {
+        return ((long) producer << 32) | sequence;
+    }
+
+    @Test
+    public void testSequential() {
+        try (Arena arena = Arena.ofConfined()) {
+            SegmentRingBuffer queue = SegmentRingBuffer.create(
+                    arena.allocate(SegmentRingBuffer.byteSize(8), 8), 8);
+            assertEquals(8, queue.capacity());
+            assertEquals(EMPTY, queue.poll(EMPTY));
+            // go around the ring several times
+            for (int lap = 0; lap < 4; lap++) {
+                for (long i = 0; i < 8; i++) {
+                    assertTrue(queue.offer(lap * 100 + i));
+                }
+                assertFalse(queue.offer(42));
+                assertEquals(8, queue.size());
+                for (long i = 0; i < 8; i++) {
+                    assertEquals(lap * 100 + i, queue.poll(EMPTY));
+                }
+                assertEquals(EMPTY, queue.poll(EMPTY));
+                assertEquals(0, queue.size());
+            }
+        }
+    }
+
+    @Test
+    public void testBadArguments() {
+        try (Arena arena = Arena.ofConfined()) {
+            assertThrows(IllegalArgumentException.class, () -> SegmentRingBuffer.byteSize(3));
+            assertThrows(IllegalArgumentException.class, () -> SegmentRingBuffer.byteSize(0));
+            MemorySegment small = arena.allocate(SegmentRingBuffer.byteSize(8) - 1, 8);
+            assertThrows(IllegalArgumentException.class, () -> SegmentRingBuffer.create(small, 8));
+            MemorySegment unaligned = arena.allocate(SegmentRingBuffer.byteSize(8) + 1, 8).asSlice(1);
+            assertThrows(IllegalArgumentException.class, () -> SegmentRingBuffer.create(unaligned, 8));
+        }
+    }
+
+    @Test
+    public void testClosed() {
+        Arena arena = Arena.ofShared();
+        SegmentRingBuffer queue = SegmentRingBuffer.create(
+                arena.allocate(SegmentRingBuffer.byteSize(8), 8), 8);
+        arena.close();
+        assertThrows(IllegalStateException.class, () -> queue.offer(1));
+        assertThrows(IllegalStateException.class, () -> queue.poll(EMPTY));
+    }
+
+    @Test
+    public void testAttachToSharedMapping() throws Throwable {
+        File file = File.createTempFile("ringBuffer", "out");
+        file.deleteOnExit();
+        long size = SegmentRingBuffer.byteSize(64);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+        }
+        // two independent mappings of one file stand in for two processes
+        try (Arena arena = Arena.ofShared();
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MemorySegment first = FileChannelUtils.map(channel, FileChannel.MapMode.READ_WRITE, 0L, size, arena);
+            MemorySegment second = FileChannelUtils.map(channel, FileChannel.MapMode.READ_WRITE, 0L, size, arena);
+            SegmentRingBuffer producer = SegmentRingBuffer.create(first, 64);
+            SegmentRingBuffer consumer = SegmentRingBuffer.attach(second);
+            assertEquals(64, consumer.capacity());
+            runStress(List.of(producer), List.of(consumer), 2, 50_000);
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Checks the properties a linearizable FIFO queue must have under
+     * concurrent producers and consumers: every element is consumed exactly
+     * once, and no consumer sees the elements of one producer out of order.
+     */
+    @Test
+    public void testStress() throws Throwable {
+        for (long capacity : new long[]{2, 16, 1024}) {
+            try (Arena arena = Arena.ofShared()) {
+                SegmentRingBuffer queue = SegmentRingBuffer.create(
+                        arena.allocate(SegmentRingBuffer.byteSize(capacity), 8), capacity);
+                List<SegmentRingBuffer> producers = new ArrayList<>();
+                List<SegmentRingBuffer> consumers = new ArrayList<>();
+                for (int i = 0; i < PRODUCERS; i++) {
+                    producers.add(queue);
+                }
+                for (int i = 0; i < CONSUMERS; i++) {
+                    consumers.add(queue);
+                }
+                runStress(producers, consumers, PRODUCERS, PER_PRODUCER);
+            }
+        }
+    }
+
+    static void runStress(List<SegmentRingBuffer> producerQueues, List<SegmentRingBuffer> consumerQueues,
+                          int producers, int perProducer) throws Throwable {
+        int consumers = consumerQueues.size();
+        // seen[p][s] is the number of times element (p, s) was consumed
+        byte[][] seen = new byte[producers][perProducer];
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch consumed = new CountDownLatch(producers * perProducer);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            SegmentRingBuffer queue = producerQueues.get(p % producerQueues.size());
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int s = 0; s < perProducer; s++) {
+                        while (!queue.offer(element(producer, s))) {
+                            if (failure.get() != null) {
+                                return;
+                            }
+                            Thread.yield();
+                        }
+                    }
+                } catch (Throwable th) {
+                    failure.compareAndSet(null, th);
+                }
+            }));
+        }
+        for (int c = 0; c < consumers; c++) {
+            SegmentRingBuffer queue = consumerQueues.get(c);
+            threads.add(new Thread(() -> {
+                int[] last = new int[producers];
+                Arrays.fill(last, -1);
+                try {
+                    start.await();
+                    while (consumed.getCount() > 0 && failure.get() == null) {
+                        long value = queue.poll(EMPTY);
+                        if (value == EMPTY) {
+                            Thread.yield();
+                            continue;
+                        }
+                        int producer = (int) (value >>> 32);
+                        int sequence = (int) value;
+                        if (sequence <= last[producer]) {
+                            fail("Out of order: producer " + producer + " " + sequence + " after " + last[producer]);
+                        }
+                        last[producer] = sequence;
+                        synchronized (seen[producer]) {
+                            seen[producer][sequence]++;
+                        }
+                        consumed.countDown();
+                    }
+                } catch (Throwable th) {
+                    failure.compareAndSet(null, th);
+                }
+            }));
+        }
+
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        for (int p = 0; p < producers; p++) {
+            for (int s = 0; s < perProducer; s++) {
+                assertEquals("element " + p + ":" + s, 1, seen[p][s]);
+            }
+        }
+        assertEquals(EMPTY, consumerQueues.get(0).poll(EMPTY));
+    }
+}
@@ -0,0 +1,210 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.foreign.MemoryLayout.PathElement.groupElement;
+import static com.v7878.foreign.MemoryLayout.PathElement.sequenceElement;
+import static com.v7878.foreign.ValueLayout.JAVA_BYTE;
+import static com.v7878.foreign.ValueLayout.JAVA_DOUBLE;
+import static com.v7878.foreign.ValueLayout.JAVA_INT;
+import static com.v7878.foreign.ValueLayout.JAVA_LONG;
+import static com.v7878.foreign.ValueLayout.JAVA_SHORT;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.SequenceLayout;
+import com.v7878.foreign.StructLayout;
+import com.v7878.invoke.VarHandle;
+
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+public class TestStridedAccess {
+
+    static final int COUNT = 100;
+
+    static final StructLayout RECORD = MemoryLayout.structLayout(
+            JAVA_BYTE.withName("tag"),
+            MemoryLayout.paddingLayout(1),
+            JAVA_SHORT.withName("flags"),
+            JAVA_INT.withName("id"),
+            JAVA_DOUBLE.withName("value"),
+            MemoryLayout.sequenceLayout(3, JAVA_INT).withName("extra"),
+            MemoryLayout.paddingLayout(4)
+    );
+
+    static final SequenceLayout RECORDS = MemoryLayout.sequenceLayout(COUNT, RECORD);
+
+    static MemorySegment records(Arena arena) {
+        MemorySegment segment = arena.allocate(RECORDS);
+        for (int i = 0; i < segment.byteSize(); i++) {
+            segment.set(JAVA_BYTE, i, (byte) (i * 7));
+        }
+        return segment;
+    }
+
+    @Test
+    public void testGatherMatchesVarHandle() {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = records(arena);
+
+            int[] ids = new int[COUNT];
+            StridedAccess.of(RECORDS, groupElement("id")).gather(segment, 0, 0, ids, 0, COUNT);
+            double[] values = new double[COUNT];
+            StridedAccess.of(RECORDS, groupElement("value")).gather(segment, 0, 0, values, 0, COUNT);
+            byte[] tags = new byte[COUNT];
+            StridedAccess.of(RECORDS, groupElement("tag")).gather(segment, 0, 0, tags, 0, COUNT);
+            int[] extras = new int[COUNT];
+            StridedAccess.of(RECORDS, groupElement("extra"), sequenceElement(2))
+                    .gather(segment, 0, 0, extras, 0, COUNT);
+
+            VarHandle id = RECORDS.varHandle(sequenceElement(), groupElement("id"));
+            VarHandle value = RECORDS.varHandle(sequenceElement(), groupElement("value"));
+            VarHandle tag = RECORDS.varHandle(sequenceElement(), groupElement("tag"));
+            VarHandle extra = RECORDS.varHandle(sequenceElement(), groupElement("extra"), sequenceElement(2));
+            for (long i = 0; i < COUNT; i++) {
+                assertEquals((int) id.get(segment, 0L, i), ids[(int) i]);
+                assertEquals((double) value.get(segment, 0L, i), values[(int) i], 0);
+                assertEquals((byte) tag.get(segment, 0L, i), tags[(int) i]);
+                assertEquals((int) extra.get(segment, 0L, i), extras[(int) i]);
+            }
+        }
+    }
+
+    @Test
+    public void testScatterLeavesOtherBytes() {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = records(arena);
+            MemorySegment before = arena.allocate(RECORDS);
+            before.copyFrom(segment);
+
+            short[] flags = new short[COUNT];
+            for (int i = 0; i < COUNT; i++) {
+                flags[i] = (short) (i * 1000);
+            }
+            StridedAccess access = StridedAccess.of(RECORDS, groupElement("flags"));
+            access.scatter(flags, 0, segment, 0, 0, COUNT);
+
+            short[] back = new short[COUNT];
+            access.gather(segment, 0, 0, back, 0, COUNT);
+            assertArrayEquals(flags, back);
+            long flagsOffset = RECORD.byteOffset(groupElement("flags"));
+            for (long offset = 0; offset < segment.byteSize(); offset++) {
+                long inRecord = offset % RECORD.byteSize();
+                if (inRecord == flagsOffset || inRecord == flagsOffset + 1) continue;
+                // padding included
+                assertEquals(before.get(JAVA_BYTE, offset), segment.get(JAVA_BYTE, offset));
+            }
+        }
+    }
+
+    @Test
+    public void testSubrangeAndOffset() {
+        try (Arena arena = Arena.ofConfined()) {
+            long base = 64;
+            MemorySegment segment = arena.allocate(base + RECORDS.byteSize(), 8);
+            StridedAccess access = StridedAccess.of(RECORDS, groupElement("id"));
+            int[] ids = new int[20];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = -i;
+            }
+            // elements 40..49 from ids[5..14]
+            access.scatter(ids, 5, segment, base, 40, 10);
+            VarHandle id = RECORDS.varHandle(sequenceElement(), groupElement("id"));
+            for (long i = 0; i < COUNT; i++) {
+                int expected = i >= 40 && i < 50 ? (int) -(i - 35) : 0;
+                assertEquals(expected, (int) id.get(segment, base, i));
+            }
+            int[] back = new int[10];
+            access.gather(segment, base, 40, back, 0, 10);
+            assertArrayEquals(new int[]{-5, -6, -7, -8, -9, -10, -11, -12, -13, -14}, back);
+        }
+    }
+
+    @Test
+    public void testByteOrder() {
+        ByteOrder other = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ?
+                ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        SequenceLayout wire = MemoryLayout.sequenceLayout(COUNT, MemoryLayout.structLayout(
+                JAVA_INT.withOrder(other).withName("length"),
+                JAVA_INT.withOrder(other).withName("checksum")
+        ));
+        // packed sequence, takes the bulk copy path
+        SequenceLayout packed = MemoryLayout.sequenceLayout(COUNT, JAVA_LONG.withOrder(other));
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(wire);
+            int[] lengths = new int[COUNT];
+            for (int i = 0; i < COUNT; i++) {
+                lengths[i] = 0x01020304 + i;
+            }
+            StridedAccess.of(wire, groupElement("length")).scatter(lengths, 0, segment, 0, 0, COUNT);
+            for (int i = 0; i < COUNT; i++) {
+                assertEquals(lengths[i], segment.get(JAVA_INT.withOrder(other), i * 8L));
+            }
+
+            long[] longs = new long[COUNT];
+            StridedAccess longAccess = StridedAccess.of(packed);
+            assertEquals(8, longAccess.stride());
+            longAccess.gather(segment, 0, 0, longs, 0, COUNT);
+            for (int i = 0; i < COUNT; i++) {
+                assertEquals(segment.get(JAVA_LONG.withOrder(other), i * 8L), longs[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testUnalignedFields() {
+        SequenceLayout packed = MemoryLayout.sequenceLayout(COUNT, MemoryLayout.structLayout(
+                JAVA_BYTE.withName("kind"),
+                JAVA_INT.withByteAlignment(1).withName("id"),
+                JAVA_DOUBLE.withByteAlignment(1).withName("value")
+        ));
+        assertEquals(13, packed.elementLayout().byteSize());
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(packed);
+            double[] values = new double[COUNT];
+            for (int i = 0; i < COUNT; i++) {
+                values[i] = i / 3.0;
+            }
+            StridedAccess access = StridedAccess.of(packed, groupElement("value"));
+            access.scatter(values, 0, segment, 0, 0, COUNT);
+            double[] back = new double[COUNT];
+            access.gather(segment, 0, 0, back, 0, COUNT);
+            assertArrayEquals(values, back, 0);
+
+            // an aligned field at an unaligned offset is rejected
+            SequenceLayout misaligned = MemoryLayout.sequenceLayout(COUNT, MemoryLayout.structLayout(
+                    JAVA_INT.withName("id"),
+                    JAVA_INT.withName("other")
+            ));
+            MemorySegment shifted = arena.allocate(misaligned.byteSize() + 1, 8).asSlice(1);
+            assertThrows(IllegalArgumentException.class, () ->
+                    StridedAccess.of(misaligned, groupElement("id")).gather(shifted, 0, 0, new int[COUNT], 0, COUNT));
+        }
+    }
+
+    @Test
+    public void testBadArguments() {
+        assertThrows(IllegalArgumentException.class, () -> StridedAccess.of(RECORDS, groupElement("extra")));
+        assertThrows(IllegalArgumentException.class, () -> StridedAccess.of(RECORDS, groupElement("missing")));
+        assertThrows(IllegalArgumentException.class, () ->
+                StridedAccess.of(RECORDS, groupElement("extra"), sequenceElement()));
+        StridedAccess ids = StridedAccess.of(RECORDS, groupElement("id"));
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(RECORDS);
+            assertThrows(IllegalArgumentException.class, () -> ids.gather(segment, 0, 0, new long[COUNT], 0, COUNT));
+            assertThrows(IndexOutOfBoundsException.class, () -> ids.gather(segment, 0, 1, new int[COUNT], 0, COUNT));
+            assertThrows(IndexOutOfBoundsException.class, () -> ids.gather(segment, 0, 0, new int[COUNT - 1], 0, COUNT));
+            assertThrows(IndexOutOfBoundsException.class, () -> ids.gather(segment, RECORD.byteSize(), 0, new int[COUNT], 0, COUNT));
+            // nothing is written when the range does not fit
+            int[] ones = new int[COUNT];
+            Arrays.fill(ones, 1);
+            assertThrows(IndexOutOfBoundsException.class, () -> ids.scatter(ones, 0, segment, RECORD.byteSize(), 0, COUNT));
+            assertEquals(0, (int) RECORDS.varHandle(sequenceElement(), groupElement("id")).get(segment, 0L, 1L));
+        }
+    }
+}
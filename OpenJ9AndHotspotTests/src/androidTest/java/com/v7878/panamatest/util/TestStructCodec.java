@@ -0,0 +1,232 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.foreign.MemoryLayout.PathElement.groupElement;
+import static com.v7878.foreign.MemoryLayout.PathElement.sequenceElement;
+import static com.v7878.foreign.ValueLayout.ADDRESS;
+import static com.v7878.foreign.ValueLayout.JAVA_BYTE;
+import static com.v7878.foreign.ValueLayout.JAVA_DOUBLE;
+import static com.v7878.foreign.ValueLayout.JAVA_FLOAT;
+import static com.v7878.foreign.ValueLayout.JAVA_INT;
+import static com.v7878.foreign.ValueLayout.JAVA_LONG;
+import static com.v7878.foreign.ValueLayout.JAVA_SHORT;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.GroupLayout;
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.panamatest.hotspot.CallGeneratorHelper;
+import com.v7878.panamatest.hotspot.CallGeneratorHelper.ParamType;
+import com.v7878.panamatest.hotspot.CallGeneratorHelper.StructFieldType;
+import com.v7878.panamatest.hotspot.NativeTestHelper;
+import com.v7878.panamatest.hotspot.NativeTestHelper.TestValue;
+
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Random;
+
+public class TestStructCodec {
+
+    record Point(int x, float y, MemorySegment p) {
+    }
+
+    record Line(Point from, Point to, long id) {
+    }
+
+    static final GroupLayout POINT = MemoryLayout.structLayout(
+            JAVA_INT.withName("x"),
+            JAVA_FLOAT.withName("y"),
+            ADDRESS.withName("p")
+    );
+
+    static final GroupLayout LINE = MemoryLayout.structLayout(
+            POINT.withName("from"),
+            POINT.withName("to"),
+            JAVA_LONG.withName("id")
+    );
+
+    static void checkSameBytes(GroupLayout layout, Random random, Arena arena) {
+        StructCodec codec = StructCodec.compile(layout);
+        TestValue value = NativeTestHelper.genTestValue(random, layout, arena);
+        MemorySegment original = (MemorySegment) value.value();
+
+        long[] slots = new long[codec.fieldCount()];
+        codec.read(original, 0, slots);
+        MemorySegment copy = arena.allocate(layout);
+        codec.write(copy, 0, slots);
+
+        assertEquals(layout.toString(), -1, original.mismatch(copy));
+        // and the path-based accessors see the same field values
+        value.check().accept(copy);
+    }
+
+    @Test
+    public void testCallGeneratorStructs() {
+        Random random = new Random(42);
+        try (Arena arena = Arena.ofConfined()) {
+            for (List<StructFieldType> fields : CallGeneratorHelper.structFieldLists()) {
+                checkSameBytes((GroupLayout) ParamType.STRUCT.layout(fields), random, arena);
+            }
+        }
+    }
+
+    @Test
+    public void testNestedCallGeneratorStructs() {
+        Random random = new Random(42);
+        try (Arena arena = Arena.ofConfined()) {
+            for (List<StructFieldType> fields : CallGeneratorHelper.structFieldLists()) {
+                MemoryLayout struct = ParamType.STRUCT.layout(fields);
+                GroupLayout outer = MemoryLayout.structLayout(
+                        struct.withName("first"),
+                        MemoryLayout.sequenceLayout(3, struct).withName("rest")
+                );
+                checkSameBytes(outer, random, arena);
+            }
+        }
+    }
+
+    @Test
+    public void testFieldOffsets() {
+        GroupLayout inner = MemoryLayout.structLayout(
+                JAVA_SHORT.withName("s"),
+                MemoryLayout.paddingLayout(2),
+                JAVA_INT.withName("i")
+        );
+        GroupLayout outer = MemoryLayout.structLayout(
+                JAVA_BYTE.withName("b"),
+                MemoryLayout.paddingLayout(3),
+                MemoryLayout.sequenceLayout(2, inner).withName("seq")
+        );
+        StructCodec codec = StructCodec.compile(outer);
+        assertEquals(5, codec.fieldCount());
+        assertEquals(outer.byteOffset(groupElement("b")), codec.fieldOffset(0));
+        assertEquals(outer.byteOffset(groupElement("seq"), sequenceElement(0), groupElement("s")), codec.fieldOffset(1));
+        assertEquals(outer.byteOffset(groupElement("seq"), sequenceElement(0), groupElement("i")), codec.fieldOffset(2));
+        assertEquals(outer.byteOffset(groupElement("seq"), sequenceElement(1), groupElement("s")), codec.fieldOffset(3));
+        assertEquals(outer.byteOffset(groupElement("seq"), sequenceElement(1), groupElement("i")), codec.fieldOffset(4));
+    }
+
+    @Test
+    public void testPadding() {
+        GroupLayout layout = MemoryLayout.structLayout(
+                JAVA_BYTE.withName("tag"),
+                MemoryLayout.paddingLayout(3),
+                JAVA_INT.withName("i")
+        );
+        StructCodec codec = StructCodec.compile(layout);
+        assertEquals(2, codec.fieldCount());
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(layout);
+            segment.fill((byte) 0x55);
+            codec.write(segment, 0, new long[]{-1, 42});
+            assertEquals(-1, segment.get(JAVA_BYTE, 0));
+            // padding is left alone
+            for (long offset = 1; offset < 4; offset++) {
+                assertEquals(0x55, segment.get(JAVA_BYTE, offset));
+            }
+            assertEquals(42, segment.get(JAVA_INT, 4));
+        }
+    }
+
+    @Test
+    public void testUnionRejected() {
+        GroupLayout union = MemoryLayout.unionLayout(JAVA_INT.withName("i"), JAVA_DOUBLE.withName("d"));
+        assertThrows(IllegalArgumentException.class, () -> StructCodec.compile(union));
+        assertThrows(IllegalArgumentException.class, () -> StructCodec.compile(
+                MemoryLayout.structLayout(JAVA_LONG.withName("tag"), union.withName("u"))));
+    }
+
+    @Test
+    public void testRecords() {
+        StructCodec.RecordCodec<Line> codec = StructCodec.compile(LINE).forRecord(Line.class);
+        Line line = new Line(
+                new Point(1, 2.5f, MemorySegment.ofAddress(0x1000)),
+                new Point(-3, -4.5f, MemorySegment.NULL),
+                Long.MIN_VALUE);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(LINE, 2);
+            codec.write(segment, LINE.byteSize(), line);
+            MemorySegment second = segment.asSlice(LINE.byteSize());
+            assertEquals(1, second.get(JAVA_INT, LINE.byteOffset(groupElement("from"), groupElement("x"))));
+            assertEquals(-4.5f, second.get(JAVA_FLOAT, LINE.byteOffset(groupElement("to"), groupElement("y"))), 0f);
+            assertEquals(0x1000, second.get(ADDRESS, LINE.byteOffset(groupElement("from"), groupElement("p"))).address());
+            assertEquals(Long.MIN_VALUE, second.get(JAVA_LONG, LINE.byteOffset(groupElement("id"))));
+            assertEquals(line, codec.read(segment, LINE.byteSize()));
+        }
+    }
+
+    record WrongType(int x, double y, MemorySegment p) {
+    }
+
+    record MissingComponent(int x, float y) {
+    }
+
+    record Values(int[] values) {
+    }
+
+    @Test
+    public void testRecordMismatch() {
+        StructCodec point = StructCodec.compile(POINT);
+        assertThrows(IllegalArgumentException.class, () -> point.forRecord(WrongType.class));
+        assertThrows(IllegalArgumentException.class, () -> point.forRecord(MissingComponent.class));
+        // sequences have no record mapping
+        StructCodec sequence = StructCodec.compile(MemoryLayout.structLayout(
+                MemoryLayout.sequenceLayout(2, JAVA_INT).withName("values")));
+        assertThrows(IllegalArgumentException.class, () -> sequence.forRecord(Values.class));
+    }
+
+    @Test
+    public void testByteOrderAndOffset() {
+        ByteOrder other = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ?
+                ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        GroupLayout layout = MemoryLayout.structLayout(
+                JAVA_INT.withOrder(other).withName("x"),
+                JAVA_FLOAT.withOrder(other).withName("y")
+        );
+        StructCodec codec = StructCodec.compile(layout);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(layout, 4);
+            long base = layout.byteSize() * 2;
+            codec.write(segment, base, new long[]{0x01020304, Float.floatToRawIntBits(1.5f)});
+            assertEquals(0x01020304, segment.get(JAVA_INT.withOrder(other), base));
+            assertEquals(1.5f, segment.get(JAVA_FLOAT.withOrder(other), base + 4), 0f);
+            long[] slots = new long[2];
+            codec.read(segment, base, slots);
+            assertArrayEquals(new long[]{0x01020304, Float.floatToRawIntBits(1.5f)}, slots);
+        }
+    }
+
+    @Test
+    public void testDoubleScratch() {
+        GroupLayout floating = MemoryLayout.structLayout(
+                JAVA_FLOAT.withName("f"),
+                MemoryLayout.paddingLayout(4),
+                JAVA_DOUBLE.withName("d")
+        );
+        StructCodec codec = StructCodec.compile(floating);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(floating);
+            codec.write(segment, 0, new double[]{0.25, Math.PI});
+            double[] slots = new double[2];
+            codec.read(segment, 0, slots);
+            assertArrayEquals(new double[]{0.25, Math.PI}, slots, 0);
+
+            StructCodec mixed = StructCodec.compile(MemoryLayout.structLayout(JAVA_INT, JAVA_FLOAT));
+            assertThrows(UnsupportedOperationException.class, () -> mixed.read(segment, 0, new double[2]));
+        }
+    }
+
+    @Test
+    public void testScratchTooShort() {
+        StructCodec codec = StructCodec.compile(MemoryLayout.structLayout(JAVA_INT, JAVA_INT));
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment segment = arena.allocate(8);
+            assertThrows(IllegalArgumentException.class, () -> codec.read(segment, 0, new long[1]));
+            assertThrows(IndexOutOfBoundsException.class, () -> codec.read(segment, 4, new long[2]));
+        }
+    }
+}
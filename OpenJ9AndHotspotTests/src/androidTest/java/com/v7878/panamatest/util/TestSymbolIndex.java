@@ -0,0 +1,72 @@
+package com.v7878.panamatest.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.v7878.foreign.Linker;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.SymbolLookup;
+import com.v7878.panamatest.hotspot.CallGeneratorHelper;
+
+import org.junit.Test;
+
+public class TestSymbolIndex {
+
+    static {
+        System.loadLibrary("TestDowncall");
+    }
+
+    @Test
+    public void testGeneratedLibrary() {
+        SymbolLookup loader = SymbolLookup.loaderLookup();
+        Object[][] functions = CallGeneratorHelper.functions();
+        SymbolIndex index = SymbolIndex.ofLibraryContaining(loader, (String) functions[0][1]);
+        assertTrue(index.library(), index.library().endsWith("libTestDowncall.so"));
+        assertTrue("indexed " + index.size(), index.size() >= functions.length);
+        for (Object[] function : functions) {
+            String name = (String) function[1];
+            MemorySegment expected = loader.find(name).orElseThrow();
+            assertEquals(name, expected.address(), index.find(name).orElseThrow().address());
+            // also for the stack variants of TestDowncallStack, which live elsewhere
+            assertFalse(index.find("s" + name).isPresent());
+        }
+        assertFalse(index.find("no_such_symbol").isPresent());
+        assertFalse(index.find("").isPresent());
+    }
+
+    @Test
+    public void testEveryIndexedSymbolResolves() {
+        SymbolLookup loader = SymbolLookup.loaderLookup();
+        SymbolIndex index = SymbolIndex.ofLibraryContaining(loader, (String) CallGeneratorHelper.functions()[0][1]);
+        int generated = 0;
+        for (String name : index.names()) {
+            // other exports, such as compiler runtime helpers, may also be defined by other libraries
+            if (!name.matches("f\\d+_.*")) {
+                continue;
+            }
+            generated++;
+            assertEquals(name, loader.find(name).orElseThrow().address(),
+                    index.find(name).orElseThrow().address());
+        }
+        assertTrue("generated " + generated, generated > 5000);
+    }
+
+    @Test
+    public void testSystemLibrary() {
+        SymbolLookup libc = Linker.nativeLinker().defaultLookup();
+        SymbolIndex index = SymbolIndex.ofLibraryContaining(libc, "strlen");
+        for (String name : new String[]{"strlen", "malloc", "free", "memcpy", "qsort"}) {
+            assertEquals(name, libc.find(name).orElseThrow().address(),
+                    index.find(name).orElseThrow().address());
+        }
+    }
+
+    @Test
+    public void testNotALibrary() {
+        assertThrows(IllegalArgumentException.class, () -> SymbolIndex.ofLibraryContaining(MemorySegment.ofAddress(8)));
+        assertThrows(IllegalArgumentException.class,
+                () -> SymbolIndex.ofLibraryContaining(SymbolLookup.loaderLookup(), "no_such_symbol"));
+    }
+}
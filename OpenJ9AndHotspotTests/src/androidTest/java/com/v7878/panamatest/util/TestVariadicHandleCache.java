@@ -0,0 +1,204 @@
+package com.v7878.panamatest.util;
+
+import static com.v7878.panamatest.hotspot.NativeTestHelper.C_DOUBLE;
+import static com.v7878.panamatest.hotspot.NativeTestHelper.C_INT;
+import static com.v7878.panamatest.hotspot.NativeTestHelper.C_POINTER;
+import static com.v7878.panamatest.hotspot.NativeTestHelper.findNativeOrThrow;
+import static com.v7878.panamatest.hotspot.NativeTestHelper.upcallStub;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.FunctionDescriptor;
+import com.v7878.foreign.Linker;
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+
+import org.junit.Test;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Links {@code varargs(call_info*, int num, ...)} of libVarArgs, which
+ * reads {@code num} variadic arguments of the types given by call_info and
+ * passes a pointer to each of them to a writeback upcall.
+ */
+public class TestVariadicHandleCache {
+
+    // enum NativeType of libVarArgs
+    static final int T_INT = 0;
+    static final int T_DOUBLE = 1;
+    static final int T_POINTER = 2;
+
+    static final FunctionDescriptor FIXED = FunctionDescriptor.ofVoid(C_POINTER, C_INT);
+
+    static {
+        System.loadLibrary("VarArgs");
+    }
+
+    static final MemorySegment VARARGS = findNativeOrThrow("varargs");
+
+    static int[] ids;
+    static Object[] received;
+
+    public static void writeback(int index, MemorySegment ptr) {
+        received[index] = switch (ids[index]) {
+            case T_INT -> ptr.reinterpret(C_INT.byteSize()).get(C_INT, 0);
+            case T_DOUBLE -> ptr.reinterpret(C_DOUBLE.byteSize()).get(C_DOUBLE, 0);
+            default -> ptr.reinterpret(C_POINTER.byteSize()).get(C_POINTER, 0).address();
+        };
+    }
+
+    /**
+     * Allocates the call_info for variadic arguments of the given types.
+     */
+    static MemorySegment callInfo(Arena arena, int... types) {
+        ids = types;
+        received = new Object[types.length];
+        MemorySegment info = arena.allocate(C_POINTER, 2);
+        info.setAtIndex(C_POINTER, 0, upcallStub(TestVariadicHandleCache.class, "writeback",
+                FunctionDescriptor.ofVoid(C_INT, C_POINTER), arena));
+        info.setAtIndex(C_POINTER, 1, arena.allocateFrom(ValueLayout.JAVA_INT, types));
+        return info;
+    }
+
+    static VariadicHandleCache cache(int maxEntries) {
+        return new VariadicHandleCache(Linker.nativeLinker(), VARARGS, FIXED, maxEntries);
+    }
+
+    @Test
+    public void testMixes() throws Throwable {
+        VariadicHandleCache cache = cache(16);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment pointer = MemorySegment.ofAddress(0x1234);
+
+            MethodHandle ints = cache.handle(C_INT, C_INT, C_INT);
+            ints.invokeExact(callInfo(arena, T_INT, T_INT, T_INT), 3, 1, -2, Integer.MAX_VALUE);
+            assertArrayEquals(new Object[]{1, -2, Integer.MAX_VALUE}, received);
+
+            MethodHandle mixed = cache.handle(C_DOUBLE, C_POINTER, C_INT, C_DOUBLE);
+            mixed.invokeExact(callInfo(arena, T_DOUBLE, T_POINTER, T_INT, T_DOUBLE), 4,
+                    0.5, pointer, 42, -1e300);
+            assertArrayEquals(new Object[]{0.5, 0x1234L, 42, -1e300}, received);
+
+            // more arguments than fit in registers
+            MixedArgs many = new MixedArgs(12);
+            cache.handle(many.layouts).invokeWithArguments(many.args(callInfo(arena, many.ids)));
+            assertArrayEquals(many.expected, received);
+
+            // reading fewer arguments than passed is fine
+            cache.handle(C_INT, C_DOUBLE).invokeExact(callInfo(arena), 0, 7, 7.0);
+            assertEquals(4, cache.size());
+            assertEquals(4, cache.misses());
+            assertEquals(0, cache.hits());
+        }
+    }
+
+    /**
+     * Alternating int, double and pointer arguments.
+     */
+    static final class MixedArgs {
+        final MemoryLayout[] layouts;
+        final int[] ids;
+        final Object[] values;
+        final Object[] expected;
+
+        MixedArgs(int count) {
+            layouts = new MemoryLayout[count];
+            ids = new int[count];
+            values = new Object[count];
+            expected = new Object[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = i % 3;
+                switch (ids[i]) {
+                    case T_INT -> {
+                        layouts[i] = C_INT;
+                        values[i] = expected[i] = i * 100;
+                    }
+                    case T_DOUBLE -> {
+                        layouts[i] = C_DOUBLE;
+                        values[i] = expected[i] = i + 0.25;
+                    }
+                    default -> {
+                        layouts[i] = C_POINTER;
+                        values[i] = MemorySegment.ofAddress(i * 8L);
+                        expected[i] = i * 8L;
+                    }
+                }
+            }
+        }
+
+        Object[] args(MemorySegment callInfo) {
+            Object[] args = new Object[values.length + 2];
+            args[0] = callInfo;
+            args[1] = values.length;
+            System.arraycopy(values, 0, args, 2, values.length);
+            return args;
+        }
+    }
+
+    @Test
+    public void testPromotion() throws Throwable {
+        VariadicHandleCache cache = cache(16);
+        MethodHandle doubles = cache.handle(ValueLayout.JAVA_FLOAT);
+        assertSame(doubles, cache.handle(C_DOUBLE));
+        assertSame(doubles, cache.handle(C_DOUBLE.withName("value")));
+        assertEquals(double.class, doubles.type().parameterType(2));
+        MethodHandle ints = cache.handle(ValueLayout.JAVA_SHORT);
+        assertSame(ints, cache.handle(ValueLayout.JAVA_BYTE));
+        assertSame(ints, cache.handle(ValueLayout.JAVA_CHAR));
+        assertSame(ints, cache.handle(ValueLayout.JAVA_BOOLEAN));
+        assertSame(ints, cache.handle(C_INT));
+        assertEquals(int.class, ints.type().parameterType(2));
+        assertNotSame(ints, cache.handle(C_INT, C_INT));
+        assertEquals(3, cache.size());
+        assertEquals(3, cache.misses());
+        assertEquals(6, cache.hits());
+
+        try (Arena arena = Arena.ofConfined()) {
+            doubles.invokeExact(callInfo(arena, T_DOUBLE), 1, (double) 1.5f);
+            assertArrayEquals(new Object[]{1.5}, received);
+        }
+    }
+
+    @Test
+    public void testInvoke() throws Throwable {
+        VariadicHandleCache cache = cache(16);
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment info = callInfo(arena, T_INT, T_DOUBLE, T_POINTER, T_INT, T_INT, T_INT, T_DOUBLE);
+            cache.invoke(new Object[]{info, 7}, 42, 2.5f, MemorySegment.ofAddress(16),
+                    (short) -3, 'c', true, -0.125);
+            assertArrayEquals(new Object[]{42, 2.5, 16L, -3, (int) 'c', 1, -0.125}, received);
+            assertSame(cache.handle(C_INT, C_DOUBLE, C_POINTER, C_INT, C_INT, C_INT, C_DOUBLE),
+                    cache.handle(C_INT, ValueLayout.JAVA_FLOAT, C_POINTER,
+                            ValueLayout.JAVA_SHORT, ValueLayout.JAVA_CHAR, ValueLayout.JAVA_BOOLEAN, C_DOUBLE));
+            assertEquals(1, cache.size());
+
+            MemorySegment none = callInfo(arena);
+            cache.invoke(new Object[]{none, 0});
+            assertEquals(2, cache.size());
+            assertThrows(IllegalArgumentException.class, () -> cache.invoke(new Object[]{none, 0}, "text"));
+            assertThrows(IllegalArgumentException.class, () -> cache.invoke(new Object[]{none}, 1));
+        }
+    }
+
+    @Test
+    public void testEviction() {
+        VariadicHandleCache cache = cache(2);
+        MethodHandle one = cache.handle(C_INT);
+        MethodHandle two = cache.handle(C_DOUBLE);
+        assertSame(one, cache.handle(C_INT));
+        // evicts the double mix, which is now the least recently used
+        cache.handle(C_POINTER);
+        assertEquals(2, cache.size());
+        assertSame(one, cache.handle(C_INT));
+        assertNotSame(two, cache.handle(C_DOUBLE));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertThrows(IllegalArgumentException.class, () -> cache(0));
+    }
+}
@@ -0,0 +1,166 @@
+package com.v7878.panamatest.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+public class TestWindowedFileReader {
+
+    static final int SIZE = (1 << 20) + 123;
+    static final long WINDOW = 64 * 1024;
+
+    static byte[] content() {
+        byte[] content = new byte[SIZE];
+        new Random(42).nextBytes(content);
+        return content;
+    }
+
+    static File tempFile(byte[] content) throws IOException {
+        File file = File.createTempFile("windowedReader", "out");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        return file;
+    }
+
+    @Test
+    public void testSequentialScan() throws IOException {
+        byte[] content = content();
+        ByteBuffer expected = ByteBuffer.wrap(content).order(ByteOrder.nativeOrder());
+        File file = tempFile(content);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             WindowedFileReader reader = new WindowedFileReader(channel, WINDOW, 3, 1)) {
+            assertEquals(SIZE, reader.size());
+            long windows = (SIZE + WINDOW - 1) / WINDOW;
+            // odd stride, so that reads straddle window boundaries
+            for (int position = 0; position + Long.BYTES <= SIZE; position += 7) {
+                assertEquals(expected.getLong(position), reader.getLong(position));
+                assertTrue(reader.mappedWindows() <= 3);
+            }
+            // every window is mapped exactly once per sequential pass
+            assertEquals(windows, reader.mapCount());
+            for (int position = 0; position + Integer.BYTES <= SIZE; position += 13) {
+                assertEquals(expected.getInt(position), reader.getInt(position));
+            }
+            assertEquals(content[SIZE - 1], reader.getByte(SIZE - 1));
+            assertEquals(2 * windows, reader.mapCount());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMinimalWindows() throws IOException {
+        byte[] content = content();
+        File file = tempFile(content);
+        long windows = (SIZE + WINDOW - 1) / WINDOW;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // room for the current window and the read-ahead, and nothing more
+            for (int readAhead = 0; readAhead <= 3; readAhead++) {
+                try (WindowedFileReader reader = new WindowedFileReader(channel, WINDOW, readAhead + 1, readAhead)) {
+                    for (int position = 0; position < SIZE; position += 1000) {
+                        assertEquals(content[position], reader.getByte(position));
+                        assertTrue(reader.mappedWindows() <= readAhead + 1);
+                    }
+                    assertEquals(content[SIZE - 1], reader.getByte(SIZE - 1));
+                    assertEquals(windows, reader.mapCount());
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testRandomAccessAndBulkRead() throws IOException {
+        byte[] content = content();
+        ByteBuffer expected = ByteBuffer.wrap(content).order(ByteOrder.nativeOrder());
+        File file = tempFile(content);
+        try (Arena arena = Arena.ofConfined();
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             WindowedFileReader reader = new WindowedFileReader(channel, WINDOW, 2, 0)) {
+            Random random = new Random(7);
+            for (int i = 0; i < 10_000; i++) {
+                int position = random.nextInt(SIZE - Long.BYTES);
+                assertEquals(expected.getLong(position), reader.getLong(position));
+                assertTrue(reader.mappedWindows() <= 2);
+            }
+
+            // spans five windows
+            long start = WINDOW / 2;
+            int length = (int) (WINDOW * 4 + 17);
+            MemorySegment dst = arena.allocate(length);
+            reader.read(start, dst, 0, length);
+            byte[] actual = dst.toArray(ValueLayout.JAVA_BYTE);
+            byte[] slice = new byte[length];
+            System.arraycopy(content, (int) start, slice, 0, length);
+            assertArrayEquals(slice, actual);
+
+            // up to the last byte
+            MemorySegment tail = arena.allocate(100);
+            reader.read(SIZE - 100, tail, 0, 100);
+            assertEquals(content[SIZE - 1], tail.get(ValueLayout.JAVA_BYTE, 99));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testEvictionAndClose() throws IOException {
+        File file = tempFile(content());
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            WindowedFileReader reader = new WindowedFileReader(channel, WINDOW, 2, 0);
+            MemorySegment first = reader.window(0);
+            assertEquals(WINDOW + WindowedFileReader.OVERLAP, first.byteSize());
+            reader.getByte(WINDOW);
+            reader.getByte(2 * WINDOW);
+            // the first window was unmapped to make room
+            assertThrows(IllegalStateException.class, () -> first.get(ValueLayout.JAVA_BYTE, 0));
+
+            MemorySegment current = reader.window(2 * WINDOW);
+            assertEquals(2 * WINDOW, reader.windowStart(2 * WINDOW + 5));
+            reader.close();
+            assertEquals(0, reader.mappedWindows());
+            assertThrows(IllegalStateException.class, () -> current.get(ValueLayout.JAVA_BYTE, 0));
+            assertThrows(IllegalStateException.class, () -> reader.getByte(0));
+            reader.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testBadArguments() throws IOException {
+        File file = tempFile(content());
+        try (Arena arena = Arena.ofConfined();
+             FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            assertThrows(IllegalArgumentException.class, () -> new WindowedFileReader(channel, 0, 2, 0));
+            assertThrows(IllegalArgumentException.class, () -> new WindowedFileReader(channel, WINDOW, 2, 2));
+            try (WindowedFileReader reader = new WindowedFileReader(channel, WINDOW, 2, 1)) {
+                assertThrows(IndexOutOfBoundsException.class, () -> reader.getByte(-1));
+                assertThrows(IndexOutOfBoundsException.class, () -> reader.getByte(SIZE));
+                assertThrows(IndexOutOfBoundsException.class, () -> reader.getLong(SIZE - 4));
+                assertThrows(IndexOutOfBoundsException.class, () -> reader.read(SIZE - 10, arena.allocate(20), 0, 20));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
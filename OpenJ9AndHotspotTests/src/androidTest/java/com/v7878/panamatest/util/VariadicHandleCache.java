@@ -0,0 +1,173 @@
+package com.v7878.panamatest.util;
+
+import com.v7878.foreign.AddressLayout;
+import com.v7878.foreign.FunctionDescriptor;
+import com.v7878.foreign.Linker;
+import com.v7878.foreign.MemoryLayout;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Downcall handles of one variadic function, one per mix of variadic
+ * argument types, linked with {@link Linker.Option#firstVariadicArg} on first
+ * use and kept for later calls.
+ * <p>
+ * Variadic arguments undergo the C default argument promotions, so handles
+ * are keyed by the promoted layouts: {@code float} is passed as
+ * {@code double}, and {@code bool}, {@code char} and {@code short} as
+ * {@code int}. Layout names and the target layouts of pointers are ignored,
+ * so that, for example, a mix requested with {@code JAVA_FLOAT} and one
+ * requested with {@code C_DOUBLE} share a handle. Struct layouts are passed
+ * as they are. The cache keeps at most {@code maxEntries} handles and evicts
+ * the least recently used one first. It is safe to use from several threads.
+ */
+public final class VariadicHandleCache {
+
+    private final Linker linker;
+    private final MemorySegment target;
+    private final FunctionDescriptor fixed;
+    private final Linker.Option[] options;
+    private final ValueLayout promotedInt;
+    private final ValueLayout promotedDouble;
+    private final ValueLayout promotedLong;
+    private final ValueLayout address;
+    private final BoundedCache<List<MemoryLayout>, MethodHandle> handles;
+
+    /**
+     * @param target  address of the variadic function
+     * @param fixed   descriptor of the return value and the fixed arguments
+     * @param options further linker options, applied to every handle
+     */
+    public VariadicHandleCache(Linker linker, MemorySegment target, FunctionDescriptor fixed,
+                               int maxEntries, Linker.Option... options) {
+        this.handles = new BoundedCache<>(maxEntries);
+        this.linker = Objects.requireNonNull(linker);
+        this.target = Objects.requireNonNull(target);
+        this.fixed = Objects.requireNonNull(fixed);
+        this.options = options.clone();
+        Map<String, MemoryLayout> canonical = linker.canonicalLayouts();
+        this.promotedInt = (ValueLayout) canonical.get("int");
+        this.promotedDouble = (ValueLayout) canonical.get("double");
+        this.promotedLong = (ValueLayout) canonical.get("long long");
+        this.address = (ValueLayout) canonical.get("void*");
+    }
+
+    /**
+     * Returns the layout a variadic argument of the given layout is passed as.
+     */
+    public MemoryLayout promote(MemoryLayout layout) {
+        if (layout instanceof ValueLayout.OfFloat) {
+            return promotedDouble;
+        }
+        if (layout instanceof ValueLayout.OfBoolean || layout instanceof ValueLayout.OfByte
+                || layout instanceof ValueLayout.OfShort || layout instanceof ValueLayout.OfChar) {
+            return promotedInt;
+        }
+        if (layout instanceof AddressLayout) {
+            return address;
+        }
+        return layout.withoutName();
+    }
+
+    private MethodHandle link(List<MemoryLayout> variadic) {
+        int firstVariadic = fixed.argumentLayouts().size();
+        Linker.Option[] all = Arrays.copyOf(options, options.length + 1);
+        all[options.length] = Linker.Option.firstVariadicArg(firstVariadic);
+        FunctionDescriptor descriptor = fixed.appendArgumentLayouts(variadic.toArray(new MemoryLayout[0]));
+        return linker.downcallHandle(target, descriptor, all);
+    }
+
+    private MethodHandle handle(List<MemoryLayout> key) {
+        return handles.get(key, this::link);
+    }
+
+    /**
+     * Returns the handle for the given variadic argument layouts. Its
+     * variadic parameters have the types of the promoted layouts.
+     */
+    public MethodHandle handle(MemoryLayout... variadic) {
+        MemoryLayout[] promoted = new MemoryLayout[variadic.length];
+        for (int i = 0; i < variadic.length; i++) {
+            promoted[i] = promote(Objects.requireNonNull(variadic[i]));
+        }
+        return handle(List.of(promoted));
+    }
+
+    /**
+     * Calls the function with the given fixed arguments followed by the
+     * given variadic arguments, choosing the handle by the classes of the
+     * variadic arguments: {@code Boolean}, {@code Byte}, {@code Short},
+     * {@code Character} and {@code Integer} are passed as {@code int},
+     * {@code Long} as {@code long long}, {@code Float} and {@code Double} as
+     * {@code double}, and {@link MemorySegment} as a pointer. Structs can
+     * only be passed through {@link #handle(MemoryLayout...)}.
+     *
+     * @throws IllegalArgumentException if a variadic argument has another class
+     */
+    public Object invoke(Object[] fixedArgs, Object... variadicArgs) throws Throwable {
+        if (fixedArgs.length != fixed.argumentLayouts().size()) {
+            throw new IllegalArgumentException("Expected " + fixed.argumentLayouts().size()
+                    + " fixed arguments, got " + fixedArgs.length);
+        }
+        MemoryLayout[] layouts = new MemoryLayout[variadicArgs.length];
+        Object[] args = Arrays.copyOf(fixedArgs, fixedArgs.length + variadicArgs.length);
+        for (int i = 0; i < variadicArgs.length; i++) {
+            Object arg = variadicArgs[i];
+            Object promoted;
+            MemoryLayout layout;
+            if (arg instanceof Integer) {
+                promoted = arg;
+                layout = promotedInt;
+            } else if (arg instanceof Double) {
+                promoted = arg;
+                layout = promotedDouble;
+            } else if (arg instanceof MemorySegment) {
+                promoted = arg;
+                layout = address;
+            } else if (arg instanceof Long) {
+                promoted = arg;
+                layout = promotedLong;
+            } else if (arg instanceof Float value) {
+                promoted = (double) value;
+                layout = promotedDouble;
+            } else if (arg instanceof Byte || arg instanceof Short) {
+                promoted = ((Number) arg).intValue();
+                layout = promotedInt;
+            } else if (arg instanceof Character value) {
+                promoted = (int) value;
+                layout = promotedInt;
+            } else if (arg instanceof Boolean value) {
+                promoted = value ? 1 : 0;
+                layout = promotedInt;
+            } else {
+                throw new IllegalArgumentException("Unsupported variadic argument: "
+                        + (arg == null ? null : arg.getClass().getName()));
+            }
+            layouts[i] = layout;
+            args[fixedArgs.length + i] = promoted;
+        }
+        return handle(List.of(layouts)).invokeWithArguments(args);
+    }
+
+    public int size() {
+        return handles.size();
+    }
+
+    public long hits() {
+        return handles.hits();
+    }
+
+    public long misses() {
+        return handles.misses();
+    }
+
+    public void clear() {
+        handles.clear();
+    }
+}
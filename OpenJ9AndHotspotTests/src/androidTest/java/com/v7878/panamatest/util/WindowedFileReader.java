@@ -0,0 +1,212 @@
+package com.v7878.panamatest.util;
+
+import com.v7878.foreign.Arena;
+import com.v7878.foreign.FileChannelUtils;
+import com.v7878.foreign.MemorySegment;
+import com.v7878.foreign.ValueLayout;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Reads a file that may be larger than the address space available for
+ * mappings, through a bounded set of read-only mapped windows.
+ * <p>
+ * Window {@code k} maps the bytes from {@code k * windowSize} up to
+ * {@code (k + 1) * windowSize}, plus {@link #OVERLAP} bytes of the next
+ * window, so that a primitive value never straddles two mappings. Every
+ * window is mapped in its own confined arena and unmapped by closing that
+ * arena when it is evicted; at most {@code maxWindows} are mapped at any
+ * time, the least recently used one is evicted first. When the cursor enters
+ * a window, the next {@code readAhead} windows are mapped and loaded as well.
+ * <p>
+ * Instances are not thread-safe and must be used from the thread that
+ * created them.
+ */
+public final class WindowedFileReader implements AutoCloseable {
+
+    public static final long OVERLAP = Long.BYTES;
+
+    static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED;
+    static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED;
+
+    private record Window(long index, long start, Arena arena, MemorySegment segment) {
+    }
+
+    private final FileChannel channel;
+    private final long size;
+    private final long windowSize;
+    private final int maxWindows;
+    private final int readAhead;
+    private final LinkedHashMap<Long, Window> windows;
+    private Window last;
+    private long mapCount;
+    private boolean closed;
+
+    public WindowedFileReader(FileChannel channel, long windowSize, int maxWindows, int readAhead) throws IOException {
+        this.channel = Objects.requireNonNull(channel);
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive: " + windowSize);
+        }
+        if (readAhead < 0 || maxWindows <= readAhead) {
+            throw new IllegalArgumentException("Need more windows (" + maxWindows +
+                    ") than read-ahead windows (" + readAhead + ")");
+        }
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        this.maxWindows = maxWindows;
+        this.readAhead = readAhead;
+        this.windows = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long windowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Returns the number of windows mapped right now.
+     */
+    public int mappedWindows() {
+        return windows.size();
+    }
+
+    /**
+     * Returns the number of mappings made so far.
+     */
+    public long mapCount() {
+        return mapCount;
+    }
+
+    private Window map(long index) {
+        long start = index * windowSize;
+        long length = Math.min(size - start, windowSize + OVERLAP);
+        Arena arena = Arena.ofConfined();
+        try {
+            MemorySegment segment = FileChannelUtils.map(channel, FileChannel.MapMode.READ_ONLY, start, length, arena);
+            mapCount++;
+            return new Window(index, start, arena, segment);
+        } catch (IOException ex) {
+            arena.close();
+            throw new UncheckedIOException(ex);
+        } catch (RuntimeException | Error ex) {
+            arena.close();
+            throw ex;
+        }
+    }
+
+    private Window lookup(long index, boolean prefetch) {
+        Window window = windows.get(index);
+        if (window == null) {
+            // evict before mapping, so that the address space budget is never exceeded
+            if (windows.size() == maxWindows) {
+                Iterator<Map.Entry<Long, Window>> eldest = windows.entrySet().iterator();
+                Window evicted = eldest.next().getValue();
+                eldest.remove();
+                if (evicted == last) {
+                    last = null;
+                }
+                evicted.arena().close();
+            }
+            window = map(index);
+            windows.put(index, window);
+            if (prefetch) {
+                window.segment().load();
+            }
+        }
+        return window;
+    }
+
+    private Window windowFor(long position) {
+        if (closed) {
+            throw new IllegalStateException("Already closed");
+        }
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + " out of bounds for size " + size);
+        }
+        long index = position / windowSize;
+        Window window = last;
+        if (window != null && window.index() == index) {
+            return window;
+        }
+        // the current window first, so that making room for the read-ahead never evicts it
+        window = lookup(index, false);
+        for (long ahead = index + 1; ahead <= index + readAhead && ahead * windowSize < size; ahead++) {
+            lookup(ahead, true);
+        }
+        last = window;
+        return window;
+    }
+
+    /**
+     * Returns the mapped window that contains {@code position}; it starts at
+     * file position {@link #windowStart(long)}. The segment is valid until
+     * the window is evicted or the reader is closed.
+     */
+    public MemorySegment window(long position) {
+        return windowFor(position).segment();
+    }
+
+    public long windowStart(long position) {
+        return position / windowSize * windowSize;
+    }
+
+    public byte getByte(long position) {
+        Window window = windowFor(position);
+        return window.segment().get(ValueLayout.JAVA_BYTE, position - window.start());
+    }
+
+    public int getInt(long position) {
+        Window window = windowFor(position);
+        return window.segment().get(INT, position - window.start());
+    }
+
+    public long getLong(long position) {
+        Window window = windowFor(position);
+        return window.segment().get(LONG, position - window.start());
+    }
+
+    /**
+     * Copies {@code length} bytes starting at file {@code position} to
+     * {@code dst}, going through as many windows as needed.
+     */
+    public void read(long position, MemorySegment dst, long dstOffset, long length) {
+        if (length < 0 || position > size - length) {
+            throw new IndexOutOfBoundsException("Range [" + position + ", " + position + " + " + length +
+                    ") out of bounds for size " + size);
+        }
+        while (length > 0) {
+            Window window = windowFor(position);
+            long offset = position - window.start();
+            long chunk = Math.min(length, windowSize - offset);
+            MemorySegment.copy(window.segment(), offset, dst, dstOffset, chunk);
+            position += chunk;
+            dstOffset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * Unmaps all windows. The channel is left open.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        last = null;
+        for (Window window : windows.values()) {
+            window.arena().close();
+        }
+        windows.clear();
+    }
+}